@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.alkacon.simapi;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lowers the render quality of image operations while the image processing is under load.<p>
+ *
+ * The load is measured by the number of stages waiting in the queue of a {@link SimapiScheduler}, and by
+ * a percentile of the latencies of the recently finished stages, including the time they were waiting.
+ * Each stage is run at one of three levels:<ul>
+ * <li>{@link Simapi#RENDER_QUALITY}: the render settings are used unchanged.
+ * <li>{@link Simapi#RENDER_MEDIUM}: the rendering hints of {@link Simapi#RENDER_MEDIUM} are used,
+ *      the blur factor is reduced and optional image filters are skipped.
+ * <li>{@link Simapi#RENDER_SPEED}: the rendering hints of {@link Simapi#RENDER_SPEED} are used,
+ *      blur and special resample filters are not used and optional image filters are skipped.
+ * </ul>
+ *
+ * The level is raised as soon as the load reaches the threshold of a level. It is lowered again only once
+ * the load has dropped below {@link #RECOVERY_RATIO} of the threshold, so the level does not change with
+ * every stage while the load is close to a threshold.<p>
+ *
+ * The controller is used by setting it in the {@link RenderSettings} of all {@link Simapi} instances
+ * that should adapt their quality. It can be shared by any number of threads.<p>
+ *
+ * @see RenderSettings#setAdaptiveQuality(AdaptiveQuality)
+ * @see RenderSettings#addOptionalImageFilter(java.awt.image.ImageFilter)
+ */
+public class AdaptiveQuality {
+
+    /** The percentile of the recent latencies that is compared to the latency thresholds. */
+    public static final double LATENCY_PERCENTILE = 0.9;
+
+    /** The number of recent stage latencies used to calculate the latency percentile. */
+    public static final int LATENCY_SAMPLES = 64;
+
+    /** The ratio of the thresholds the load must drop below before the quality is raised again. */
+    public static final double RECOVERY_RATIO = 0.5;
+
+    /** The number of stages run at each level. */
+    private AtomicLongArray m_counts;
+
+    /** The latencies of the recently finished stages in nanoseconds. */
+    private long[] m_latencies;
+
+    /** The number of stage latencies added so far. */
+    private long m_latencyCount;
+
+    /** The current level. */
+    private volatile int m_level;
+
+    /** The latency percentile in milliseconds from which on {@link Simapi#RENDER_MEDIUM} is used, 0 to ignore the latency. */
+    private volatile long m_mediumLatency;
+
+    /** The queue size from which on {@link Simapi#RENDER_MEDIUM} is used. */
+    private volatile int m_mediumQueueSize;
+
+    /** The scheduler whose queue size is watched, or <code>null</code>. */
+    private SimapiScheduler m_scheduler;
+
+    /** The latency percentile in milliseconds from which on {@link Simapi#RENDER_SPEED} is used, 0 to ignore the latency. */
+    private volatile long m_speedLatency;
+
+    /** The queue size from which on {@link Simapi#RENDER_SPEED} is used. */
+    private volatile int m_speedQueueSize;
+
+    /**
+     * Creates a new adaptive quality controller.<p>
+     *
+     * By default, {@link Simapi#RENDER_MEDIUM} is used once as many stages are waiting as the scheduler
+     * has threads, and {@link Simapi#RENDER_SPEED} once four times as many stages are waiting.
+     * The latency is ignored until thresholds are set with {@link #setLatencyThresholds(long, long)}.<p>
+     *
+     * @param scheduler the scheduler whose queue size is watched, or <code>null</code> to use only the latency
+     */
+    public AdaptiveQuality(SimapiScheduler scheduler) {
+
+        m_scheduler = scheduler;
+        m_counts = new AtomicLongArray(Simapi.RENDER_SPEED + 1);
+        m_latencies = new long[LATENCY_SAMPLES];
+        m_level = Simapi.RENDER_QUALITY;
+        if (scheduler != null) {
+            m_mediumQueueSize = scheduler.getThreads();
+            m_speedQueueSize = scheduler.getThreads() * 4;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the given value reaches the given threshold scaled by the given ratio.<p>
+     *
+     * @param value the value to check
+     * @param threshold the threshold, 0 if the threshold is not used
+     * @param ratio the ratio to scale the threshold with
+     *
+     * @return <code>true</code> if the value reaches the scaled threshold
+     */
+    private static boolean exceeds(long value, long threshold, double ratio) {
+
+        return (threshold > 0) && (value >= (threshold * ratio));
+    }
+
+    /**
+     * Returns the number of stages that were run at the given level.<p>
+     *
+     * @param level the level, one of {@link Simapi#RENDER_QUALITY}, {@link Simapi#RENDER_MEDIUM}
+     *      or {@link Simapi#RENDER_SPEED}
+     *
+     * @return the number of stages that were run at the given level
+     */
+    public long getCount(int level) {
+
+        checkLevel(level);
+        return m_counts.get(level);
+    }
+
+    /**
+     * Returns the latency percentile of the recently finished stages in milliseconds.<p>
+     *
+     * @return the latency percentile of the recently finished stages in milliseconds, or 0 if no stage has finished yet
+     *
+     * @see #LATENCY_PERCENTILE
+     */
+    public long getLatency() {
+
+        long[] latencies;
+        synchronized (m_latencies) {
+            latencies = Arrays.copyOf(m_latencies, (int)Math.min(m_latencyCount, LATENCY_SAMPLES));
+        }
+        if (latencies.length == 0) {
+            return 0;
+        }
+        Arrays.sort(latencies);
+        int index = Math.min(latencies.length - 1, (int)(latencies.length * LATENCY_PERCENTILE));
+        return TimeUnit.NANOSECONDS.toMillis(latencies[index]);
+    }
+
+    /**
+     * Returns the level that was selected for the last stage.<p>
+     *
+     * @return the level that was selected for the last stage
+     */
+    public int getLevel() {
+
+        return m_level;
+    }
+
+    /**
+     * Sets the latency percentiles from which on the quality is lowered.<p>
+     *
+     * @param mediumLatency the latency in milliseconds from which on {@link Simapi#RENDER_MEDIUM} is used, 0 to ignore
+     * @param speedLatency the latency in milliseconds from which on {@link Simapi#RENDER_SPEED} is used, 0 to ignore
+     */
+    public void setLatencyThresholds(long mediumLatency, long speedLatency) {
+
+        if ((mediumLatency < 0) || (speedLatency < 0)) {
+            throw new IllegalArgumentException("latency thresholds must not be negative");
+        }
+        m_mediumLatency = mediumLatency;
+        m_speedLatency = speedLatency;
+    }
+
+    /**
+     * Sets the scheduler queue sizes from which on the quality is lowered.<p>
+     *
+     * @param mediumQueueSize the queue size from which on {@link Simapi#RENDER_MEDIUM} is used, 0 to ignore
+     * @param speedQueueSize the queue size from which on {@link Simapi#RENDER_SPEED} is used, 0 to ignore
+     */
+    public void setQueueThresholds(int mediumQueueSize, int speedQueueSize) {
+
+        if ((mediumQueueSize < 0) || (speedQueueSize < 0)) {
+            throw new IllegalArgumentException("queue thresholds must not be negative");
+        }
+        m_mediumQueueSize = mediumQueueSize;
+        m_speedQueueSize = speedQueueSize;
+    }
+
+    /**
+     * Adds the latency of a finished stage.<p>
+     *
+     * @param nanos the latency of the stage in nanoseconds, including the time the stage was waiting
+     */
+    protected void addLatency(long nanos) {
+
+        synchronized (m_latencies) {
+            m_latencies[(int)(m_latencyCount % LATENCY_SAMPLES)] = nanos;
+            m_latencyCount++;
+        }
+    }
+
+    /**
+     * Selects the level for the next stage according to the current load, and counts the stage for that level.<p>
+     *
+     * @return the level for the next stage
+     */
+    protected int selectLevel() {
+
+        int load = getLoadLevel(1.0);
+        int level = m_level;
+        if (load >= level) {
+            level = load;
+        } else {
+            // the quality is raised only once the load has clearly dropped
+            level = Math.min(level, getLoadLevel(RECOVERY_RATIO));
+        }
+        m_level = level;
+        m_counts.incrementAndGet(level);
+        return level;
+    }
+
+    /**
+     * Checks that the given value is a valid level.<p>
+     *
+     * @param level the level to check
+     */
+    private void checkLevel(int level) {
+
+        if ((level != Simapi.RENDER_QUALITY) && (level != Simapi.RENDER_MEDIUM) && (level != Simapi.RENDER_SPEED)) {
+            throw new IllegalArgumentException("level must be RENDER_QUALITY, RENDER_MEDIUM or RENDER_SPEED");
+        }
+    }
+
+    /**
+     * Returns the level the current load requires, with the thresholds scaled by the given ratio.<p>
+     *
+     * @param ratio the ratio to scale the thresholds with
+     *
+     * @return the level the current load requires
+     */
+    private int getLoadLevel(double ratio) {
+
+        int queueSize = m_scheduler != null ? m_scheduler.getQueueSize() : 0;
+        long latency = ((m_mediumLatency > 0) || (m_speedLatency > 0)) ? getLatency() : 0;
+        if (exceeds(queueSize, m_speedQueueSize, ratio) || exceeds(latency, m_speedLatency, ratio)) {
+            return Simapi.RENDER_SPEED;
+        }
+        if (exceeds(queueSize, m_mediumQueueSize, ratio) || exceeds(latency, m_mediumLatency, ratio)) {
+            return Simapi.RENDER_MEDIUM;
+        }
+        return Simapi.RENDER_QUALITY;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.alkacon.simapi;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fork-join task that processes an image in horizontal bands, splitting the bands in halves
+ * until they are small enough to be processed by a single thread.<p>
+ *
+ * The task checks the cancellation token of the operation that created it before a band is processed or split.<p>
+ */
+public abstract class BandTask extends RecursiveAction {
+
+    /** The minimum height of a band in pixel, smaller bands are not split any further. */
+    public static final int MIN_BAND_HEIGHT = 64;
+
+    /** The serial version id. */
+    private static final long serialVersionUID = -3017282938265187412L;
+
+    /** The height of the band to process. */
+    private int m_bandHeight;
+
+    /** The y position of the band to process. */
+    private int m_bandY;
+
+    /** The minimum height of a band that is not split any further. */
+    private int m_splitHeight;
+
+    /** The cancellation token of the operation. */
+    private CancellationToken m_token;
+
+    /**
+     * Creates a new task that processes a band of the same operation as the given task.<p>
+     *
+     * @param parent the task of the operation
+     * @param bandY the y position of the band
+     * @param bandHeight the height of the band
+     */
+    protected BandTask(BandTask parent, int bandY, int bandHeight) {
+
+        m_bandY = bandY;
+        m_bandHeight = bandHeight;
+        m_splitHeight = parent.m_splitHeight;
+        m_token = parent.m_token;
+    }
+
+    /**
+     * Creates a new task that processes the complete height of an image for the current cancellation token.<p>
+     *
+     * @param height the height of the image
+     * @param splitHeight the minimum height of a band that is not split any further
+     */
+    protected BandTask(int height, int splitHeight) {
+
+        m_bandY = 0;
+        m_bandHeight = height;
+        m_splitHeight = splitHeight;
+        m_token = CancellationToken.getCurrent();
+    }
+
+    /**
+     * Returns the height of the bands an image with the given height is split into, so that there are
+     * about two bands for every parallel thread, but no band is smaller than {@link #MIN_BAND_HEIGHT}.<p>
+     *
+     * @param height the height of the image
+     * @param parallelism the number of parallel threads that will be used
+     *
+     * @return the minimum height of a band that is not split any further
+     */
+    public static int getSplitHeight(int height, int parallelism) {
+
+        return Math.max(MIN_BAND_HEIGHT, height / (Math.max(1, parallelism) * 2));
+    }
+
+    /**
+     * @see java.util.concurrent.RecursiveAction#compute()
+     */
+    @Override
+    protected void compute() {
+
+        m_token.check();
+        if (m_bandHeight <= m_splitHeight) {
+            processBand(m_bandY, m_bandHeight);
+        } else {
+            int half = m_bandHeight / 2;
+            invokeAll(createBandTask(m_bandY, half), createBandTask(m_bandY + half, m_bandHeight - half));
+        }
+    }
+
+    /**
+     * Creates a task that processes a band of the same operation as this task.<p>
+     *
+     * Implementations usually call {@link #BandTask(BandTask, int, int)} with this task as parent.<p>
+     *
+     * @param bandY the y position of the band
+     * @param bandHeight the height of the band
+     *
+     * @return the task that processes the band
+     */
+    protected abstract BandTask createBandTask(int bandY, int bandHeight);
+
+    /**
+     * Processes a band of the image.<p>
+     *
+     * @param bandY the y position of the band
+     * @param bandHeight the height of the band
+     */
+    protected abstract void processBand(int bandY, int bandHeight);
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.alkacon.simapi;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A single job for the {@link SimapiBatch} processor.<p>
+ *
+ * A job reads an image from a source, applies a list of operations to it and writes the result
+ * to a destination.<p>
+ *
+ * The source may be a {@link File}, a file name, a <code>byte[]</code>, an {@link InputStream} or an {@link URL}.
+ * The destination may be a {@link File}, a file name or an {@link OutputStream}.
+ * Streams are not closed by the batch processor.<p>
+ */
+public class BatchJob {
+
+    /** The destination to write the result image to. */
+    private Object m_destination;
+
+    /** The operations to apply to the image. */
+    private List<ImageOperation> m_operations;
+
+    /** The source to read the image from. */
+    private Object m_source;
+
+    /** The height the image will be scaled to, used for subsampling during decoding. */
+    private int m_targetHeight;
+
+    /** The width the image will be scaled to, used for subsampling during decoding. */
+    private int m_targetWidth;
+
+    /** The image type of the result. */
+    private String m_type;
+
+    /**
+     * Creates a new batch job.<p>
+     *
+     * @param source the source to read the image from
+     * @param destination the destination to write the result image to
+     * @param type the image type of the result, for example {@link Simapi#TYPE_JPEG}
+     * @param operations the operations to apply to the image, in the given order
+     */
+    public BatchJob(Object source, Object destination, String type, ImageOperation... operations) {
+
+        this(source, destination, type, 0, 0, operations);
+    }
+
+    /**
+     * Creates a new batch job with a size hint.<p>
+     *
+     * If the operations scale the image down, the size hint allows decoding the image
+     * with source subsampling, which reduces both the decoding time and the pixel budget
+     * required for the job. The decoded image is at least as large as the given size hint.<p>
+     *
+     * @param source the source to read the image from
+     * @param destination the destination to write the result image to
+     * @param type the image type of the result, for example {@link Simapi#TYPE_JPEG}
+     * @param targetWidth the width the image will be scaled to, or <code>0</code> if not known
+     * @param targetHeight the height the image will be scaled to, or <code>0</code> if not known
+     * @param operations the operations to apply to the image, in the given order
+     */
+    public BatchJob(
+        Object source,
+        Object destination,
+        String type,
+        int targetWidth,
+        int targetHeight,
+        ImageOperation... operations) {
+
+        if (source == null) {
+            throw new IllegalArgumentException("source == null!");
+        }
+        if (destination == null) {
+            throw new IllegalArgumentException("destination == null!");
+        }
+        if (type == null) {
+            throw new IllegalArgumentException("type == null!");
+        }
+        if (source instanceof String) {
+            source = new File((String)source);
+        }
+        if (destination instanceof String) {
+            destination = new File((String)destination);
+        }
+        if (!((source instanceof File)
+            || (source instanceof byte[])
+            || (source instanceof InputStream)
+            || (source instanceof URL))) {
+            throw new IllegalArgumentException("unsupported source " + source.getClass().getName());
+        }
+        if (!((destination instanceof File) || (destination instanceof OutputStream))) {
+            throw new IllegalArgumentException("unsupported destination " + destination.getClass().getName());
+        }
+        m_source = source;
+        m_destination = destination;
+        m_type = type;
+        m_targetWidth = Math.max(0, targetWidth);
+        m_targetHeight = Math.max(0, targetHeight);
+        m_operations = Collections.unmodifiableList(new ArrayList<ImageOperation>(Arrays.asList(operations)));
+    }
+
+    /**
+     * Returns the destination to write the result image to.<p>
+     *
+     * @return the destination to write the result image to
+     */
+    public Object getDestination() {
+
+        return m_destination;
+    }
+
+    /**
+     * Returns the operations to apply to the image.<p>
+     *
+     * @return the operations to apply to the image
+     */
+    public List<ImageOperation> getOperations() {
+
+        return m_operations;
+    }
+
+    /**
+     * Returns the source to read the image from.<p>
+     *
+     * @return the source to read the image from
+     */
+    public Object getSource() {
+
+        return m_source;
+    }
+
+    /**
+     * Returns the height the image will be scaled to, or <code>0</code> if not known.<p>
+     *
+     * @return the height the image will be scaled to
+     */
+    public int getTargetHeight() {
+
+        return m_targetHeight;
+    }
+
+    /**
+     * Returns the width the image will be scaled to, or <code>0</code> if not known.<p>
+     *
+     * @return the width the image will be scaled to
+     */
+    public int getTargetWidth() {
+
+        return m_targetWidth;
+    }
+
+    /**
+     * Returns the image type of the result.<p>
+     *
+     * @return the image type of the result
+     */
+    public String getType() {
+
+        return m_type;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+
+        return m_source + " -> " + m_destination + " (" + m_type + ")";
+    }
+
+    /**
+     * Applies all operations of this job to the given image.<p>
+     *
+     * @param simapi the image processor to use
+     * @param image the image to apply the operations to
+     *
+     * @return the resulting image
+     */
+    protected BufferedImage apply(Simapi simapi, BufferedImage image) {
+
+        for (ImageOperation operation : m_operations) {
+            image = operation.apply(simapi, image);
+        }
+        return image;
+    }
+
+    /**
+     * Returns the source of this job in a form that can be used to create an image input stream.<p>
+     *
+     * @return the source of this job in a form that can be used to create an image input stream
+     *
+     * @throws IOException in case the source could not be opened
+     */
+    protected Object openSource() throws IOException {
+
+        if (m_source instanceof URL) {
+            return ((URL)m_source).openStream();
+        }
+        return m_source;
+    }
+}
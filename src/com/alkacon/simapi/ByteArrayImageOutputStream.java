@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.alkacon.simapi;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+import javax.imageio.stream.ImageOutputStreamImpl;
+
+/**
+ * An image output stream that writes to a growing byte array in memory.<p>
+ *
+ * Unlike the streams created by {@link javax.imageio.ImageIO#createImageOutputStream(Object)}, this stream
+ * never uses a temporary cache file, and it does not buffer the data a second time before it is passed on
+ * to an {@link OutputStream}. The stream supports seeking backwards, as required by some image writers.<p>
+ *
+ * The written data is still available after the stream has been closed.<p>
+ *
+ * @see com.alkacon.simapi.CmykJpegReader.ByteArrayImageInputStream
+ */
+public class ByteArrayImageOutputStream extends ImageOutputStreamImpl {
+
+    /** The unused capacity relative to the written bytes above which {@link #toByteBuffer()} trims the buffer. */
+    private static final double MAX_UNUSED_RATIO = 1.0;
+
+    /** The buffer holding the written data. */
+    private byte[] m_buffer;
+
+    /** The number of bytes written to the buffer. */
+    private int m_length;
+
+    /**
+     * Creates a new byte array image output stream with the given initial capacity.<p>
+     *
+     * @param size the initial capacity of the stream
+     */
+    public ByteArrayImageOutputStream(int size) {
+
+        m_buffer = new byte[Math.max(16, size)];
+    }
+
+    /**
+     * @see javax.imageio.stream.ImageInputStreamImpl#isCached()
+     */
+    @Override
+    public boolean isCached() {
+
+        return true;
+    }
+
+    /**
+     * @see javax.imageio.stream.ImageInputStreamImpl#isCachedMemory()
+     */
+    @Override
+    public boolean isCachedMemory() {
+
+        return true;
+    }
+
+    /**
+     * @see javax.imageio.stream.ImageInputStreamImpl#length()
+     */
+    @Override
+    public long length() {
+
+        return m_length;
+    }
+
+    /**
+     * @see javax.imageio.stream.ImageInputStreamImpl#read()
+     */
+    @Override
+    public int read() throws IOException {
+
+        checkClosed();
+        if (streamPos >= m_length) {
+            return -1;
+        }
+        bitOffset = 0;
+        return m_buffer[(int)streamPos++] & 0xff;
+    }
+
+    /**
+     * @see javax.imageio.stream.ImageInputStreamImpl#read(byte[], int, int)
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+
+        checkClosed();
+        if (streamPos >= m_length) {
+            return -1;
+        }
+        bitOffset = 0;
+        int count = (int)Math.min(m_length - streamPos, len);
+        System.arraycopy(m_buffer, (int)streamPos, b, off, count);
+        streamPos += count;
+        return count;
+    }
+
+    /**
+     * Returns the number of bytes written to this stream.<p>
+     *
+     * @return the number of bytes written to this stream
+     */
+    public int size() {
+
+        return m_length;
+    }
+
+    /**
+     * Returns a read only view of the bytes written to this stream.<p>
+     *
+     * The bytes are not copied, unless the unused capacity of the stream exceeds the number
+     * of written bytes. This never happens for a stream that had to grow, since the buffer only doubles its size.
+     * Only a stream that was presized much too large is trimmed first,
+     * so that the returned view does not keep a mostly unused array in memory.<p>
+     *
+     * The returned buffer reflects later changes to the stream contents,
+     * so it should only be used after all data has been written.<p>
+     *
+     * @return a read only view of the bytes written to this stream
+     */
+    public ByteBuffer toByteBuffer() {
+
+        if ((m_buffer.length - m_length) > (m_length * MAX_UNUSED_RATIO)) {
+            m_buffer = Arrays.copyOf(m_buffer, m_length);
+        }
+        return ByteBuffer.wrap(m_buffer, 0, m_length).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns a copy of the bytes written to this stream.<p>
+     *
+     * @return a copy of the bytes written to this stream
+     */
+    public byte[] toByteArray() {
+
+        return Arrays.copyOf(m_buffer, m_length);
+    }
+
+    /**
+     * @see javax.imageio.stream.ImageOutputStreamImpl#write(byte[], int, int)
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+
+        checkClosed();
+        flushBits();
+        int end = ensureCapacity(len);
+        System.arraycopy(b, off, m_buffer, (int)streamPos, len);
+        streamPos = end;
+    }
+
+    /**
+     * @see javax.imageio.stream.ImageOutputStreamImpl#write(int)
+     */
+    @Override
+    public void write(int b) throws IOException {
+
+        checkClosed();
+        flushBits();
+        int end = ensureCapacity(1);
+        m_buffer[(int)streamPos] = (byte)b;
+        streamPos = end;
+    }
+
+    /**
+     * Writes the bytes written to this stream to the given output stream, without creating a copy.<p>
+     *
+     * @param out the output stream to write to
+     *
+     * @throws IOException in case writing to the output stream fails
+     */
+    public void writeTo(OutputStream out) throws IOException {
+
+        out.write(m_buffer, 0, m_length);
+    }
+
+    /**
+     * Writes the bytes written to this stream to the given channel, without creating a copy.<p>
+     *
+     * @param channel the channel to write to
+     *
+     * @throws IOException in case writing to the channel fails
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+
+        ByteBuffer buffer = ByteBuffer.wrap(m_buffer, 0, m_length);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Makes sure the given number of bytes can be written at the current stream position.<p>
+     *
+     * @param len the number of bytes to write
+     *
+     * @return the stream position after the bytes have been written
+     *
+     * @throws IOException in case the stream would grow beyond the maximum array size
+     */
+    private int ensureCapacity(int len) throws IOException {
+
+        long end = streamPos + len;
+        if (end > Integer.MAX_VALUE) {
+            throw new IOException("Stream too large for a byte array!");
+        }
+        if (end > m_buffer.length) {
+            long capacity = Math.max(end, Math.min(Integer.MAX_VALUE - 8, m_buffer.length * 2L));
+            m_buffer = Arrays.copyOf(m_buffer, (int)capacity);
+        }
+        if (end > m_length) {
+            m_length = (int)end;
+        }
+        return (int)end;
+    }
+}
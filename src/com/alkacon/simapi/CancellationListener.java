@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.alkacon.simapi;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.event.IIOReadProgressListener;
+import javax.imageio.event.IIOWriteProgressListener;
+
+/**
+ * Progress listener that aborts an image reader or writer once a {@link CancellationToken} is cancelled.<p>
+ *
+ * Image readers and writers report their progress every few rows, so decoding and encoding
+ * can be aborted in the middle of an image just like the image operations.<p>
+ */
+public class CancellationListener implements IIOReadProgressListener, IIOWriteProgressListener {
+
+    /** The token that aborts the reader or writer. */
+    private CancellationToken m_token;
+
+    /**
+     * Creates a new cancellation listener.<p>
+     *
+     * @param token the token that aborts the reader or writer
+     */
+    public CancellationListener(CancellationToken token) {
+
+        m_token = token;
+    }
+
+    /**
+     * Reads the first image with the given reader, aborting if the current cancellation token is cancelled.<p>
+     *
+     * @param reader the reader to use, with the input already set
+     * @param param the read parameters
+     *
+     * @return the image read
+     *
+     * @throws IOException in case the image could not be read
+     * @throws ImageCancelledException in case the current cancellation token was cancelled
+     */
+    public static BufferedImage read(ImageReader reader, ImageReadParam param) throws IOException {
+
+        CancellationToken token = CancellationToken.getCurrent();
+        token.check();
+        CancellationListener listener = new CancellationListener(token);
+        reader.addIIOReadProgressListener(listener);
+        BufferedImage result;
+        try {
+            result = reader.read(0, param);
+        } finally {
+            reader.removeIIOReadProgressListener(listener);
+        }
+        // an aborted reader returns a partial image
+        token.check();
+        return result;
+    }
+
+    /**
+     * Writes the image with the given writer, aborting if the current cancellation token is cancelled.<p>
+     *
+     * @param writer the writer to use, with the output already set
+     * @param image the image to write
+     * @param param the write parameters
+     *
+     * @throws IOException in case the image could not be written
+     * @throws ImageCancelledException in case the current cancellation token was cancelled
+     */
+    public static void write(ImageWriter writer, IIOImage image, ImageWriteParam param) throws IOException {
+
+        CancellationToken token = CancellationToken.getCurrent();
+        token.check();
+        CancellationListener listener = new CancellationListener(token);
+        writer.addIIOWriteProgressListener(listener);
+        try {
+            writer.write(null, image, param);
+        } finally {
+            writer.removeIIOWriteProgressListener(listener);
+        }
+        // an aborted writer leaves an incomplete output
+        token.check();
+    }
+
+    /**
+     * @see javax.imageio.event.IIOReadProgressListener#imageComplete(javax.imageio.ImageReader)
+     */
+    public void imageComplete(ImageReader source) {
+
+        // noop
+    }
+
+    /**
+     * @see javax.imageio.event.IIOWriteProgressListener#imageComplete(javax.imageio.ImageWriter)
+     */
+    public void imageComplete(ImageWriter source) {
+
+        // noop
+    }
+
+    /**
+     * @see javax.imageio.event.IIOReadProgressListener#imageProgress(javax.imageio.ImageReader, float)
+     */
+    public void imageProgress(ImageReader source, float percentageDone) {
+
+        if (m_token.isCancelled()) {
+            source.abort();
+        }
+    }
+
+    /**
+     * @see javax.imageio.event.IIOWriteProgressListener#imageProgress(javax.imageio.ImageWriter, float)
+     */
+    public void imageProgress(ImageWriter source, float percentageDone) {
+
+        if (m_token.isCancelled()) {
+            source.abort();
+        }
+    }
+
+    /**
+     * @see javax.imageio.event.IIOReadProgressListener#imageStarted(javax.imageio.ImageReader, int)
+     */
+    public void imageStarted(ImageReader source, int imageIndex) {
+
+        // noop
+    }
+
+    /**
+     * @see javax.imageio.event.IIOWriteProgressListener#imageStarted(javax.imageio.ImageWriter, int)
+     */
+    public void imageStarted(ImageWriter source, int imageIndex) {
+
+        // noop
+    }
+
+    /**
+     * @see javax.imageio.event.IIOReadProgressListener#readAborted(javax.imageio.ImageReader)
+     */
+    public void readAborted(ImageReader source) {
+
+        // noop
+    }
+
+    /**
+     * @see javax.imageio.event.IIOReadProgressListener#sequenceComplete(javax.imageio.ImageReader)
+     */
+    public void sequenceComplete(ImageReader source) {
+
+        // noop
+    }
+
+    /**
+     * @see javax.imageio.event.IIOReadProgressListener#sequenceStarted(javax.imageio.ImageReader, int)
+     */
+    public void sequenceStarted(ImageReader source, int minIndex) {
+
+        // noop
+    }
+
+    /**
+     * @see javax.imageio.event.IIOReadProgressListener#thumbnailComplete(javax.imageio.ImageReader)
+     */
+    public void thumbnailComplete(ImageReader source) {
+
+        // noop
+    }
+
+    /**
+     * @see javax.imageio.event.IIOWriteProgressListener#thumbnailComplete(javax.imageio.ImageWriter)
+     */
+    public void thumbnailComplete(ImageWriter source) {
+
+        // noop
+    }
+
+    /**
+     * @see javax.imageio.event.IIOReadProgressListener#thumbnailProgress(javax.imageio.ImageReader, float)
+     */
+    public void thumbnailProgress(ImageReader source, float percentageDone) {
+
+        imageProgress(source, percentageDone);
+    }
+
+    /**
+     * @see javax.imageio.event.IIOWriteProgressListener#thumbnailProgress(javax.imageio.ImageWriter, float)
+     */
+    public void thumbnailProgress(ImageWriter source, float percentageDone) {
+
+        imageProgress(source, percentageDone);
+    }
+
+    /**
+     * @see javax.imageio.event.IIOReadProgressListener#thumbnailStarted(javax.imageio.ImageReader, int, int)
+     */
+    public void thumbnailStarted(ImageReader source, int imageIndex, int thumbnailIndex) {
+
+        // noop
+    }
+
+    /**
+     * @see javax.imageio.event.IIOWriteProgressListener#thumbnailStarted(javax.imageio.ImageWriter, int, int)
+     */
+    public void thumbnailStarted(ImageWriter source, int imageIndex, int thumbnailIndex) {
+
+        // noop
+    }
+
+    /**
+     * @see javax.imageio.event.IIOWriteProgressListener#writeAborted(javax.imageio.ImageWriter)
+     */
+    public void writeAborted(ImageWriter source) {
+
+        // noop
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.alkacon.simapi;
+
+/**
+ * Allows to abort long running image operations, either on request or once a deadline has expired.<p>
+ *
+ * The row loops of the image operations call {@link #check()} for every row, which throws an
+ * {@link ImageCancelledException} if the token was cancelled, the deadline has expired or the thread
+ * running the operation was interrupted. This bounds the time an abandoned operation keeps a CPU busy
+ * to the time required for a single row.<p>
+ *
+ * A token applies to all operations the current thread performs while it is installed:<pre>
+ * CancellationToken previous = CancellationToken.setCurrent(new CancellationToken(2000));
+ * try {
+ *     image = simapi.resize(image, 800, 600, true);
+ * } finally {
+ *     CancellationToken.setCurrent(previous);
+ * }
+ * </pre>
+ *
+ * {@link Simapi} passes the token to the threads of a {@link SimapiScheduler} and to the fork-join tasks
+ * used for parallel operations.<p>
+ */
+public class CancellationToken {
+
+    /** State of a token that is neither cancelled nor expired. */
+    private static final int STATE_ACTIVE = 0;
+
+    /** State of a cancelled token. */
+    private static final int STATE_CANCELLED = 1;
+
+    /** State of a token whose deadline has expired. */
+    private static final int STATE_EXPIRED = 2;
+
+    /** The token installed for the current thread. */
+    private static final ThreadLocal<CancellationToken> CURRENT = new ThreadLocal<CancellationToken>();
+
+    /** The deadline as {@link System#nanoTime()} value, only valid if {@link #m_hasDeadline} is set. */
+    private long m_deadline;
+
+    /** Indicates if the token has a deadline. */
+    private boolean m_hasDeadline;
+
+    /** Indicates if the token was cancelled. */
+    private volatile boolean m_isCancelled;
+
+    /** The thread whose interruption cancels the token, or <code>null</code>. */
+    private Thread m_owner;
+
+    /** The token this token depends on, or <code>null</code>. */
+    private CancellationToken m_parent;
+
+    /**
+     * Creates a new token without deadline, that is only cancelled by {@link #cancel()}.<p>
+     */
+    public CancellationToken() {
+
+        this(null, null);
+    }
+
+    /**
+     * Creates a new token with a deadline.<p>
+     *
+     * @param timeoutMillis the time in milliseconds after which the operations are aborted
+     */
+    public CancellationToken(long timeoutMillis) {
+
+        this(null, null);
+        m_hasDeadline = true;
+        m_deadline = System.nanoTime() + (timeoutMillis * 1000000L);
+    }
+
+    /**
+     * Creates a new token that depends on the given token and on the interruption of the given thread.<p>
+     *
+     * @param parent the token this token depends on, or <code>null</code>
+     * @param owner the thread whose interruption cancels the token, or <code>null</code>
+     */
+    protected CancellationToken(CancellationToken parent, Thread owner) {
+
+        m_parent = parent;
+        m_owner = owner;
+    }
+
+    /**
+     * Returns the token installed for the current thread.<p>
+     *
+     * If no token is installed, a token is returned that is only cancelled by interrupting the current thread.
+     * The returned token can be passed to other threads that work for the current thread.<p>
+     *
+     * @return the token for the current thread, never <code>null</code>
+     */
+    public static CancellationToken getCurrent() {
+
+        CancellationToken token = CURRENT.get();
+        return token != null ? token : new CancellationToken(null, Thread.currentThread());
+    }
+
+    /**
+     * Installs the given token for the current thread.<p>
+     *
+     * @param token the token to install, or <code>null</code> to remove the installed token
+     *
+     * @return the previously installed token, or <code>null</code>
+     */
+    public static CancellationToken setCurrent(CancellationToken token) {
+
+        CancellationToken previous = CURRENT.get();
+        if (token != null) {
+            CURRENT.set(token);
+        } else {
+            CURRENT.remove();
+        }
+        return previous;
+    }
+
+    /**
+     * Cancels this token and all tokens that depend on it.<p>
+     */
+    public void cancel() {
+
+        m_isCancelled = true;
+    }
+
+    /**
+     * Aborts the current operation if this token is cancelled.<p>
+     *
+     * @throws ImageCancelledException if this token was cancelled, its deadline has expired
+     *      or the current thread was interrupted
+     */
+    public void check() throws ImageCancelledException {
+
+        int state = getState();
+        if (state != STATE_ACTIVE) {
+            throw new ImageCancelledException(state == STATE_EXPIRED);
+        }
+    }
+
+    /**
+     * Creates a token for a stage of the operations of this token that runs on the current thread.<p>
+     *
+     * The stage token is cancelled if this token is cancelled, or if the current thread is interrupted.<p>
+     *
+     * @return a token for a stage that runs on the current thread
+     */
+    public CancellationToken createStageToken() {
+
+        return new CancellationToken(this, Thread.currentThread());
+    }
+
+    /**
+     * Returns <code>true</code> if this token is cancelled, its deadline has expired or the current thread
+     * was interrupted.<p>
+     *
+     * @return <code>true</code> if the operations of this token should be aborted
+     */
+    public boolean isCancelled() {
+
+        return getState() != STATE_ACTIVE;
+    }
+
+    /**
+     * Returns the state of this token, including the state of the token it depends on.<p>
+     *
+     * @return the state of this token
+     */
+    private int getState() {
+
+        if (m_isCancelled
+            || ((m_owner != null) && m_owner.isInterrupted())
+            || Thread.currentThread().isInterrupted()) {
+            return STATE_CANCELLED;
+        }
+        if (m_hasDeadline && ((System.nanoTime() - m_deadline) >= 0)) {
+            return STATE_EXPIRED;
+        }
+        return m_parent != null ? m_parent.getState() : STATE_ACTIVE;
+    }
+}
@@ -270,6 +270,78 @@ public class JPEGImageReader extends ImageReaderBase {
         }
     }
 
+    /**
+     * Returns the name of the color space of the encoded image data, for example {@code YCbCr} or {@code CMYK}.
+     * The color space is determined from the JFIF, Adobe and SOF segments only, the image data is not decoded.
+     *
+     * @param imageIndex the index of the image
+     * @return the name of the color space of the encoded image data
+     * @throws IOException if the header segments can not be read
+     */
+    public String getSourceColorSpace(int imageIndex) throws IOException {
+        checkBounds(imageIndex);
+        initHeader();
+
+        return getSourceCSType(getJFIF(), getAdobeDCT(), getSOF()).name();
+    }
+
+    /**
+     * Returns the number of color components in the frame, as given in the SOF segment.
+     *
+     * @param imageIndex the index of the image
+     * @return the number of color components in the frame, or {@code -1} if no SOF segment was found
+     * @throws IOException if the header segments can not be read
+     */
+    public int getSourceNumComponents(int imageIndex) throws IOException {
+        checkBounds(imageIndex);
+        initHeader();
+
+        SOFSegment sof = getSOF();
+        return sof != null ? sof.componentsInFrame() : -1;
+    }
+
+    /**
+     * Returns {@code true} if the image contains an embedded ICC profile, without parsing the profile.
+     *
+     * @param imageIndex the index of the image
+     * @return {@code true} if the image contains an embedded ICC profile
+     * @throws IOException if the header segments can not be read
+     */
+    public boolean hasEmbeddedICCProfile(int imageIndex) throws IOException {
+        checkBounds(imageIndex);
+
+        return !getAppSegments(JPEG.APP2, "ICC_PROFILE").isEmpty();
+    }
+
+    /**
+     * Returns the EXIF orientation of the image, see {@link TIFF#TAG_ORIENTATION}.
+     *
+     * @param imageIndex the index of the image
+     * @return the EXIF orientation of the image (1 - 8), or {@code 1} if the image has no valid orientation entry
+     * @throws IOException if the header segments can not be read
+     */
+    public int getExifOrientation(int imageIndex) throws IOException {
+        checkBounds(imageIndex);
+
+        try {
+            CompoundDirectory exif = getExif();
+            Entry entry = exif != null ? exif.getEntryById(TIFF.TAG_ORIENTATION) : null;
+
+            if (entry != null && entry.getValue() instanceof Number) {
+                int orientation = ((Number) entry.getValue()).intValue();
+
+                if (orientation >= 1 && orientation <= 8) {
+                    return orientation;
+                }
+            }
+        }
+        catch (IIOException e) {
+            processWarningOccurred("Could not read Exif orientation: " + e.getMessage());
+        }
+
+        return 1;
+    }
+
     @Override
     public void setInput(Object input, boolean seekForwardOnly, boolean ignoreMetadata) {
         super.setInput(input, seekForwardOnly, ignoreMetadata);
@@ -424,7 +496,9 @@ public class JPEGImageReader extends ImageReaderBase {
         // Unfortunately looping is slower than reading all at once, but
         // that requires 2 x memory or more, so a few steps is an ok compromise I guess
         try {
-            final int step = Math.max(1024, srcRegion.height / 10); // TODO: Using a multiple of 8 is probably a good idea for JPEG
+            // The step must be a multiple of the vertical subsampling, otherwise the sampling grid would drift between strips
+            final int ySubsampling = param.getSourceYSubsampling();
+            final int step = ((Math.max(1024, srcRegion.height / 10) + ySubsampling - 1) / ySubsampling) * ySubsampling; // TODO: Using a multiple of 8 is probably a good idea for JPEG
             final int srcMaxY = srcRegion.y + srcRegion.height;
             int destY = dstRegion.y;
 
@@ -788,7 +862,7 @@ public class JPEGImageReader extends ImageReaderBase {
                 processWarningOccurred("Exif chunk has no data.");
             }
             else {
-                ImageInputStream stream = ImageIO.createImageInputStream(data);
+                ImageInputStream stream = new MemoryCacheImageInputStream(data);
                 return (CompoundDirectory) new EXIFReader().read(stream);
 
                 // TODO: Directory offset of thumbnail is wrong/relative to container stream, causing trouble for the EXIFReader...
@@ -52,6 +52,9 @@
 
 package com.alkacon.simapi.CmykJpegReader;
 
+import com.alkacon.simapi.BandTask;
+import com.alkacon.simapi.CancellationToken;
+
 import java.awt.Image;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
@@ -65,6 +68,10 @@ import java.awt.image.ColorModel;
 import java.awt.image.IndexColorModel;
 import java.awt.image.Raster;
 import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Resamples (scales) a {@code BufferedImage} to a new width and height, using
@@ -241,6 +248,258 @@ public class ResampleOp implements BufferedImageOp/* TODO: RasterOp */ {
         Contributor[] p;/* pointer to list of contributions */
     }
 
+    /**
+     * Resamples a band of destination rows of the fast {@code int} resample path, splitting large bands into parallel tasks.
+     */
+    static final class ResampleTask extends BandTask {
+
+        private static final long serialVersionUID = 4180325917582619214L;
+
+        private final IntResampler resampler;
+
+        ResampleTask(IntResampler resampler, int height, int parallelism) {
+
+            super(height, getSplitHeight(height, parallelism));
+            this.resampler = resampler;
+        }
+
+        private ResampleTask(ResampleTask parent, int start, int rows) {
+
+            super(parent, start, rows);
+            this.resampler = parent.resampler;
+        }
+
+        @Override
+        protected BandTask createBandTask(int start, int rows) {
+
+            return new ResampleTask(this, start, rows);
+        }
+
+        @Override
+        protected void processBand(int start, int rows) {
+
+            resampler.resample(start, start + rows);
+        }
+    }
+
+    /**
+     * Two pass separable resampler for images with packed {@code int} pixels
+     * ({@code TYPE_INT_RGB}, {@code TYPE_INT_ARGB} and {@code TYPE_INT_ARGB_PRE}).
+     * <p>
+     * The source rows are resampled horizontally into a {@code float} window that only holds the rows
+     * the vertical filter of one destination row reaches. Every destination row is then resampled
+     * vertically from the window, so the memory required grows with the destination width, not with the image area.
+     * Images with non-premultiplied alpha are premultiplied during the horizontal pass, so transparent
+     * pixels do not bleed their color into the result.
+     */
+    static final class IntResampler {
+
+        private final Raster source;
+        private final WritableRaster dest;
+        private final int srcWidth;
+        private final int dstWidth;
+        private final boolean hasAlpha;
+        private final boolean premultiply;
+        private final Weights xWeights;
+        private final Weights yWeights;
+        private final int windowRows;
+        private final CancellationToken token;
+
+        IntResampler(BufferedImage pSource, BufferedImage pDest, Weights xWeights, Weights yWeights) {
+
+            this.source = pSource.getRaster();
+            this.dest = pDest.getRaster();
+            this.srcWidth = pSource.getWidth();
+            this.dstWidth = pDest.getWidth();
+            this.hasAlpha = pSource.getColorModel().hasAlpha();
+            this.premultiply = hasAlpha && !pSource.isAlphaPremultiplied();
+            this.xWeights = xWeights;
+            this.yWeights = yWeights;
+            this.windowRows = getWindowRows(yWeights, pSource.getHeight());
+            if (((long)windowRows * dstWidth * 4) > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Destination too large for the resample window");
+            }
+            // captured here, since the bands may run on the threads of a fork-join pool
+            this.token = CancellationToken.getCurrent();
+        }
+
+        /**
+         * Returns the number of window rows required to hold all source rows that contribute to one destination row.
+         */
+        private static int getWindowRows(Weights weights, int srcHeight) {
+
+            int result = 1;
+            for (int y = 0; y < (weights.offsets.length - 1); y++) {
+                int min = Integer.MAX_VALUE;
+                int max = Integer.MIN_VALUE;
+                for (int k = weights.offsets[y], end = weights.offsets[y + 1]; k < end; k++) {
+                    min = Math.min(min, weights.pixels[k]);
+                    max = Math.max(max, weights.pixels[k]);
+                }
+                result = Math.max(result, (max - min) + 1);
+            }
+            return Math.min(result, srcHeight);
+        }
+
+        /**
+         * Resamples the destination rows {@code [start, end)}.
+         */
+        void resample(int start, int end) {
+
+            final int rowLength = dstWidth * 4;
+            final float[] window = new float[windowRows * rowLength];
+            final int[] windowSource = new int[windowRows];
+            final int[] srcRow = new int[srcWidth];
+            final float[] acc = new float[rowLength];
+            final int[] row = new int[dstWidth];
+            final int[] offsets = yWeights.offsets;
+            final int[] pixels = yWeights.pixels;
+            final float[] weights = yWeights.weights;
+
+            // the source row held by each window row, every source row has a fixed window row
+            Arrays.fill(windowSource, -1);
+            for (int y = start; y < end; y++) {
+                token.check();
+                Arrays.fill(acc, 0f);
+                for (int k = offsets[y], max = offsets[y + 1]; k < max; k++) {
+                    int srcY = pixels[k];
+                    int slot = srcY % windowRows;
+                    int pos = slot * rowLength;
+                    if (windowSource[slot] != srcY) {
+                        horizontal(srcY, srcRow, window, pos);
+                        windowSource[slot] = srcY;
+                    }
+                    float w = weights[k];
+                    for (int i = 0; i < rowLength; i++) {
+                        acc[i] += window[pos + i] * w;
+                    }
+                }
+                for (int x = 0, i = 0; x < dstWidth; x++, i += 4) {
+                    int a = hasAlpha ? clamp(acc[i]) : 0xff;
+                    float r = acc[i + 1];
+                    float g = acc[i + 2];
+                    float b = acc[i + 3];
+                    if (premultiply) {
+                        if (a == 0) {
+                            r = 0f;
+                            g = 0f;
+                            b = 0f;
+                        } else {
+                            float f = 255f / a;
+                            r *= f;
+                            g *= f;
+                            b *= f;
+                        }
+                    }
+                    row[x] = (a << 24) | (clamp(r) << 16) | (clamp(g) << 8) | clamp(b);
+                }
+                dest.setDataElements(0, y, dstWidth, 1, row);
+            }
+        }
+
+        /**
+         * Resamples the source row {@code y} horizontally into the window, starting at the given position.
+         */
+        private void horizontal(int y, int[] row, float[] window, int pos) {
+
+            final int[] offsets = xWeights.offsets;
+            final int[] pixels = xWeights.pixels;
+            final float[] weights = xWeights.weights;
+
+            source.getDataElements(0, y, srcWidth, 1, row);
+            for (int x = 0; x < dstWidth; x++) {
+                float a = 0f;
+                float r = 0f;
+                float g = 0f;
+                float b = 0f;
+                for (int k = offsets[x], max = offsets[x + 1]; k < max; k++) {
+                    int argb = row[pixels[k]];
+                    float w = weights[k];
+                    if (premultiply) {
+                        float pa = (argb >>> 24) * w;
+                        a += pa;
+                        pa /= 255f;
+                        r += ((argb >> 16) & 0xff) * pa;
+                        g += ((argb >> 8) & 0xff) * pa;
+                        b += (argb & 0xff) * pa;
+                    } else {
+                        a += (argb >>> 24) * w;
+                        r += ((argb >> 16) & 0xff) * w;
+                        g += ((argb >> 8) & 0xff) * w;
+                        b += (argb & 0xff) * w;
+                    }
+                }
+                window[pos++] = a;
+                window[pos++] = r;
+                window[pos++] = g;
+                window[pos++] = b;
+            }
+        }
+
+        private static int clamp(float value) {
+
+            int v = (int)(value + 0.5f);
+            return v < 0 ? 0 : (v > 0xff ? 0xff : v);
+        }
+    }
+
+    /**
+     * Cache key for precomputed filter weights, based on the geometry and the filter type.
+     */
+    static final class WeightsKey {
+
+        private final int dstSize;
+        private final int filterType;
+        private final int srcSize;
+
+        WeightsKey(int srcSize, int dstSize, int filterType) {
+
+            this.srcSize = srcSize;
+            this.dstSize = dstSize;
+            this.filterType = filterType;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof WeightsKey)) {
+                return false;
+            }
+            WeightsKey other = (WeightsKey)obj;
+            return (srcSize == other.srcSize) && (dstSize == other.dstSize) && (filterType == other.filterType);
+        }
+
+        @Override
+        public int hashCode() {
+
+            return (((srcSize * 31) + dstSize) * 31) + filterType;
+        }
+    }
+
+    /**
+     * Precomputed filter weights for resampling one dimension of an image.
+     * <p>
+     * The contributing source pixels of destination pixel {@code i} are stored in
+     * {@code pixels[offsets[i]]} to {@code pixels[offsets[i + 1] - 1]}, with the matching (normalized)
+     * weights at the same positions in {@code weights}.
+     */
+    static final class Weights {
+
+        final int[] offsets;
+        final int[] pixels;
+        final float[] weights;
+
+        Weights(int[] offsets, int[] pixels, float[] weights) {
+
+            this.offsets = offsets;
+            this.pixels = pixels;
+            this.weights = weights;
+        }
+    }
+
     static class CubicFilter implements InterpolationFilter {
 
         // AKA B-Spline
@@ -803,6 +1062,16 @@ public class ResampleOp implements BufferedImageOp/* TODO: RasterOp */ {
     int height;
     int filterType;
 
+    /** Maximum number of precomputed weight tables kept in the cache. */
+    private static final int WEIGHTS_CACHE_SIZE = 64;
+
+    /** Cache of precomputed weight tables, shared by all instances. */
+    private static final Map<WeightsKey, Weights> WEIGHTS_CACHE = Collections.synchronizedMap(
+        new LRUHashMap<WeightsKey, Weights>(WEIGHTS_CACHE_SIZE));
+
+    /** Optional pool used to run the fast resample path in parallel. */
+    private ForkJoinPool pool;
+
     /**
      * Creates a {@code ResampleOp} that will resample input images to the
      * given width and height, using the default interpolation filter.
@@ -936,6 +1205,110 @@ public class ResampleOp implements BufferedImageOp/* TODO: RasterOp */ {
         return 0.42 + (0.50 * Math.cos(Math.PI * t)) + (0.08 * Math.cos(2.0 * Math.PI * t));
     }
 
+    /**
+     * Computes the filter weights for resampling one dimension of an image.
+     *
+     * @param srcSize the source size (width or height)
+     * @param dstSize the destination size (width or height)
+     * @param pFilter the interpolation filter
+     * @return the filter weights
+     */
+    static Weights createWeights(final int srcSize, final int dstSize, final InterpolationFilter pFilter) {
+
+        final double scale = (double)dstSize / (double)srcSize;
+        double width = pFilter.support();
+        double fscale = 1.0;
+        if (scale < 1.0) {
+            // Shrinking, widen the filter to avoid aliasing
+            width = width / scale;
+            fscale = 1.0 / scale;
+            if (width <= .5) {
+                // Reduce to point sampling.
+                width = .5 + 1.0e-6;
+                fscale = 1.0;
+            }
+        }
+
+        final int maxTaps = (int)((width * 2.0) + 1.0) + 1;
+        final int[] offsets = new int[dstSize + 1];
+        final int[] pixels = new int[dstSize * maxTaps];
+        final float[] weights = new float[dstSize * maxTaps];
+        final double[] values = new double[maxTaps];
+
+        int pos = 0;
+        for (int i = 0; i < dstSize; i++) {
+            offsets[i] = pos;
+            // Map the pixel centers, not the pixel edges
+            double center = ((i + 0.5) / scale) - 0.5;
+            int left = (int)Math.ceil(center - width);
+            int right = (int)Math.floor(center + width);
+
+            double density = 0.0;
+            int count = 0;
+            for (int j = left; (j <= right) && (count < maxTaps); j++) {
+                double weight = pFilter.filter((center - j) / fscale) / fscale;
+                int n;
+                if (j < 0) {
+                    n = -j;
+                } else if (j >= srcSize) {
+                    n = ((srcSize - j) + srcSize) - 1;
+                } else {
+                    n = j;
+                }
+                if (n >= srcSize) {
+                    n = n % srcSize;
+                } else if (n < 0) {
+                    n = srcSize - 1;
+                }
+                pixels[pos + count] = n;
+                values[count] = weight;
+                density += weight;
+                count++;
+            }
+            if (density == 0.0) {
+                density = 1.0;
+            }
+            for (int k = 0; k < count; k++) {
+                // Normalize
+                weights[pos + k] = (float)(values[k] / density);
+            }
+            pos += count;
+        }
+        offsets[dstSize] = pos;
+
+        return new Weights(offsets, pixels, weights);
+    }
+
+    /**
+     * Clears the cache of precomputed weight tables.
+     */
+    public static void clearWeightsCache() {
+
+        WEIGHTS_CACHE.clear();
+    }
+
+    /**
+     * Returns the number of precomputed weight tables in the cache.
+     *
+     * @return the number of cached weight tables
+     */
+    public static int getWeightsCacheSize() {
+
+        return WEIGHTS_CACHE.size();
+    }
+
+    private static boolean isIntPacked(final BufferedImage pImage) {
+
+        switch (pImage.getType()) {
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_ARGB:
+            case BufferedImage.TYPE_INT_ARGB_PRE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
     private static InterpolationFilter createFilter(int pFilterType) {
 
         // TODO: Select correct filter based on scale up or down, if undefined!
@@ -1293,6 +1666,12 @@ public class ResampleOp implements BufferedImageOp/* TODO: RasterOp */ {
         }
         BufferedImage result;
 
+        // Fast path for packed int images, as used by the Simapi
+        if (isIntPacked(input) && ((output == null) || (output.getType() == input.getType()))) {
+            result = output != null ? output : new BufferedImage(width, height, input.getType());
+            return resampleInt(input, result, filter);
+        }
+
         //        // Try to use native ImageMagick code
         //        BufferedImage result = MagickAccelerator.filter(this, input, output);
         //        if (result != null) {
@@ -1434,6 +1813,18 @@ public class ResampleOp implements BufferedImageOp/* TODO: RasterOp */ {
         return new RenderingHints(KEY_RESAMPLE_INTERPOLATION, value);
     }
 
+    /**
+     * Sets the pool used to run the resampling of packed {@code int} images in parallel.
+     * <p>
+     * If no pool is set (the default), resampling runs in the calling thread.
+     *
+     * @param pool the pool to use, or {@code null} to resample in the calling thread
+     */
+    public void setPool(ForkJoinPool pool) {
+
+        this.pool = pool;
+    }
+
     /*
         calcXContrib()
 
@@ -1553,6 +1944,47 @@ public class ResampleOp implements BufferedImageOp/* TODO: RasterOp */ {
         return contribX;
     }/* calcXContrib */
 
+    /**
+     * Returns the filter weights for resampling one dimension of an image with the filter of this op,
+     * from the cache if the same geometry was resampled before.
+     * <p>
+     * Weight tables are immutable once created, so they can be shared between threads.
+     *
+     * @param srcSize the source size (width or height)
+     * @param dstSize the destination size (width or height)
+     * @param pFilter the interpolation filter, must match the filter type of this op
+     * @return the filter weights
+     */
+    private Weights getWeights(int srcSize, int dstSize, InterpolationFilter pFilter) {
+
+        WeightsKey key = new WeightsKey(srcSize, dstSize, filterType);
+        Weights weights = WEIGHTS_CACHE.get(key);
+        if (weights == null) {
+            // concurrent threads may compute the same table, which is harmless
+            weights = createWeights(srcSize, dstSize, pFilter);
+            WEIGHTS_CACHE.put(key, weights);
+        }
+        return weights;
+    }
+
+    /**
+     * Resamples a packed {@code int} image using the two pass separable resampler,
+     * in parallel if a pool is set.
+     */
+    private BufferedImage resampleInt(BufferedImage pSource, BufferedImage pDest, InterpolationFilter pFilter) {
+
+        Weights xWeights = getWeights(pSource.getWidth(), pDest.getWidth(), pFilter);
+        Weights yWeights = getWeights(pSource.getHeight(), pDest.getHeight(), pFilter);
+
+        IntResampler resampler = new IntResampler(pSource, pDest, xWeights, yWeights);
+        if (pool != null) {
+            pool.invoke(new ResampleTask(resampler, pDest.getHeight(), pool.getParallelism()));
+        } else {
+            resampler.resample(0, pDest.getHeight());
+        }
+        return pDest;
+    }
+
     /*
         resample()
 
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.alkacon.simapi;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Fork-join task that converts an image to a system compatible <code>int</code> image
+ * by converting horizontal bands of the image in parallel.<p>
+ *
+ * @see ImageKernels#convertToInt(BufferedImage, BufferedImage, int, int)
+ */
+public class ConvertBandTask extends BandTask {
+
+    /** The serial version id. */
+    private static final long serialVersionUID = 2871502933464380946L;
+
+    /** The source image to convert. */
+    private BufferedImage m_source;
+
+    /** The target image to write the converted band to. */
+    private BufferedImage m_target;
+
+    /**
+     * Creates a new task that converts the complete source image to the target image.<p>
+     *
+     * @param source the source image to convert
+     * @param target the target image to write the converted pixels to
+     * @param parallelism the number of parallel threads that will be used for the conversion
+     */
+    public ConvertBandTask(BufferedImage source, BufferedImage target, int parallelism) {
+
+        super(target.getHeight(), getSplitHeight(target.getHeight(), parallelism));
+        m_source = source;
+        m_target = target;
+    }
+
+    /**
+     * Creates a new task that converts a band of the source image to the target image.<p>
+     *
+     * @param parent the task that converts the complete image
+     * @param bandY the y position of the band
+     * @param bandHeight the height of the band
+     */
+    private ConvertBandTask(ConvertBandTask parent, int bandY, int bandHeight) {
+
+        super(parent, bandY, bandHeight);
+        m_source = parent.m_source;
+        m_target = parent.m_target;
+    }
+
+    /**
+     * @see com.alkacon.simapi.BandTask#createBandTask(int, int)
+     */
+    @Override
+    protected BandTask createBandTask(int bandY, int bandHeight) {
+
+        return new ConvertBandTask(this, bandY, bandHeight);
+    }
+
+    /**
+     * Converts a band of the source image.<p>
+     *
+     * @see com.alkacon.simapi.BandTask#processBand(int, int)
+     */
+    @Override
+    protected void processBand(int bandY, int bandHeight) {
+
+        ImageKernels.convertToInt(m_source, m_target, bandY, bandHeight);
+    }
+}
@@ -25,6 +25,8 @@
 
 package com.alkacon.simapi.GifWriter;
 
+import com.alkacon.simapi.CancellationToken;
+
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferByte;
 import java.awt.image.IndexColorModel;
@@ -555,6 +557,9 @@ public class Quantize {
             int distance;
         }
 
+        /** The number of pixels after which the cancellation token is checked, must be a power of 2. */
+        static final int CHECK_INTERVAL = 4096;
+
         /** The color map, */
         byte colorMap[][];
 
@@ -579,6 +584,9 @@ public class Quantize {
 
         private BufferedImage m_source;
 
+        /** The cancellation token that is checked every {@link #CHECK_INTERVAL} pixels. */
+        private CancellationToken m_token;
+
         private Node root;
 
         /**
@@ -595,6 +603,7 @@ public class Quantize {
             this.m_pixels = pixels;
             this.m_maxColors = maxColors;
             this.m_alphaToBitmask = alphaToBitmask;
+            this.m_token = CancellationToken.getCurrent();
 
             int i = maxColors;
             // tree_depth = log maxColors
@@ -680,6 +689,9 @@ public class Quantize {
             byte[] dst = ((DataBufferByte)dest.getRaster().getDataBuffer()).getData();
 
             for (int i = 0; i < m_pixels.length; i++) {
+                if ((i & (CHECK_INTERVAL - 1)) == 0) {
+                    m_token.check();
+                }
                 int pixel = m_pixels[i];
                 int red = (pixel >> 16) & 0xff;
                 int green = (pixel >> 8) & 0xff;
@@ -737,6 +749,9 @@ public class Quantize {
             addTransparency = false;
             firstColor = 0;
             for (int i = 0; i < m_pixels.length; i++) {
+                if ((i & (CHECK_INTERVAL - 1)) == 0) {
+                    m_token.check();
+                }
                 int pixel = m_pixels[i];
                 int red = (pixel >> 16) & 0xff;
                 int green = (pixel >> 8) & 0xff;
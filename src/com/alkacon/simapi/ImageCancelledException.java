@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.alkacon.simapi;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Signals that an image operation was aborted because its {@link CancellationToken} was cancelled
+ * or its deadline has expired.<p>
+ *
+ * The exception is unchecked, so it can be thrown from the row loops of image filters
+ * that implement interfaces without checked exceptions.<p>
+ *
+ * @see CancellationToken#check()
+ */
+public class ImageCancelledException extends CancellationException {
+
+    /** The serial version id. */
+    private static final long serialVersionUID = -2871934503157640172L;
+
+    /** Indicates if the deadline of the operation has expired. */
+    private boolean m_isDeadlineExpired;
+
+    /**
+     * Creates a new image cancelled exception.<p>
+     *
+     * @param deadlineExpired <code>true</code> if the deadline of the operation has expired,
+     *      <code>false</code> if the operation was cancelled
+     */
+    public ImageCancelledException(boolean deadlineExpired) {
+
+        super(deadlineExpired ? "Image operation deadline has expired!" : "Image operation was cancelled!");
+        m_isDeadlineExpired = deadlineExpired;
+    }
+
+    /**
+     * Returns <code>true</code> if the deadline of the operation has expired.<p>
+     *
+     * @return <code>true</code> if the deadline of the operation has expired,
+     *      <code>false</code> if the operation was cancelled
+     */
+    public boolean isDeadlineExpired() {
+
+        return m_isDeadlineExpired;
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.alkacon.simapi;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.ImageConsumer;
+import java.awt.image.ImageFilter;
+import java.awt.image.RGBImageFilter;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Hashtable;
+
+/**
+ * Runs an AWT {@link ImageFilter} directly on the pixels of a {@link BufferedImage}.<p>
+ *
+ * The filter is fed with the <code>int</code> pixels of the source image the same way an
+ * image producer would deliver them, and the filtered pixels are collected directly into the data buffer
+ * of the result image. This avoids the producer / consumer chain of the AWT toolkit, which
+ * copies the image several times and requires the toolkit to be initialized.<p>
+ *
+ * The pixel data of the source image is passed to the filter without copying, so the filter must not
+ * change the pixel array it is given. This is true for all filters in the <code>com.alkacon.simapi.filter</code>
+ * package and the {@link java.awt.image.RGBImageFilter} base class.<p>
+ *
+ * Point filters process the pixels while they are delivered, so the pixels are delivered to them in bands
+ * of rows, and the {@link CancellationToken} of the current thread is checked before each band.<p>
+ */
+public class ImageFilterRunner implements ImageConsumer {
+
+    /** The hints the pixels are delivered with, the same an image producer for a buffered image uses. */
+    private static final int PRODUCER_HINTS = TOPDOWNLEFTRIGHT | COMPLETESCANLINES | SINGLEPASS | SINGLEFRAME;
+
+    /** The number of rows delivered to a point filter at once. */
+    private static final int BAND_ROWS = 64;
+
+    /** The color model of the filtered pixels. */
+    private ColorModel m_colorModel;
+
+    /** The height of the result image. */
+    private int m_height;
+
+    /** The pixels of the result image. */
+    private int[] m_pixels;
+
+    /** The result image. */
+    private BufferedImage m_result;
+
+    /** The status the filter has completed the image with. */
+    private int m_status;
+
+    /** The width of the result image. */
+    private int m_width;
+
+    /**
+     * Creates a new image filter runner.<p>
+     */
+    protected ImageFilterRunner() {
+
+        // instances are only created by the filter method
+    }
+
+    /**
+     * Applies the given filter to the given image.<p>
+     *
+     * @param image the image to filter, must be of type {@link BufferedImage#TYPE_INT_RGB} or {@link BufferedImage#TYPE_INT_ARGB}
+     * @param filter the filter to apply
+     *
+     * @return a new image with the filter applied, of type {@link BufferedImage#TYPE_INT_ARGB}
+     *      or {@link BufferedImage#TYPE_INT_RGB} in case the filtered pixels have no alpha channel
+     */
+    public static BufferedImage filter(BufferedImage image, ImageFilter filter) {
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        Raster raster = image.getRaster();
+        int[] pixels = ((DataBufferInt)raster.getDataBuffer()).getData();
+        int stride = ((SinglePixelPackedSampleModel)raster.getSampleModel()).getScanlineStride();
+        int offset = raster.getDataBuffer().getOffset()
+            - raster.getSampleModelTranslateX()
+            - (raster.getSampleModelTranslateY() * stride);
+        if ((offset != 0) || (stride != width)) {
+            // some filters expect the pixels to start at offset 0 and ignore the scan line size
+            pixels = (int[])raster.getDataElements(0, 0, width, height, null);
+        }
+
+        ImageFilterRunner runner = new ImageFilterRunner();
+        // the filter instance has its own state, the filter itself is not changed
+        ImageFilter instance = filter.getFilterInstance(runner);
+        ColorModel cm = image.getColorModel();
+        instance.setDimensions(width, height);
+        instance.setProperties(new Hashtable<Object, Object>());
+        instance.setColorModel(cm);
+        instance.setHints(PRODUCER_HINTS);
+        CancellationToken token = CancellationToken.getCurrent();
+        if (instance instanceof RGBImageFilter) {
+            // point filters do their work in setPixels, deliver bands to be able to abort in between
+            for (int y = 0; y < height; y += BAND_ROWS) {
+                token.check();
+                instance.setPixels(0, y, width, Math.min(BAND_ROWS, height - y), cm, pixels, y * width, width);
+            }
+        } else {
+            instance.setPixels(0, 0, width, height, cm, pixels, 0, width);
+        }
+        token.check();
+        instance.imageComplete(STATICIMAGEDONE);
+        return runner.getResult();
+    }
+
+    /**
+     * @see java.awt.image.ImageConsumer#imageComplete(int)
+     */
+    public void imageComplete(int status) {
+
+        m_status = status;
+    }
+
+    /**
+     * @see java.awt.image.ImageConsumer#setColorModel(java.awt.image.ColorModel)
+     */
+    public void setColorModel(ColorModel model) {
+
+        m_colorModel = model;
+    }
+
+    /**
+     * @see java.awt.image.ImageConsumer#setDimensions(int, int)
+     */
+    public void setDimensions(int width, int height) {
+
+        m_width = width;
+        m_height = height;
+        m_result = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        m_pixels = ((DataBufferInt)m_result.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * @see java.awt.image.ImageConsumer#setHints(int)
+     */
+    public void setHints(int hintflags) {
+
+        // the pixels are stored directly, the order does not matter
+    }
+
+    /**
+     * @see java.awt.image.ImageConsumer#setPixels(int, int, int, int, java.awt.image.ColorModel, byte[], int, int)
+     */
+    public void setPixels(int x, int y, int w, int h, ColorModel model, byte[] pixels, int off, int scansize) {
+
+        checkColorModel(model);
+        for (int row = Math.max(0, -y), rows = Math.min(h, m_height - y); row < rows; row++) {
+            int s = off + (row * scansize);
+            int d = ((y + row) * m_width) + x;
+            for (int col = Math.max(0, -x), cols = Math.min(w, m_width - x); col < cols; col++) {
+                m_pixels[d + col] = model.getRGB(pixels[s + col] & 0xff);
+            }
+        }
+    }
+
+    /**
+     * @see java.awt.image.ImageConsumer#setPixels(int, int, int, int, java.awt.image.ColorModel, int[], int, int)
+     */
+    public void setPixels(int x, int y, int w, int h, ColorModel model, int[] pixels, int off, int scansize) {
+
+        checkColorModel(model);
+        boolean isDefault = isDefaultRGB(model);
+        int startCol = Math.max(0, -x);
+        int cols = Math.min(w, m_width - x);
+        for (int row = Math.max(0, -y), rows = Math.min(h, m_height - y); row < rows; row++) {
+            int s = off + (row * scansize);
+            int d = ((y + row) * m_width) + x;
+            if (isDefault) {
+                if (cols > startCol) {
+                    System.arraycopy(pixels, s + startCol, m_pixels, d + startCol, cols - startCol);
+                }
+            } else {
+                for (int col = startCol; col < cols; col++) {
+                    m_pixels[d + col] = model.getRGB(pixels[s + col]);
+                }
+            }
+        }
+    }
+
+    /**
+     * @see java.awt.image.ImageConsumer#setProperties(java.util.Hashtable)
+     */
+    public void setProperties(Hashtable<?, ?> props) {
+
+        // properties are not used
+    }
+
+    /**
+     * Returns the filtered image.<p>
+     *
+     * @return the filtered image
+     */
+    protected BufferedImage getResult() {
+
+        if ((m_status == IMAGEERROR) || (m_status == IMAGEABORTED) || (m_result == null)) {
+            throw new IllegalStateException("image filter did not produce an image");
+        }
+        if ((m_colorModel != null) && !m_colorModel.hasAlpha()) {
+            // the filtered pixels are opaque, use the same pixels without alpha channel
+            WritableRaster raster = Raster.createPackedRaster(
+                m_result.getRaster().getDataBuffer(),
+                m_width,
+                m_height,
+                m_width,
+                new int[] {0xff0000, 0xff00, 0xff},
+                null);
+            return new BufferedImage(new DirectColorModel(24, 0xff0000, 0xff00, 0xff), raster, false, null);
+        }
+        return m_result;
+    }
+
+    /**
+     * Remembers the color model of the delivered pixels.<p>
+     *
+     * In case pixels are delivered with different color models, the result uses the default RGB color model.<p>
+     *
+     * @param model the color model of the delivered pixels
+     */
+    private void checkColorModel(ColorModel model) {
+
+        if (m_colorModel == null) {
+            m_colorModel = model;
+        } else if (m_colorModel != model) {
+            m_colorModel = ColorModel.getRGBdefault();
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if pixels in the given color model are already default ARGB values.<p>
+     *
+     * @param model the color model to check
+     *
+     * @return <code>true</code> if pixels in the given color model are already default ARGB values
+     */
+    private boolean isDefaultRGB(ColorModel model) {
+
+        if (model == ColorModel.getRGBdefault()) {
+            return true;
+        }
+        if (model instanceof DirectColorModel) {
+            DirectColorModel dcm = (DirectColorModel)model;
+            return (dcm.getAlphaMask() == 0xff000000)
+                && (dcm.getRedMask() == 0xff0000)
+                && (dcm.getGreenMask() == 0xff00)
+                && (dcm.getBlueMask() == 0xff)
+                && !dcm.isAlphaPremultiplied()
+                && dcm.getColorSpace().isCS_sRGB();
+        }
+        return false;
+    }
+}
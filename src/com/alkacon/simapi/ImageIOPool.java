@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.alkacon.simapi;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.imageio.IIOException;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.spi.IIORegistry;
+import javax.imageio.spi.ImageReaderSpi;
+import javax.imageio.spi.ImageWriterSpi;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Keeps image readers and writers for reuse by the current thread.<p>
+ *
+ * Looking up a reader or writer in the {@link IIORegistry} and creating a new instance is a noticeable
+ * part of the cost of reading or writing small images. This pool keeps one idle reader per reader plugin and one
+ * idle writer per image format for every thread. Readers and writers are {@link ImageReader#reset() reset}
+ * when they are returned to the pool.<p>
+ *
+ * Every reader or writer obtained from the pool must be returned with {@link #releaseReader(ImageReader)}
+ * or {@link #releaseWriter(PooledWriter)}. If a reader or writer for the same plugin is requested again before
+ * the first one has been released, a new instance is created, so nested use in the same thread is safe.<p>
+ */
+public final class ImageIOPool {
+
+    /**
+     * An image writer together with its preconfigured write parameters.<p>
+     */
+    public static final class PooledWriter {
+
+        /** The image type of the writer. */
+        private String m_formatName;
+
+        /** The preconfigured write parameters. */
+        private ImageWriteParam m_param;
+
+        /** The image writer. */
+        private ImageWriter m_writer;
+
+        /**
+         * Creates a new pooled writer.<p>
+         *
+         * If the writer supports compression, the compression mode of the write parameters is set to explicit,
+         * so that only the compression quality needs to be set before the writer is used.<p>
+         *
+         * @param formatName the image type of the writer
+         * @param writer the image writer
+         */
+        PooledWriter(String formatName, ImageWriter writer) {
+
+            m_formatName = formatName;
+            m_writer = writer;
+            m_param = writer.getDefaultWriteParam();
+            if (m_param.canWriteCompressed()) {
+                // set compression parameters if supported by writer
+                m_param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                if ((m_param.getCompressionTypes() != null) && (m_param.getCompressionType() == null)) {
+                    // a compression parameter is required but not provided, use the first one available
+                    m_param.setCompressionType(m_param.getCompressionTypes()[0]);
+                }
+            }
+        }
+
+        /**
+         * Returns the image type of the writer.<p>
+         *
+         * @return the image type of the writer
+         */
+        public String getFormatName() {
+
+            return m_formatName;
+        }
+
+        /**
+         * Returns the preconfigured write parameters.<p>
+         *
+         * @return the preconfigured write parameters
+         */
+        public ImageWriteParam getParam() {
+
+            return m_param;
+        }
+
+        /**
+         * Returns the image writer.<p>
+         *
+         * @return the image writer
+         */
+        public ImageWriter getWriter() {
+
+            return m_writer;
+        }
+    }
+
+    /** The idle readers of the current thread, by reader plugin. */
+    private static final ThreadLocal<Map<ImageReaderSpi, ImageReader>> READERS = new ThreadLocal<Map<ImageReaderSpi, ImageReader>>() {
+
+        @Override
+        protected Map<ImageReaderSpi, ImageReader> initialValue() {
+
+            return new HashMap<ImageReaderSpi, ImageReader>();
+        }
+    };
+
+    /** The idle writers of the current thread, by image type. */
+    private static final ThreadLocal<Map<String, PooledWriter>> WRITERS = new ThreadLocal<Map<String, PooledWriter>>() {
+
+        @Override
+        protected Map<String, PooledWriter> initialValue() {
+
+            return new HashMap<String, PooledWriter>();
+        }
+    };
+
+    /**
+     * Hides the public constructor.<p>
+     */
+    private ImageIOPool() {
+
+        // utility class
+    }
+
+    /**
+     * Disposes all idle readers and writers of the current thread.<p>
+     *
+     * Should be called before a thread of a container managed thread pool is returned to the pool,
+     * in case the image library is unloaded while the thread is kept alive.<p>
+     */
+    public static void clear() {
+
+        Map<ImageReaderSpi, ImageReader> readers = READERS.get();
+        for (ImageReader reader : readers.values()) {
+            reader.dispose();
+        }
+        READERS.remove();
+        Map<String, PooledWriter> writers = WRITERS.get();
+        for (PooledWriter writer : writers.values()) {
+            writer.getWriter().dispose();
+        }
+        WRITERS.remove();
+    }
+
+    /**
+     * Returns an image reader for the given image input stream, with the input of the reader already set.<p>
+     *
+     * The reader is selected the same way as {@link javax.imageio.ImageIO#getImageReaders(Object)} does,
+     * but an idle reader of the current thread is reused if available.<p>
+     *
+     * @param stream the image input stream to read from
+     *
+     * @return an image reader for the given stream
+     *
+     * @throws IOException in case no reader is available for the input
+     */
+    public static ImageReader getReader(ImageInputStream stream) throws IOException {
+
+        Iterator<ImageReaderSpi> spis = IIORegistry.getDefaultInstance().getServiceProviders(
+            ImageReaderSpi.class,
+            true);
+        while (spis.hasNext()) {
+            ImageReaderSpi spi = spis.next();
+            boolean canDecode;
+            // a provider that does not restore the stream position must not affect the next provider
+            stream.mark();
+            try {
+                canDecode = spi.canDecodeInput(stream);
+            } catch (IOException e) {
+                canDecode = false;
+            } finally {
+                stream.reset();
+            }
+            if (canDecode) {
+                ImageReader reader = READERS.get().remove(spi);
+                if (reader == null) {
+                    reader = spi.createReaderInstance();
+                }
+                reader.setInput(stream, true, true);
+                return reader;
+            }
+        }
+        throw new IIOException("No image reader found for input!");
+    }
+
+    /**
+     * Returns a writer for the given image type, with write parameters prepared for compression if supported.<p>
+     *
+     * @param formatName the image type to write, must be one of the types returned by {@link Simapi#getImageType(String)}
+     *
+     * @return a writer for the given image type
+     *
+     * @throws IOException in case no writer is available for the image type
+     */
+    public static PooledWriter getWriter(String formatName) throws IOException {
+
+        PooledWriter writer = WRITERS.get().remove(formatName);
+        if (writer == null) {
+            Iterator<ImageWriterSpi> spis = IIORegistry.getDefaultInstance().getServiceProviders(
+                ImageWriterSpi.class,
+                true);
+            while (spis.hasNext() && (writer == null)) {
+                ImageWriterSpi spi = spis.next();
+                for (String name : spi.getFormatNames()) {
+                    if (name.equals(formatName)) {
+                        writer = new PooledWriter(formatName, spi.createWriterInstance());
+                        break;
+                    }
+                }
+            }
+            if (writer == null) {
+                throw new IIOException("No image writer found for format '" + formatName + "'");
+            }
+        }
+        return writer;
+    }
+
+    /**
+     * Returns a reader obtained with {@link #getReader(ImageInputStream)} to the pool of the current thread.<p>
+     *
+     * The reader must not be used by the caller afterwards.<p>
+     *
+     * @param reader the reader to return to the pool
+     */
+    public static void releaseReader(ImageReader reader) {
+
+        reader.reset();
+        ImageReaderSpi spi = reader.getOriginatingProvider();
+        Map<ImageReaderSpi, ImageReader> readers = READERS.get();
+        if ((spi == null) || readers.containsKey(spi)) {
+            // there is already an idle reader for this plugin
+            reader.dispose();
+        } else {
+            readers.put(spi, reader);
+        }
+    }
+
+    /**
+     * Returns a writer obtained with {@link #getWriter(String)} to the pool of the current thread.<p>
+     *
+     * The writer must not be used by the caller afterwards.<p>
+     *
+     * @param writer the writer to return to the pool
+     */
+    public static void releaseWriter(PooledWriter writer) {
+
+        writer.getWriter().reset();
+        Map<String, PooledWriter> writers = WRITERS.get();
+        if (writers.containsKey(writer.getFormatName())) {
+            // there is already an idle writer for this type
+            writer.getWriter().dispose();
+        } else {
+            writers.put(writer.getFormatName(), writer);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.alkacon.simapi;
+
+/**
+ * Describes an image as read from the image header, without decoding the image data.<p>
+ *
+ * @see Simapi#probe(java.io.File)
+ */
+public class ImageInfo {
+
+    /** The name of the color space of the encoded image data. */
+    private String m_colorSpace;
+
+    /** The image format. */
+    private String m_format;
+
+    /** Indicates if the image has an alpha channel. */
+    private boolean m_hasAlpha;
+
+    /** Indicates if the image contains an embedded ICC profile. */
+    private boolean m_hasIccProfile;
+
+    /** The height of the image. */
+    private int m_height;
+
+    /** The number of color components of the image. */
+    private int m_numComponents;
+
+    /** The EXIF orientation of the image. */
+    private int m_orientation;
+
+    /** The width of the image. */
+    private int m_width;
+
+    /**
+     * Creates a new image info.<p>
+     *
+     * @param format the image format, for example {@link Simapi#TYPE_JPEG}
+     * @param width the width of the image
+     * @param height the height of the image
+     * @param numComponents the number of color components of the image, including alpha
+     * @param hasAlpha indicates if the image has an alpha channel
+     * @param colorSpace the name of the color space of the encoded image data
+     * @param hasIccProfile indicates if the image contains an embedded ICC profile
+     * @param orientation the EXIF orientation of the image (1 - 8)
+     */
+    public ImageInfo(
+        String format,
+        int width,
+        int height,
+        int numComponents,
+        boolean hasAlpha,
+        String colorSpace,
+        boolean hasIccProfile,
+        int orientation) {
+
+        m_format = format;
+        m_width = width;
+        m_height = height;
+        m_numComponents = numComponents;
+        m_hasAlpha = hasAlpha;
+        m_colorSpace = colorSpace;
+        m_hasIccProfile = hasIccProfile;
+        m_orientation = orientation;
+    }
+
+    /**
+     * Returns the name of the color space of the encoded image data.<p>
+     *
+     * For JPEG images this is the color space of the compressed data, for example <code>YCbCr</code>,
+     * <code>CMYK</code> or <code>YCCK</code>. For other formats this is <code>RGB</code>, <code>Gray</code>,
+     * <code>CMYK</code> or <code>Unknown</code>.<p>
+     *
+     * @return the name of the color space of the encoded image data
+     */
+    public String getColorSpace() {
+
+        return m_colorSpace;
+    }
+
+    /**
+     * Returns the image format, for example {@link Simapi#TYPE_JPEG}.<p>
+     *
+     * @return the image format
+     */
+    public String getFormat() {
+
+        return m_format;
+    }
+
+    /**
+     * Returns the height of the image.<p>
+     *
+     * @return the height of the image
+     */
+    public int getHeight() {
+
+        return m_height;
+    }
+
+    /**
+     * Returns the number of color components of the image, including alpha.<p>
+     *
+     * @return the number of color components of the image
+     */
+    public int getNumComponents() {
+
+        return m_numComponents;
+    }
+
+    /**
+     * Returns the EXIF orientation of the image.<p>
+     *
+     * The value is between 1 and 8, as defined by the EXIF standard. <code>1</code> means the image
+     * is stored upright, this is also returned for images without orientation information.
+     * The orientation is only read from JPEG images.<p>
+     *
+     * @return the EXIF orientation of the image
+     */
+    public int getOrientation() {
+
+        return m_orientation;
+    }
+
+    /**
+     * Returns the width of the image.<p>
+     *
+     * @return the width of the image
+     */
+    public int getWidth() {
+
+        return m_width;
+    }
+
+    /**
+     * Returns <code>true</code> if the image has an alpha channel.<p>
+     *
+     * @return <code>true</code> if the image has an alpha channel
+     */
+    public boolean hasAlpha() {
+
+        return m_hasAlpha;
+    }
+
+    /**
+     * Returns <code>true</code> if the image contains an embedded ICC profile.<p>
+     *
+     * Embedded profiles are only detected in JPEG images.<p>
+     *
+     * @return <code>true</code> if the image contains an embedded ICC profile
+     */
+    public boolean hasIccProfile() {
+
+        return m_hasIccProfile;
+    }
+
+    /**
+     * Returns <code>true</code> if the width and height of the image are swapped
+     * when it is displayed according to the EXIF orientation.<p>
+     *
+     * @return <code>true</code> if the width and height of the image are swapped
+     */
+    public boolean isRotated() {
+
+        return m_orientation > 4;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+
+        return m_format
+            + " "
+            + m_width
+            + "x"
+            + m_height
+            + " "
+            + m_colorSpace
+            + " ("
+            + m_numComponents
+            + (m_hasAlpha ? " components, alpha" : " components")
+            + (m_hasIccProfile ? ", ICC" : "")
+            + ", orientation "
+            + m_orientation
+            + ")";
+    }
+}
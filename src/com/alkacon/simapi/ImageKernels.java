@@ -0,0 +1,455 @@
+/*
+ * Copyright (c) Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.alkacon.simapi;
+
+import java.awt.Color;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * Pixel kernels that work directly on the packed <code>int</code> pixels of
+ * {@link BufferedImage#TYPE_INT_RGB} and {@link BufferedImage#TYPE_INT_ARGB} images.<p>
+ *
+ * The kernels avoid the generic Java 2D drawing pipeline for simple operations that
+ * are performed on almost every image processed.<p>
+ */
+public final class ImageKernels {
+
+    /** Products of two 8 bit values where 255 represents 1.0, indexed by <code>(a &lt;&lt; 8) | b</code>. */
+    private static final byte[] MUL8 = new byte[256 * 256];
+
+    static {
+        for (int a = 0; a < 256; a++) {
+            for (int b = 0; b < 256; b++) {
+                MUL8[(a << 8) | b] = (byte)mul8(a, b);
+            }
+        }
+    }
+
+    /**
+     * Hides the public constructor.<p>
+     */
+    private ImageKernels() {
+
+        // utility class
+    }
+
+    /**
+     * Returns <code>true</code> if the pixels of the given image can be converted with {@link #convertToInt(BufferedImage, BufferedImage, int, int)}.<p>
+     *
+     * Supported are images with byte data in the layouts the image readers usually deliver:
+     * interleaved 8 bit sRGB with or without alpha (for example {@link BufferedImage#TYPE_3BYTE_BGR}
+     * and {@link BufferedImage#TYPE_4BYTE_ABGR}), {@link BufferedImage#TYPE_BYTE_GRAY}
+     * and indexed images with up to 8 bit per pixel.<p>
+     *
+     * Images with transparency can only be converted if the target has an alpha channel,
+     * since otherwise the pixels must be composed against the background.<p>
+     *
+     * @param image the image to check
+     * @param targetHasAlpha <code>true</code> if the target is of type {@link BufferedImage#TYPE_INT_ARGB}
+     *
+     * @return <code>true</code> if the pixels of the given image can be converted
+     */
+    public static boolean canConvertToInt(BufferedImage image, boolean targetHasAlpha) {
+
+        Raster raster = image.getRaster();
+        DataBuffer buffer = raster.getDataBuffer();
+        if (!(buffer instanceof DataBufferByte) || (buffer.getNumBanks() != 1)) {
+            return false;
+        }
+        ColorModel cm = image.getColorModel();
+        SampleModel sm = raster.getSampleModel();
+        if (!targetHasAlpha && (cm.getTransparency() != Transparency.OPAQUE)) {
+            return false;
+        }
+        if (cm instanceof IndexColorModel) {
+            return (sm instanceof MultiPixelPackedSampleModel)
+                || ((sm instanceof ComponentSampleModel) && (sm.getNumBands() == 1));
+        }
+        if (!(cm instanceof ComponentColorModel) || !(sm instanceof ComponentSampleModel)) {
+            return false;
+        }
+        if (image.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+            return true;
+        }
+        if (!cm.getColorSpace().isCS_sRGB() || cm.isAlphaPremultiplied()) {
+            return false;
+        }
+        for (int size : cm.getComponentSize()) {
+            if (size != 8) {
+                return false;
+            }
+        }
+        int bands = sm.getNumBands();
+        return (bands == 3) || ((bands == 4) && cm.hasAlpha());
+    }
+
+    /**
+     * Converts the given rows of the source image to the target image, reading and writing the image data buffers directly.<p>
+     *
+     * This gives the same result as drawing the source image on the target,
+     * but avoids the generic and for some source layouts slow Java 2D conversion loops.<p>
+     *
+     * @param source the source image, must be supported according to {@link #canConvertToInt(BufferedImage, boolean)}
+     * @param target the target image, must be a new {@link BufferedImage#TYPE_INT_RGB} or {@link BufferedImage#TYPE_INT_ARGB}
+     *      image with the same dimensions as the source
+     * @param y the first row to convert
+     * @param height the number of rows to convert
+     */
+    public static void convertToInt(BufferedImage source, BufferedImage target, int y, int height) {
+
+        Raster raster = source.getRaster();
+        DataBuffer buffer = raster.getDataBuffer();
+        byte[] data = ((DataBufferByte)buffer).getData();
+        int[] dest = ((DataBufferInt)target.getRaster().getDataBuffer()).getData();
+        int width = source.getWidth();
+        int translateX = raster.getSampleModelTranslateX();
+        int translateY = raster.getSampleModelTranslateY();
+        ColorModel cm = source.getColorModel();
+        SampleModel sm = raster.getSampleModel();
+
+        if (sm instanceof MultiPixelPackedSampleModel) {
+            // indexed image with 1, 2 or 4 bit per pixel
+            MultiPixelPackedSampleModel mpp = (MultiPixelPackedSampleModel)sm;
+            int[] lut = getLookupTable((IndexColorModel)cm);
+            int bits = mpp.getPixelBitStride();
+            int mask = (1 << bits) - 1;
+            int stride = mpp.getScanlineStride();
+            int bitOffset = mpp.getDataBitOffset() - (translateX * bits);
+            for (int row = y; row < (y + height); row++) {
+                int base = buffer.getOffset() + ((row - translateY) * stride);
+                int d = row * width;
+                for (int x = 0; x < width; x++) {
+                    int bit = bitOffset + (x * bits);
+                    dest[d++] = lut[(data[base + (bit >> 3)] >> (8 - bits - (bit & 7))) & mask];
+                }
+            }
+            return;
+        }
+
+        ComponentSampleModel csm = (ComponentSampleModel)sm;
+        int pixelStride = csm.getPixelStride();
+        int stride = csm.getScanlineStride();
+        int[] offsets = csm.getBandOffsets();
+        int start = buffer.getOffset() - (translateX * pixelStride) - (translateY * stride);
+        int[] lut = (cm instanceof IndexColorModel) ? getLookupTable((IndexColorModel)cm) : null;
+        for (int row = y; row < (y + height); row++) {
+            int base = start + (row * stride);
+            int d = row * width;
+            int end = d + width;
+            if (lut != null) {
+                for (int i = base + offsets[0]; d < end; i += pixelStride) {
+                    dest[d++] = lut[data[i] & 0xff];
+                }
+            } else if (offsets.length == 1) {
+                // gray values are replicated, the same as the Java 2D conversion does
+                for (int i = base + offsets[0]; d < end; i += pixelStride) {
+                    int v = data[i] & 0xff;
+                    dest[d++] = 0xff000000 | (v << 16) | (v << 8) | v;
+                }
+            } else if (offsets.length == 3) {
+                int r = offsets[0];
+                int g = offsets[1];
+                int b = offsets[2];
+                for (int i = base; d < end; i += pixelStride) {
+                    dest[d++] = 0xff000000
+                        | ((data[i + r] & 0xff) << 16)
+                        | ((data[i + g] & 0xff) << 8)
+                        | (data[i + b] & 0xff);
+                }
+            } else {
+                int r = offsets[0];
+                int g = offsets[1];
+                int b = offsets[2];
+                int a = offsets[3];
+                for (int i = base; d < end; i += pixelStride) {
+                    int alpha = data[i + a] & 0xff;
+                    if (alpha == 0) {
+                        // fully transparent pixels are stored as 0, the same as the Java 2D conversion does
+                        dest[d++] = 0;
+                    } else {
+                        dest[d++] = (alpha << 24)
+                            | ((data[i + r] & 0xff) << 16)
+                            | ((data[i + g] & 0xff) << 8)
+                            | (data[i + b] & 0xff);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns an opaque image that shows the given image composed over the given background color.<p>
+     *
+     * The result is the same as filling a new {@link BufferedImage#TYPE_INT_RGB} image with the background color
+     * and drawing the given image on it, but is calculated in a single pass over the image data buffers.
+     * In case all pixels of the given image are opaque, no pixels are copied at all.
+     * The result then shares the data buffer of the given image, so it must not be changed.<p>
+     *
+     * @param image the image to flatten, must be of type {@link BufferedImage#TYPE_INT_ARGB}
+     * @param background the background color
+     *
+     * @return an opaque image of type {@link BufferedImage#TYPE_INT_RGB}
+     */
+    public static BufferedImage flatten(BufferedImage image, Color background) {
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        Raster raster = image.getRaster();
+        DataBuffer buffer = raster.getDataBuffer();
+        int[] data = ((DataBufferInt)buffer).getData();
+        int stride = ((SinglePixelPackedSampleModel)raster.getSampleModel()).getScanlineStride();
+        int start = buffer.getOffset() - raster.getSampleModelTranslateX() - (raster.getSampleModelTranslateY() * stride);
+
+        if ((start == 0) && (stride == width) && isOpaque(data, 0, width * height)) {
+            // no transparent pixels, the color values can be used without any change
+            DirectColorModel cm = (DirectColorModel)ColorModel.getRGBdefault();
+            int[] masks = new int[] {cm.getRedMask(), cm.getGreenMask(), cm.getBlueMask()};
+            WritableRaster rgb = Raster.createPackedRaster(buffer, width, height, width, masks, null);
+            return new BufferedImage(
+                new DirectColorModel(24, masks[0], masks[1], masks[2]),
+                rgb,
+                false,
+                null);
+        }
+
+        // the background is composed over black, since the target image is created with black pixels
+        int ba = background.getAlpha();
+        int br = mul8(ba, background.getRed());
+        int bg = mul8(ba, background.getGreen());
+        int bb = mul8(ba, background.getBlue());
+        int bgColor = 0xff000000 | (br << 16) | (bg << 8) | bb;
+
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] dest = ((DataBufferInt)result.getRaster().getDataBuffer()).getData();
+        CancellationToken token = CancellationToken.getCurrent();
+        for (int y = 0; y < height; y++) {
+            token.check();
+            int s = start + (y * stride);
+            int d = y * width;
+            if (isOpaque(data, s, width)) {
+                // fully opaque row, nothing to compose
+                System.arraycopy(data, s, dest, d, width);
+                continue;
+            }
+            for (int x = 0; x < width; x++, s++, d++) {
+                int argb = data[s];
+                int a = argb >>> 24;
+                if (a == 0xff) {
+                    dest[d] = argb;
+                } else if (a == 0) {
+                    dest[d] = bgColor;
+                } else {
+                    int sa = a << 8;
+                    int ia = (0xff - a) << 8;
+                    int r = (MUL8[sa | ((argb >> 16) & 0xff)] & 0xff) + (MUL8[ia | br] & 0xff);
+                    int g = (MUL8[sa | ((argb >> 8) & 0xff)] & 0xff) + (MUL8[ia | bg] & 0xff);
+                    int b = (MUL8[sa | (argb & 0xff)] & 0xff) + (MUL8[ia | bb] & 0xff);
+                    dest[d] = 0xff000000 | (r << 16) | (g << 8) | b;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reduces the image to half of its width and height, using an exact 2x2 box average.<p>
+     *
+     * @param image the image to reduce, must be of type {@link BufferedImage#TYPE_INT_RGB} or {@link BufferedImage#TYPE_INT_ARGB}
+     *
+     * @return a new image with half the width and height of the given image
+     *
+     * @see #halve(BufferedImage, boolean, boolean)
+     */
+    public static BufferedImage halve(BufferedImage image) {
+
+        return halve(image, true, true);
+    }
+
+    /**
+     * Reduces the image to half of its width, its height or both, using an exact box average.<p>
+     *
+     * Colors of images with alpha channel are weighted by their alpha value,
+     * so that transparent pixels do not bleed their color into the result.
+     * In case the width or height that is halved is odd, the last column or row is ignored.<p>
+     *
+     * @param image the image to reduce, must be of type {@link BufferedImage#TYPE_INT_RGB} or {@link BufferedImage#TYPE_INT_ARGB}
+     * @param halveWidth if <code>true</code>, the width is halved
+     * @param halveHeight if <code>true</code>, the height is halved
+     *
+     * @return a new image with the selected dimensions halved
+     */
+    public static BufferedImage halve(BufferedImage image, boolean halveWidth, boolean halveHeight) {
+
+        int xStep = halveWidth ? 2 : 1;
+        int yStep = halveHeight ? 2 : 1;
+        int width = image.getWidth() / xStep;
+        int height = image.getHeight() / yStep;
+        boolean hasAlpha = image.getColorModel().hasAlpha();
+        BufferedImage result = new BufferedImage(
+            Math.max(1, width),
+            Math.max(1, height),
+            hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        if ((width < 1) || (height < 1)) {
+            // image too small to be halved
+            result.setRGB(0, 0, image.getRGB(0, 0));
+            return result;
+        }
+
+        Raster source = image.getRaster();
+        WritableRaster dest = result.getRaster();
+        int srcWidth = width * xStep;
+        int[] row1 = new int[srcWidth];
+        // an axis that is not halved averages each pixel with itself
+        int[] row2 = halveHeight ? new int[srcWidth] : row1;
+        int dx = xStep - 1;
+        int[] out = new int[width];
+        CancellationToken token = CancellationToken.getCurrent();
+
+        for (int y = 0; y < height; y++) {
+            token.check();
+            source.getDataElements(0, y * yStep, srcWidth, 1, row1);
+            if (halveHeight) {
+                source.getDataElements(0, (y * 2) + 1, srcWidth, 1, row2);
+            }
+            for (int x = 0, i = 0; x < width; x++, i += xStep) {
+                int p1 = row1[i];
+                int p2 = row1[i + dx];
+                int p3 = row2[i];
+                int p4 = row2[i + dx];
+                if (hasAlpha) {
+                    out[x] = averageAlpha(p1, p2, p3, p4);
+                } else {
+                    int r = (((p1 >> 16) & 0xff) + ((p2 >> 16) & 0xff) + ((p3 >> 16) & 0xff) + ((p4 >> 16) & 0xff) + 2)
+                        >> 2;
+                    int g = (((p1 >> 8) & 0xff) + ((p2 >> 8) & 0xff) + ((p3 >> 8) & 0xff) + ((p4 >> 8) & 0xff) + 2) >> 2;
+                    int b = ((p1 & 0xff) + (p2 & 0xff) + (p3 & 0xff) + (p4 & 0xff) + 2) >> 2;
+                    out[x] = 0xff000000 | (r << 16) | (g << 8) | b;
+                }
+            }
+            dest.setDataElements(0, y, width, 1, out);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the alpha weighted average of four ARGB pixels.<p>
+     *
+     * @param p1 the first pixel
+     * @param p2 the second pixel
+     * @param p3 the third pixel
+     * @param p4 the fourth pixel
+     *
+     * @return the alpha weighted average of the pixels
+     */
+    private static int averageAlpha(int p1, int p2, int p3, int p4) {
+
+        int a1 = p1 >>> 24;
+        int a2 = p2 >>> 24;
+        int a3 = p3 >>> 24;
+        int a4 = p4 >>> 24;
+        int sumA = a1 + a2 + a3 + a4;
+        if (sumA == 0) {
+            // fully transparent
+            return 0;
+        }
+        int half = sumA >> 1;
+        int r = ((((p1 >> 16) & 0xff) * a1)
+            + (((p2 >> 16) & 0xff) * a2)
+            + (((p3 >> 16) & 0xff) * a3)
+            + (((p4 >> 16) & 0xff) * a4)
+            + half) / sumA;
+        int g = ((((p1 >> 8) & 0xff) * a1)
+            + (((p2 >> 8) & 0xff) * a2)
+            + (((p3 >> 8) & 0xff) * a3)
+            + (((p4 >> 8) & 0xff) * a4)
+            + half) / sumA;
+        int b = (((p1 & 0xff) * a1) + ((p2 & 0xff) * a2) + ((p3 & 0xff) * a3) + ((p4 & 0xff) * a4) + half) / sumA;
+        int a = (sumA + 2) >> 2;
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * Returns the ARGB colors of the given index color model as lookup table for all possible 8 bit pixel values.<p>
+     *
+     * @param cm the index color model
+     *
+     * @return the ARGB colors of the index color model
+     */
+    private static int[] getLookupTable(IndexColorModel cm) {
+
+        int[] lut = new int[Math.max(256, cm.getMapSize())];
+        cm.getRGBs(lut);
+        for (int i = 0; i < lut.length; i++) {
+            if ((lut[i] >>> 24) == 0) {
+                // fully transparent pixels are stored as 0, the same as the Java 2D conversion does
+                lut[i] = 0;
+            }
+        }
+        return lut;
+    }
+
+    /**
+     * Returns <code>true</code> if all the given ARGB pixels are opaque.<p>
+     *
+     * @param data the ARGB pixels
+     * @param offset the offset of the first pixel to check
+     * @param length the number of pixels to check
+     *
+     * @return <code>true</code> if all the given ARGB pixels are opaque
+     */
+    private static boolean isOpaque(int[] data, int offset, int length) {
+
+        int alpha = 0xff000000;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            alpha &= data[i];
+        }
+        return alpha == 0xff000000;
+    }
+
+    /**
+     * Multiplies two 8 bit values, where 255 represents 1.0, with rounding.<p>
+     *
+     * @param a the first value
+     * @param b the second value
+     *
+     * @return the product of both values
+     */
+    private static int mul8(int a, int b) {
+
+        int t = (a * b) + 0x80;
+        return ((t >> 8) + t) >> 8;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.alkacon.simapi;
+
+import javax.imageio.IIOException;
+
+/**
+ * Signals that an image can not be read because its dimensions exceed the image limits of the render settings.<p>
+ *
+ * The exception is thrown based on the image header, before any pixel data is decoded.<p>
+ *
+ * @see RenderSettings#getMaxImagePixels()
+ * @see RenderSettings#getMaxImageSize()
+ * @see RenderSettings#getMaxImageMemory()
+ */
+public class ImageLimitException extends IIOException {
+
+    /** The serial version id. */
+    private static final long serialVersionUID = 6108530211930127574L;
+
+    /** The height of the image. */
+    private int m_height;
+
+    /** The width of the image. */
+    private int m_width;
+
+    /**
+     * Creates a new image limit exception.<p>
+     *
+     * @param width the width of the image
+     * @param height the height of the image
+     */
+    public ImageLimitException(int width, int height) {
+
+        super("Image size " + width + "x" + height + " exceeds the image limits!");
+        m_width = width;
+        m_height = height;
+    }
+
+    /**
+     * Returns the height of the image.<p>
+     *
+     * @return the height of the image
+     */
+    public int getHeight() {
+
+        return m_height;
+    }
+
+    /**
+     * Returns the width of the image.<p>
+     *
+     * @return the width of the image
+     */
+    public int getWidth() {
+
+        return m_width;
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.alkacon.simapi;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * An operation that is applied to an image, for example as part of a {@link BatchJob}.<p>
+ *
+ * Operations are usually short wrappers around one or more of the {@link Simapi} methods, like:
+ * <pre>
+ * new ImageOperation() {
+ *     public BufferedImage apply(Simapi simapi, BufferedImage image) {
+ *         return simapi.resize(image, 800, 600, true);
+ *     }
+ * }
+ * </pre>
+ *
+ * Implementations must be thread safe, since the same operation may be applied to several images in parallel.<p>
+ */
+public interface ImageOperation {
+
+    /**
+     * Applies the operation to the given image.<p>
+     *
+     * @param simapi the image processor to use
+     * @param image the image to apply the operation to
+     *
+     * @return the resulting image
+     */
+    BufferedImage apply(Simapi simapi, BufferedImage image);
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.alkacon.simapi;
+
+/**
+ * Describes one size / format variant of an image, for example one entry of a responsive image <code>srcset</code>.<p>
+ *
+ * The image is scaled to best fit into the variant dimensions, keeping the aspect ratio.
+ * Images are never enlarged. A width or height of <code>0</code> means the dimension is not restricted.<p>
+ *
+ * @see Simapi#getVariantBytes(byte[], ImageVariant[])
+ */
+public class ImageVariant {
+
+    /** The maximum height of the variant. */
+    private int m_height;
+
+    /** The image type of the variant, for example {@link Simapi#TYPE_JPEG}. */
+    private String m_type;
+
+    /** The maximum width of the variant. */
+    private int m_width;
+
+    /**
+     * Creates a new image variant.<p>
+     *
+     * @param width the maximum width of the variant, or <code>0</code> if not restricted
+     * @param height the maximum height of the variant, or <code>0</code> if not restricted
+     * @param type the image type of the variant, for example {@link Simapi#TYPE_JPEG}
+     */
+    public ImageVariant(int width, int height, String type) {
+
+        if ((width <= 0) && (height <= 0)) {
+            throw new IllegalArgumentException("width or height must be positive");
+        }
+        if (type == null) {
+            throw new IllegalArgumentException("type == null!");
+        }
+        m_width = Math.max(0, width);
+        m_height = Math.max(0, height);
+        m_type = type;
+    }
+
+    /**
+     * Returns the maximum height of the variant, or <code>0</code> if not restricted.<p>
+     *
+     * @return the maximum height of the variant
+     */
+    public int getHeight() {
+
+        return m_height;
+    }
+
+    /**
+     * Returns the image type of the variant.<p>
+     *
+     * @return the image type of the variant
+     */
+    public String getType() {
+
+        return m_type;
+    }
+
+    /**
+     * Returns the maximum width of the variant, or <code>0</code> if not restricted.<p>
+     *
+     * @return the maximum width of the variant
+     */
+    public int getWidth() {
+
+        return m_width;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+
+        return m_width + "x" + m_height + " " + m_type;
+    }
+
+    /**
+     * Returns the scale factor that is required to fit an image with the given dimensions into this variant.<p>
+     *
+     * The factor is never larger than <code>1.0</code>, since images are not enlarged.<p>
+     *
+     * @param imageWidth the width of the image
+     * @param imageHeight the height of the image
+     *
+     * @return the scale factor that is required to fit the image into this variant
+     */
+    protected double getScale(int imageWidth, int imageHeight) {
+
+        double scale = 1.0;
+        if (m_width > 0) {
+            scale = Math.min(scale, m_width / (double)imageWidth);
+        }
+        if (m_height > 0) {
+            scale = Math.min(scale, m_height / (double)imageHeight);
+        }
+        return scale;
+    }
+}
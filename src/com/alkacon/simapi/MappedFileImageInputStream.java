@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.alkacon.simapi;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+
+/**
+ * An image input stream that reads a file through a memory mapped buffer.<p>
+ *
+ * Reading from mapped memory avoids the system call and the buffer copy of every small read
+ * that image readers perform on a {@link javax.imageio.stream.FileImageInputStream}.
+ * This is most useful for large image files on local disks.<p>
+ *
+ * Only files up to 2 GB can be mapped. Closing the stream unmaps the file, so that it is no longer
+ * locked and the mapped memory is released right away. Where the running JVM does not allow this,
+ * the mapping is released by the garbage collector once the stream is no longer referenced.<p>
+ *
+ * @see com.alkacon.simapi.CmykJpegReader.ByteArrayImageInputStream
+ */
+public class MappedFileImageInputStream extends ImageInputStreamImpl {
+
+    /** The mapped file contents. */
+    private MappedByteBuffer m_buffer;
+
+    /** The length of the file. */
+    private int m_length;
+
+    /**
+     * Creates a new image input stream for the given file.<p>
+     *
+     * @param file the file to read
+     *
+     * @throws IOException in case the file could not be mapped
+     */
+    public MappedFileImageInputStream(File file) throws IOException {
+
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large to be mapped: " + file);
+            }
+            m_length = (int)size;
+            // the mapping stays valid after the channel has been closed
+            m_buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Releases the mapping of the given buffer without waiting for the garbage collector.<p>
+     *
+     * There is no public API to unmap a buffer, so the cleaner of the JDK is invoked by reflection.
+     * The buffer must not be accessed after it has been unmapped.<p>
+     *
+     * @param buffer the buffer to unmap
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+
+        try {
+            // Java 9 and later
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field unsafe = unsafeClass.getDeclaredField("theUnsafe");
+            unsafe.setAccessible(true);
+            invokeCleaner.invoke(unsafe.get(null), buffer);
+            return;
+        } catch (NoSuchMethodException e) {
+            // Java 8 and earlier, use the cleaner of the buffer below
+        } catch (Exception e) {
+            // the mapping is released by the garbage collector
+            return;
+        }
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (Exception e) {
+            // the mapping is released by the garbage collector
+        }
+    }
+
+    /**
+     * @see javax.imageio.stream.ImageInputStreamImpl#close()
+     */
+    @Override
+    public void close() throws IOException {
+
+        super.close();
+        if (m_buffer != null) {
+            // reading from the closed stream is prevented by checkClosed()
+            MappedByteBuffer buffer = m_buffer;
+            m_buffer = null;
+            unmap(buffer);
+        }
+    }
+
+    /**
+     * @see javax.imageio.stream.ImageInputStreamImpl#length()
+     */
+    @Override
+    public long length() {
+
+        return m_length;
+    }
+
+    /**
+     * @see javax.imageio.stream.ImageInputStreamImpl#read()
+     */
+    @Override
+    public int read() throws IOException {
+
+        checkClosed();
+        if (streamPos >= m_length) {
+            return -1;
+        }
+        bitOffset = 0;
+        return m_buffer.get((int)streamPos++) & 0xff;
+    }
+
+    /**
+     * @see javax.imageio.stream.ImageInputStreamImpl#read(byte[], int, int)
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+
+        checkClosed();
+        if (streamPos >= m_length) {
+            return -1;
+        }
+        bitOffset = 0;
+        int count = (int)Math.min(m_length - streamPos, len);
+        m_buffer.position((int)streamPos);
+        m_buffer.get(b, off, count);
+        streamPos += count;
+        return count;
+    }
+}
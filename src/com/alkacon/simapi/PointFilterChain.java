@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.alkacon.simapi;
+
+import com.alkacon.simapi.filter.TransferFilter;
+
+import java.awt.image.ImageConsumer;
+import java.awt.image.ImageFilter;
+import java.awt.image.RGBImageFilter;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Applies several point filters to an image in a single pass over the pixels.<p>
+ *
+ * A point filter is a {@link RGBImageFilter} that calculates every pixel only from the pixel itself,
+ * without overriding any of the image consumer methods. The chain calls the filters one after the other
+ * for each pixel, which gives exactly the same result as applying the filters one after the other
+ * to the complete image. Consecutive {@link TransferFilter} instances are further combined
+ * into a single set of lookup tables.<p>
+ *
+ * Use {@link #fuse(List)} to replace the consecutive point filters of a filter list with chains.<p>
+ */
+public class PointFilterChain extends RGBImageFilter {
+
+    /** The image consumer methods a point filter must not override. */
+    private static final Set<String> CONSUMER_METHODS = new HashSet<String>(
+        Arrays.asList(
+            "filterRGBPixels",
+            "imageComplete",
+            "setColorModel",
+            "setDimensions",
+            "setHints",
+            "setPixels",
+            "setProperties",
+            "substituteColorModel"));
+
+    /** The point filter check results, mapped by the filter class. */
+    private static final ConcurrentMap<Class<?>, Boolean> POINT_FILTERS = new ConcurrentHashMap<Class<?>, Boolean>();
+
+    /** The filters of the chain. */
+    private List<RGBImageFilter> m_filters;
+
+    /** The stages to apply to each pixel, either a filter or the combined lookup tables of transfer filters. */
+    private Object[] m_stages;
+
+    /**
+     * Creates a new point filter chain.<p>
+     *
+     * @param filters the point filters of the chain, in the order they are applied
+     *
+     * @see #isPointFilter(ImageFilter)
+     */
+    public PointFilterChain(List<RGBImageFilter> filters) {
+
+        for (RGBImageFilter filter : filters) {
+            if (!isPointFilter(filter)) {
+                throw new IllegalArgumentException("not a point filter: " + filter);
+            }
+        }
+        m_filters = Collections.unmodifiableList(new ArrayList<RGBImageFilter>(filters));
+    }
+
+    /**
+     * Returns a copy of the given filter list, with all sequences of consecutive point filters
+     * replaced by a {@link PointFilterChain}.<p>
+     *
+     * @param filters the filters to fuse
+     *
+     * @return the fused filters
+     */
+    public static List<ImageFilter> fuse(List<ImageFilter> filters) {
+
+        List<ImageFilter> result = new ArrayList<ImageFilter>(filters.size());
+        List<RGBImageFilter> sequence = new ArrayList<RGBImageFilter>();
+        for (ImageFilter filter : filters) {
+            if (isPointFilter(filter)) {
+                sequence.add((RGBImageFilter)filter);
+            } else {
+                addSequence(result, sequence);
+                result.add(filter);
+            }
+        }
+        addSequence(result, sequence);
+        return result;
+    }
+
+    /**
+     * Returns <code>true</code> if the given filter is a point filter that can be part of a chain.<p>
+     *
+     * @param filter the filter to check
+     *
+     * @return <code>true</code> if the given filter is a point filter
+     */
+    public static boolean isPointFilter(ImageFilter filter) {
+
+        if (!(filter instanceof RGBImageFilter)) {
+            return false;
+        }
+        Boolean result = POINT_FILTERS.get(filter.getClass());
+        if (result == null) {
+            result = Boolean.TRUE;
+            for (Class<?> c = filter.getClass(); (c != RGBImageFilter.class)
+                && (c != TransferFilter.class); c = c.getSuperclass()) {
+                for (Method method : c.getDeclaredMethods()) {
+                    if (CONSUMER_METHODS.contains(method.getName())) {
+                        // the filter needs more than the pixel values
+                        result = Boolean.FALSE;
+                    }
+                }
+            }
+            POINT_FILTERS.put(filter.getClass(), result);
+        }
+        return result.booleanValue();
+    }
+
+    /**
+     * Adds the given filter sequence to the result, combining it to a chain if it contains more than one filter.<p>
+     *
+     * The sequence is cleared afterwards.<p>
+     *
+     * @param result the list to add the filters to
+     * @param sequence the sequence of point filters
+     */
+    private static void addSequence(List<ImageFilter> result, List<RGBImageFilter> sequence) {
+
+        if (sequence.size() == 1) {
+            result.add(sequence.get(0));
+        } else if (sequence.size() > 1) {
+            result.add(new PointFilterChain(sequence));
+        }
+        sequence.clear();
+    }
+
+    /**
+     * Returns <code>true</code> if the given filter is a transfer filter that only uses its lookup tables.<p>
+     *
+     * @param filter the filter to check
+     *
+     * @return <code>true</code> if the given filter is a transfer filter that only uses its lookup tables
+     */
+    private static boolean isTableFilter(RGBImageFilter filter) {
+
+        if (!(filter instanceof TransferFilter)) {
+            return false;
+        }
+        for (Class<?> c = filter.getClass(); c != TransferFilter.class; c = c.getSuperclass()) {
+            for (Method method : c.getDeclaredMethods()) {
+                if ("filterRGB".equals(method.getName())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @see java.awt.image.RGBImageFilter#filterRGB(int, int, int)
+     */
+    @Override
+    public int filterRGB(int x, int y, int rgb) {
+
+        for (Object stage : m_stages) {
+            if (stage instanceof int[]) {
+                int[] table = (int[])stage;
+                rgb = (rgb & 0xff000000)
+                    | (table[(rgb >> 16) & 0xff] << 16)
+                    | (table[256 + ((rgb >> 8) & 0xff)] << 8)
+                    | table[512 + (rgb & 0xff)];
+            } else {
+                rgb = ((RGBImageFilter)stage).filterRGB(x, y, rgb);
+            }
+        }
+        return rgb;
+    }
+
+    /**
+     * Returns the filters of this chain.<p>
+     *
+     * @return the filters of this chain
+     */
+    public List<RGBImageFilter> getFilters() {
+
+        return m_filters;
+    }
+
+    /**
+     * @see java.awt.image.ImageFilter#getFilterInstance(java.awt.image.ImageConsumer)
+     */
+    @Override
+    public ImageFilter getFilterInstance(ImageConsumer ic) {
+
+        PointFilterChain instance = (PointFilterChain)super.getFilterInstance(ic);
+        // the filters may keep state while filtering, so each instance uses copies of them
+        List<Object> stages = new ArrayList<Object>();
+        int[] table = null;
+        for (RGBImageFilter filter : m_filters) {
+            RGBImageFilter copy = (RGBImageFilter)filter.clone();
+            if (isTableFilter(copy)) {
+                table = combineTable(table, copy);
+            } else {
+                if (table != null) {
+                    stages.add(table);
+                    table = null;
+                }
+                stages.add(copy);
+            }
+        }
+        if (table != null) {
+            stages.add(table);
+        }
+        instance.m_stages = stages.toArray();
+        return instance;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+
+        return "PointFilterChain" + m_filters;
+    }
+
+    /**
+     * Combines the given lookup tables with the lookup tables of the given transfer filter.<p>
+     *
+     * The tables for red, green and blue are stored one after the other in a single array.<p>
+     *
+     * @param table the lookup tables to combine, or <code>null</code> to start with identity tables
+     * @param filter the transfer filter to apply after the given tables
+     *
+     * @return the combined lookup tables
+     */
+    private int[] combineTable(int[] table, RGBImageFilter filter) {
+
+        int[] result = new int[768];
+        for (int i = 0; i < 256; i++) {
+            int r = (table == null) ? i : table[i];
+            int g = (table == null) ? i : table[256 + i];
+            int b = (table == null) ? i : table[512 + i];
+            // transfer filters only use the lookup tables, so the tables can be read from the filter result
+            int rgb = filter.filterRGB(0, 0, 0xff000000 | (r << 16) | (g << 8) | b);
+            result[i] = (rgb >> 16) & 0xff;
+            result[256 + i] = (rgb >> 8) & 0xff;
+            result[512 + i] = rgb & 0xff;
+        }
+        return result;
+    }
+}
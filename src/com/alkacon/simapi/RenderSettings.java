@@ -21,19 +21,31 @@
 
 package com.alkacon.simapi;
 
+import com.alkacon.simapi.CmykJpegReader.ResampleOp;
+
 import java.awt.Color;
 import java.awt.RenderingHints;
 import java.awt.image.ImageFilter;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Provides rendering hints of different quality for the image processing.<p>
  *
+ * Render settings are mutable while they are configured. Use {@link #createSnapshot()} to create
+ * an immutable copy that can safely be shared by all threads, for example by a single {@link Simapi}
+ * instance that is used concurrently for many requests.<p>
+ *
  * @author Alexander Kandzior
  */
 public class RenderSettings {
 
+    /** The factor the blur factor is reduced with while the adaptive quality uses {@link Simapi#RENDER_MEDIUM}. */
+    protected static final double ADAPTIVE_BLUR_FACTOR = 0.5;
+
     /** Rendering hints for the <code>MEDIUM</code> render settings. */
     protected static final RenderingHints HINTS_MEDIUM = initHints(Simapi.RENDER_MEDIUM);
 
@@ -57,27 +69,83 @@ public class RenderSettings {
      */
     protected static final int MAX_BLUR_SIZE = 3000;
 
+    /**
+     * Default maximum number of pixels of a decoded image.<p>
+     *
+     * This is large enough for all common camera images, but protects against
+     * "decompression bomb" images with extreme dimensions.<p>
+     */
+    protected static final long MAX_IMAGE_PIXELS = 16384L * 16384L;
+
+    /**
+     * Estimated number of bytes required for each decoded pixel.<p>
+     *
+     * The image reader creates the decoded raster, which is usually converted into a second
+     * image with 4 bytes per pixel afterwards.<p>
+     */
+    protected static final int IMAGE_BYTES_PER_PIXEL = 8;
+
+    /**
+     * Minimum number of pixels of a target image to use parallel scaling.<p>
+     *
+     * For smaller images, the overhead of splitting the work is higher than the gain.<p>
+     */
+    protected static final int MIN_PARALLEL_SIZE = 512 * 512;
+
     /** The image save quality, used for JPEG images (and other formats that support such a setting). */
     private float m_compressionQuality;
 
+    /** The controller that lowers the quality under load, or <code>null</code>. */
+    private AdaptiveQuality m_adaptiveQuality;
+
     /** The rendering hints of this settings object. */
     private RenderingHints m_hints;
 
     /** The internal list of image filters to apply to the image. */
     private List<ImageFilter> m_imageFilters;
 
+    /** Indicates if these render settings are an immutable snapshot. */
+    private boolean m_isImmutable;
+
     /** Used to control if blur is applied when scaling down an image. */
     private boolean m_isUseBlur;
 
+    /** Used to control if a pyramid of 2x2 box averages is used when scaling down an image. */
+    private boolean m_isUsePyramid;
+
+    /** Indicates if images that exceed the image limits are decoded with subsampling instead of failing. */
+    private boolean m_isSubsampleLargeImages;
+
+    /** The maximum memory in bytes a decoded image may use, 0 means unlimited. */
+    private long m_maxImageMemory;
+
+    /** The maximum number of pixels of a decoded image, 0 means unlimited. */
+    private long m_maxImagePixels;
+
+    /** The maximum width or height of a decoded image, 0 means unlimited. */
+    private int m_maxImageSize;
+
     /** The maxmimum image size to apply blur-before-scale (to avoid "out of memory" issues). */
     private int m_maximumBlurSize;
 
+    /** The number of threads used for parallel image operations, 1 means single threaded. */
+    private int m_parallelism;
+
+    /** The image filters that are skipped while the adaptive quality is lowered. */
+    private Set<ImageFilter> m_optionalImageFilters;
+
+    /** The resample filter used for scaling, or {@link ResampleOp#FILTER_UNDEFINED} to use Java 2D scaling. */
+    private int m_resampleFilter;
+
+    /** The scheduler that runs the CPU intensive image operations, or <code>null</code> to use the calling thread. */
+    private SimapiScheduler m_scheduler;
+
+    /** The priority class used for the image operations run by the scheduler. */
+    private int m_schedulerPriority;
+
     /** Thread priority for image operations. */
     private int m_threadNicePriority;
 
-    /** Stored old thread priority. */
-    private int m_threadOldPriority;
-
     /** The backgound color replacement for the transparent color, used if transparency is not supported by the selected image format. */
     private Color m_transparentReplaceColor;
 
@@ -103,7 +171,22 @@ public class RenderSettings {
      */
     public RenderSettings(int baseMode, RenderingHints hints) {
 
+        m_resampleFilter = ResampleOp.FILTER_UNDEFINED;
         switch (baseMode) {
+            case Simapi.RENDER_PYRAMID:
+                m_hints = HINTS_QUALITY;
+                m_compressionQuality = 0.95f;
+                m_isUseBlur = false;
+                m_isUsePyramid = true;
+                m_blurFactor = 1.0;
+                break;
+            case Simapi.RENDER_LANCZOS:
+                m_hints = HINTS_QUALITY_BICUBIC;
+                m_compressionQuality = 0.95f;
+                m_isUseBlur = false;
+                m_blurFactor = 1.0;
+                m_resampleFilter = ResampleOp.FILTER_LANCZOS;
+                break;
             case Simapi.RENDER_SPEED:
                 m_hints = HINTS_SPEED;
                 m_compressionQuality = 0.5f;
@@ -145,8 +228,65 @@ public class RenderSettings {
         }
         m_transparentReplaceColor = Color.WHITE;
         m_imageFilters = new ArrayList<ImageFilter>();
+        m_optionalImageFilters = Collections.newSetFromMap(new IdentityHashMap<ImageFilter, Boolean>());
         m_maximumBlurSize = (MAX_BLUR_SIZE * MAX_BLUR_SIZE);
         m_threadNicePriority = Thread.MIN_PRIORITY;
+        m_parallelism = 1;
+        m_maxImagePixels = MAX_IMAGE_PIXELS;
+        m_schedulerPriority = SimapiScheduler.PRIORITY_INTERACTIVE;
+    }
+
+    /**
+     * Creates a new, mutable copy of the given render settings.<p>
+     *
+     * Use this to create modified settings based on an immutable snapshot.<p>
+     *
+     * @param settings the render settings to copy
+     */
+    public RenderSettings(RenderSettings settings) {
+
+        m_adaptiveQuality = settings.m_adaptiveQuality;
+        m_blurFactor = settings.m_blurFactor;
+        m_compressionQuality = settings.m_compressionQuality;
+        m_hints = settings.m_hints;
+        m_imageFilters = new ArrayList<ImageFilter>(settings.m_imageFilters);
+        m_optionalImageFilters = Collections.newSetFromMap(new IdentityHashMap<ImageFilter, Boolean>());
+        m_optionalImageFilters.addAll(settings.m_optionalImageFilters);
+        m_isSubsampleLargeImages = settings.m_isSubsampleLargeImages;
+        m_isUseBlur = settings.m_isUseBlur;
+        m_isUsePyramid = settings.m_isUsePyramid;
+        m_maxImageMemory = settings.m_maxImageMemory;
+        m_maxImagePixels = settings.m_maxImagePixels;
+        m_maxImageSize = settings.m_maxImageSize;
+        m_maximumBlurSize = settings.m_maximumBlurSize;
+        m_parallelism = settings.m_parallelism;
+        m_resampleFilter = settings.m_resampleFilter;
+        m_scheduler = settings.m_scheduler;
+        m_schedulerPriority = settings.m_schedulerPriority;
+        m_threadNicePriority = settings.m_threadNicePriority;
+        m_transparentReplaceColor = settings.m_transparentReplaceColor;
+    }
+
+    /**
+     * Returns the given rendering hints lowered to the given target hints.<p>
+     *
+     * Hints that are already at or below the target are returned unchanged.<p>
+     *
+     * @param hints the rendering hints to lower
+     * @param target the target rendering hints, either {@link #HINTS_MEDIUM} or {@link #HINTS_SPEED}
+     *
+     * @return the lowered rendering hints
+     */
+    private static RenderingHints degradeHints(RenderingHints hints, RenderingHints target) {
+
+        if ((hints == target) || (hints == HINTS_SPEED)) {
+            return hints;
+        }
+        // must create a new object to modify, otherwise constant values would be affected
+        RenderingHints result = new RenderingHints(null);
+        result.add(hints);
+        result.add(target);
+        return result;
     }
 
     /**
@@ -210,7 +350,58 @@ public class RenderSettings {
      */
     public void addImageFilter(ImageFilter filter) {
 
+        checkMutable();
+        m_imageFilters.add(filter);
+    }
+
+    /**
+     * Adds a new optional image filter to the filter processing list.<p>
+     *
+     * Optional filters are applied like all other filters, but are skipped while the adaptive quality
+     * is lowered because of load. Optional filters must not change the image dimensions.<p>
+     *
+     * @param filter the optional image filter to add
+     *
+     * @see #setAdaptiveQuality(AdaptiveQuality)
+     */
+    public void addOptionalImageFilter(ImageFilter filter) {
+
+        checkMutable();
         m_imageFilters.add(filter);
+        m_optionalImageFilters.add(filter);
+    }
+
+    /**
+     * Creates an immutable snapshot of these render settings.<p>
+     *
+     * All methods that change the snapshot throw an {@link UnsupportedOperationException}.
+     * Since a snapshot never changes, it can be used by any number of threads at the same time.
+     * If these settings are already immutable, they are returned unchanged.<p>
+     *
+     * @return an immutable snapshot of these render settings
+     *
+     * @see #RenderSettings(RenderSettings)
+     */
+    public RenderSettings createSnapshot() {
+
+        if (m_isImmutable) {
+            return this;
+        }
+        RenderSettings result = new RenderSettings(this);
+        result.m_imageFilters = Collections.unmodifiableList(result.m_imageFilters);
+        result.m_optionalImageFilters = Collections.unmodifiableSet(result.m_optionalImageFilters);
+        result.m_isImmutable = true;
+        return result;
+    }
+
+    /**
+     * Returns the controller that lowers the quality of the image operations under load.<p>
+     *
+     * @return the adaptive quality controller, or <code>null</code> if the quality is not adapted
+     */
+    public AdaptiveQuality getAdaptiveQuality() {
+
+        return m_adaptiveQuality;
     }
 
     /**
@@ -247,6 +438,49 @@ public class RenderSettings {
         return new ArrayList<ImageFilter>(m_imageFilters);
     }
 
+    /**
+     * Returns the maximum memory in bytes a decoded image may use.<p>
+     *
+     * The memory is estimated from the image dimensions in the image header, before the image is decoded.
+     * The default is <code>0</code>, which means the memory is not limited.<p>
+     *
+     * @return the maximum memory in bytes a decoded image may use, or <code>0</code> if not limited
+     *
+     * @see #isSubsampleLargeImages()
+     */
+    public long getMaxImageMemory() {
+
+        return m_maxImageMemory;
+    }
+
+    /**
+     * Returns the maximum number of pixels of a decoded image.<p>
+     *
+     * The default is <code>16384 x 16384</code> pixel.<p>
+     *
+     * @return the maximum number of pixels of a decoded image, or <code>0</code> if not limited
+     *
+     * @see #isSubsampleLargeImages()
+     */
+    public long getMaxImagePixels() {
+
+        return m_maxImagePixels;
+    }
+
+    /**
+     * Returns the maximum width or height of a decoded image.<p>
+     *
+     * The default is <code>0</code>, which means the width and height are not limited.<p>
+     *
+     * @return the maximum width or height of a decoded image, or <code>0</code> if not limited
+     *
+     * @see #isSubsampleLargeImages()
+     */
+    public int getMaxImageSize() {
+
+        return m_maxImageSize;
+    }
+
     /**
      * Returns the maximum size of an image that is blurred before applying a downscaling operation.<p>
      *
@@ -261,6 +495,53 @@ public class RenderSettings {
         return m_maximumBlurSize;
     }
 
+    /**
+     * Returns the number of threads used for parallel image operations like scaling.<p>
+     *
+     * The default is <code>1</code>, which means all operations are done single threaded
+     * in the calling thread.<p>
+     *
+     * @return the number of threads used for parallel image operations
+     */
+    public int getParallelism() {
+
+        return m_parallelism;
+    }
+
+    /**
+     * Returns the resample filter used for scaling.<p>
+     *
+     * If this is {@link ResampleOp#FILTER_UNDEFINED}, scaling is done with Java 2D
+     * using the rendering hints of these settings.<p>
+     *
+     * @return the resample filter used for scaling, for example {@link ResampleOp#FILTER_LANCZOS}
+     */
+    public int getResampleFilter() {
+
+        return m_resampleFilter;
+    }
+
+    /**
+     * Returns the scheduler that runs the CPU intensive image operations.<p>
+     *
+     * @return the scheduler that runs the CPU intensive image operations,
+     *      or <code>null</code> if they are run by the calling thread
+     */
+    public SimapiScheduler getScheduler() {
+
+        return m_scheduler;
+    }
+
+    /**
+     * Returns the priority class used for the image operations run by the scheduler.<p>
+     *
+     * @return the priority class used for the image operations run by the scheduler
+     */
+    public int getSchedulerPriority() {
+
+        return m_schedulerPriority;
+    }
+
     /**
      * Returns the background color replacement for the transparent color.<p>
      *
@@ -275,6 +556,46 @@ public class RenderSettings {
         return m_transparentReplaceColor;
     }
 
+    /**
+     * Returns <code>true</code> if these render settings are an immutable snapshot.<p>
+     *
+     * @return <code>true</code> if these render settings are an immutable snapshot
+     *
+     * @see #createSnapshot()
+     */
+    public boolean isImmutable() {
+
+        return m_isImmutable;
+    }
+
+    /**
+     * Returns <code>true</code> if the given filter was added as optional image filter.<p>
+     *
+     * @param filter the filter to check
+     *
+     * @return <code>true</code> if the given filter was added as optional image filter
+     *
+     * @see #addOptionalImageFilter(ImageFilter)
+     */
+    public boolean isOptionalImageFilter(ImageFilter filter) {
+
+        return m_optionalImageFilters.contains(filter);
+    }
+
+    /**
+     * Returns <code>true</code> if images that exceed the image limits are decoded with subsampling.<p>
+     *
+     * If <code>true</code>, an image that exceeds the maximum number of pixels, the maximum size
+     * or the maximum memory is decoded with the smallest subsampling factor that fits into the limits.
+     * If <code>false</code> (the default), reading such an image fails with an {@link ImageLimitException}.<p>
+     *
+     * @return <code>true</code> if images that exceed the image limits are decoded with subsampling
+     */
+    public boolean isSubsampleLargeImages() {
+
+        return m_isSubsampleLargeImages;
+    }
+
     /**
      * Returns <code>true</code> if blur is used when downscaling an image to a thumbnail.<p>
      *
@@ -287,6 +608,35 @@ public class RenderSettings {
         return m_isUseBlur;
     }
 
+    /**
+     * Returns <code>true</code> if a pyramid of 2x2 box averages is used when downscaling an image.<p>
+     *
+     * The image is halved repeatedly until it is less than twice the target size, and then scaled to the
+     * target size in a final step. This avoids aliasing without blurring the full size image in advance.<p>
+     *
+     * @return <code>true</code> if a pyramid of 2x2 box averages is used when downscaling an image
+     */
+    public boolean isUsePyramid() {
+
+        return m_isUsePyramid;
+    }
+
+    /**
+     * Sets the controller that lowers the quality of the image operations under load.<p>
+     *
+     * While the controller reports load, scaling uses the rendering hints of {@link Simapi#RENDER_MEDIUM}
+     * or {@link Simapi#RENDER_SPEED} with less or no blur, and optional image filters are skipped.<p>
+     *
+     * @param adaptiveQuality the adaptive quality controller, or <code>null</code> to always use these settings
+     *
+     * @see #addOptionalImageFilter(ImageFilter)
+     */
+    public void setAdaptiveQuality(AdaptiveQuality adaptiveQuality) {
+
+        checkMutable();
+        m_adaptiveQuality = adaptiveQuality;
+    }
+
     /**
      * Sets the image save compression quality, used for JPEG images (and other formats that support such a setting).<p>
      *
@@ -298,12 +648,52 @@ public class RenderSettings {
      */
     public void setCompressionQuality(float compressionQuality) {
 
+        checkMutable();
         if ((compressionQuality < 0f) || (compressionQuality > 1f)) {
             throw new IllegalArgumentException("compression quality must be between 0.0f and 1.0f");
         }
         m_compressionQuality = compressionQuality;
     }
 
+    /**
+     * Sets the maximum memory in bytes a decoded image may use.<p>
+     *
+     * @param maxImageMemory the maximum memory in bytes a decoded image may use, or <code>0</code> for no limit
+     *
+     * @see #getMaxImageMemory()
+     */
+    public void setMaxImageMemory(long maxImageMemory) {
+
+        checkMutable();
+        m_maxImageMemory = Math.max(0, maxImageMemory);
+    }
+
+    /**
+     * Sets the maximum number of pixels of a decoded image.<p>
+     *
+     * @param maxImagePixels the maximum number of pixels of a decoded image, or <code>0</code> for no limit
+     *
+     * @see #getMaxImagePixels()
+     */
+    public void setMaxImagePixels(long maxImagePixels) {
+
+        checkMutable();
+        m_maxImagePixels = Math.max(0, maxImagePixels);
+    }
+
+    /**
+     * Sets the maximum width or height of a decoded image.<p>
+     *
+     * @param maxImageSize the maximum width or height of a decoded image, or <code>0</code> for no limit
+     *
+     * @see #getMaxImageSize()
+     */
+    public void setMaxImageSize(int maxImageSize) {
+
+        checkMutable();
+        m_maxImageSize = Math.max(0, maxImageSize);
+    }
+
     /**
      * Sets the maximum size of an image that is blurred before applying a downscaling operation.<p>
      *
@@ -311,9 +701,100 @@ public class RenderSettings {
      */
     public void setMaximumBlurSize(int maximumBlurSize) {
 
+        checkMutable();
         m_maximumBlurSize = maximumBlurSize;
     }
 
+    /**
+     * Sets the number of threads used for parallel image operations like scaling.<p>
+     *
+     * Use {@link Runtime#availableProcessors()} to use all available cores.<p>
+     *
+     * @param parallelism the number of threads to use (must be at least 1)
+     */
+    public void setParallelism(int parallelism) {
+
+        checkMutable();
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        m_parallelism = parallelism;
+    }
+
+    /**
+     * Controls if a pyramid of 2x2 box averages is used when downscaling an image.<p>
+     *
+     * If enabled, the blur before scaling is not applied.<p>
+     *
+     * @param usePyramid if <code>true</code>, use a pyramid of 2x2 box averages when downscaling
+     *
+     * @see #isUsePyramid()
+     */
+    public void setUsePyramid(boolean usePyramid) {
+
+        checkMutable();
+        m_isUsePyramid = usePyramid;
+    }
+
+    /**
+     * Sets the resample filter used for scaling.<p>
+     *
+     * Use {@link ResampleOp#FILTER_UNDEFINED} to scale with Java 2D using the rendering hints of these settings.
+     * Other useful values are {@link ResampleOp#FILTER_LANCZOS} (sharp), {@link ResampleOp#FILTER_MITCHELL} (balanced)
+     * or {@link ResampleOp#FILTER_CATROM}.<p>
+     *
+     * @param resampleFilter the resample filter to use for scaling
+     */
+    public void setResampleFilter(int resampleFilter) {
+
+        checkMutable();
+        m_resampleFilter = resampleFilter;
+    }
+
+    /**
+     * Sets the scheduler that runs the CPU intensive image operations.<p>
+     *
+     * If a scheduler is set, scaling, blurring, filtering and encoding are run on its compute threads,
+     * while the calling thread waits for the result. Without a scheduler, the operations are run by
+     * the calling thread with lowered thread priority.<p>
+     *
+     * @param scheduler the scheduler to use, or <code>null</code> to use the calling thread
+     */
+    public void setScheduler(SimapiScheduler scheduler) {
+
+        checkMutable();
+        m_scheduler = scheduler;
+    }
+
+    /**
+     * Sets the priority class used for the image operations run by the scheduler.<p>
+     *
+     * @param schedulerPriority the priority class, either {@link SimapiScheduler#PRIORITY_INTERACTIVE}
+     *      or {@link SimapiScheduler#PRIORITY_BACKGROUND}
+     */
+    public void setSchedulerPriority(int schedulerPriority) {
+
+        checkMutable();
+        if ((schedulerPriority != SimapiScheduler.PRIORITY_INTERACTIVE)
+            && (schedulerPriority != SimapiScheduler.PRIORITY_BACKGROUND)) {
+            throw new IllegalArgumentException("unknown priority class " + schedulerPriority);
+        }
+        m_schedulerPriority = schedulerPriority;
+    }
+
+    /**
+     * Controls if images that exceed the image limits are decoded with subsampling instead of failing.<p>
+     *
+     * @param subsampleLargeImages if <code>true</code>, decode images that exceed the image limits with subsampling
+     *
+     * @see #isSubsampleLargeImages()
+     */
+    public void setSubsampleLargeImages(boolean subsampleLargeImages) {
+
+        checkMutable();
+        m_isSubsampleLargeImages = subsampleLargeImages;
+    }
+
     /**
      * Sets the backgound color replacement for the transparent color.<p>
      *
@@ -323,9 +804,39 @@ public class RenderSettings {
      */
     public void setTransparentReplaceColor(Color transparentColor) {
 
+        checkMutable();
         m_transparentReplaceColor = transparentColor;
     }
 
+    /**
+     * Creates an immutable snapshot of these render settings, lowered to the given adaptive quality level.<p>
+     *
+     * The snapshot has no adaptive quality controller, so the level does not change while it is used.<p>
+     *
+     * @param level the level, one of {@link Simapi#RENDER_QUALITY}, {@link Simapi#RENDER_MEDIUM}
+     *      or {@link Simapi#RENDER_SPEED}
+     *
+     * @return the lowered snapshot
+     */
+    protected RenderSettings createAdaptiveSnapshot(int level) {
+
+        RenderSettings result = new RenderSettings(this);
+        result.m_adaptiveQuality = null;
+        if (level != Simapi.RENDER_QUALITY) {
+            if (level == Simapi.RENDER_SPEED) {
+                result.m_hints = degradeHints(m_hints, HINTS_SPEED);
+                result.m_isUseBlur = false;
+            } else {
+                result.m_hints = degradeHints(m_hints, HINTS_MEDIUM);
+                result.m_blurFactor = m_blurFactor * ADAPTIVE_BLUR_FACTOR;
+            }
+            // the resample filters are much slower than Java 2D scaling
+            result.m_resampleFilter = ResampleOp.FILTER_UNDEFINED;
+            result.m_imageFilters.removeAll(m_optionalImageFilters);
+        }
+        return result.createSnapshot();
+    }
+
     /**
      * Returns the image rendering hints to to be used for image scaling etc.<p>
      *
@@ -339,27 +850,29 @@ public class RenderSettings {
     }
 
     /**
-     * Returns the thread priority to use for image operations that require a lot of CPU power.<p>
+     * Returns <code>true</code> if an image with the given decoded dimensions fits into the image limits.<p>
      *
-     * @return  the thread priority to use for image operations that require a lot of CPU power
+     * @param width the width of the decoded image
+     * @param height the height of the decoded image
+     *
+     * @return <code>true</code> if an image with the given decoded dimensions fits into the image limits
      */
-    protected int getThreadNicePriority() {
+    protected boolean isWithinImageLimits(long width, long height) {
 
-        return m_threadNicePriority;
+        long pixels = width * height;
+        return ((m_maxImagePixels == 0) || (pixels <= m_maxImagePixels))
+            && ((m_maxImageSize == 0) || ((width <= m_maxImageSize) && (height <= m_maxImageSize)))
+            && ((m_maxImageMemory == 0) || ((pixels * IMAGE_BYTES_PER_PIXEL) <= m_maxImageMemory));
     }
 
     /**
-     * Returns the stored thread priority used.<p>
+     * Returns the thread priority to use for image operations that require a lot of CPU power.<p>
      *
-     * @return the stored thread priority used
+     * @return  the thread priority to use for image operations that require a lot of CPU power
      */
-    protected int getThreadOldPriority() {
-
-        if (m_threadOldPriority <= 0) {
-            m_threadOldPriority = Thread.NORM_PRIORITY;
-        }
+    protected int getThreadNicePriority() {
 
-        return m_threadOldPriority;
+        return m_threadNicePriority;
     }
 
     /**
@@ -369,26 +882,30 @@ public class RenderSettings {
      */
     protected void setThreadNicePriority(int threadNicePriority) {
 
+        checkMutable();
         m_threadNicePriority = threadNicePriority;
     }
 
     /**
-     * Sets the stored thread priority.<p>
+     * Controls if blur should be used at all.<p>
      *
-     * @param threadOldPriority the thread priority to store
+     * @param useBlur if <code>false</code>, don't use blur
      */
-    protected void setThreadOldPriority(int threadOldPriority) {
+    protected void setUseBlur(boolean useBlur) {
 
-        m_threadOldPriority = threadOldPriority;
+        checkMutable();
+        m_isUseBlur = useBlur;
     }
 
     /**
-     * Controls if blur should be used at all.<p>
+     * Checks that these render settings can be changed.<p>
      *
-     * @param useBlur if <code>false</code>, don't use blur
+     * @throws UnsupportedOperationException if these render settings are an immutable snapshot
      */
-    protected void setUseBlur(boolean useBlur) {
+    private void checkMutable() {
 
-        m_isUseBlur = useBlur;
+        if (m_isImmutable) {
+            throw new UnsupportedOperationException("render settings snapshot is immutable");
+        }
     }
-}
\ No newline at end of file
+}
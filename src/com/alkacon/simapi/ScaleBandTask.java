@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.alkacon.simapi;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+/**
+ * Fork-join task that scales an image by rendering horizontal bands of the target image in parallel.<p>
+ *
+ * Each band is drawn with the same transformation as the complete image, only translated and clipped
+ * to the band. This way every band reads exactly the source rows its interpolation filter reaches,
+ * and the result matches scaling the image in a single pass (up to rounding of single color values).<p>
+ */
+public class ScaleBandTask extends BandTask {
+
+    /** The serial version id. */
+    private static final long serialVersionUID = -6419352468911458716L;
+
+    /** The rendering hints used for scaling. */
+    private RenderingHints m_hints;
+
+    /** The source image to scale. */
+    private BufferedImage m_source;
+
+    /** The target image to render the band to. */
+    private BufferedImage m_target;
+
+    /**
+     * Creates a new task that scales the complete source image to the target image.<p>
+     *
+     * @param source the source image to scale
+     * @param target the target image to render the scaled image to
+     * @param hints the rendering hints to use for scaling
+     * @param parallelism the number of parallel threads that will be used for rendering
+     */
+    public ScaleBandTask(BufferedImage source, BufferedImage target, RenderingHints hints, int parallelism) {
+
+        super(target.getHeight(), getSplitHeight(target.getHeight(), parallelism));
+        m_source = source;
+        m_target = target;
+        m_hints = hints;
+    }
+
+    /**
+     * Creates a new task that scales a band of the source image to the target image.<p>
+     *
+     * @param parent the task that scales the complete image
+     * @param bandY the y position of the band in the target image
+     * @param bandHeight the height of the band in the target image
+     */
+    private ScaleBandTask(ScaleBandTask parent, int bandY, int bandHeight) {
+
+        super(parent, bandY, bandHeight);
+        m_source = parent.m_source;
+        m_target = parent.m_target;
+        m_hints = parent.m_hints;
+    }
+
+    /**
+     * @see com.alkacon.simapi.BandTask#createBandTask(int, int)
+     */
+    @Override
+    protected BandTask createBandTask(int bandY, int bandHeight) {
+
+        return new ScaleBandTask(this, bandY, bandHeight);
+    }
+
+    /**
+     * Renders a band of the target image.<p>
+     *
+     * @see com.alkacon.simapi.BandTask#processBand(int, int)
+     */
+    @Override
+    protected void processBand(int bandY, int bandHeight) {
+
+        int width = m_target.getWidth();
+        BufferedImage band = m_target.getSubimage(0, bandY, width, bandHeight);
+        Graphics2D g = band.createGraphics();
+        g.setRenderingHints(m_hints);
+        // draw the complete image translated by the band position, the band bounds clip the output
+        g.drawImage(m_source, 0, -bandY, width, m_target.getHeight(), null);
+        g.dispose();
+    }
+}
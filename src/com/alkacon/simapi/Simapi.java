@@ -21,7 +21,10 @@
 
 package com.alkacon.simapi;
 
+import com.alkacon.simapi.CmykJpegReader.ByteArrayImageInputStream;
+import com.alkacon.simapi.CmykJpegReader.JPEGImageReader;
 import com.alkacon.simapi.CmykJpegReader.JPEGImageReaderSpi;
+import com.alkacon.simapi.CmykJpegReader.ResampleOp;
 import com.alkacon.simapi.GifWriter.GifImageWriterSpi;
 import com.alkacon.simapi.GifWriter.Quantize;
 import com.alkacon.simapi.filter.WholeImageFilter;
@@ -30,33 +33,48 @@ import com.alkacon.simapi.filter.buffered.GaussianFilter;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
-import java.awt.Image;
 import java.awt.Rectangle;
-import java.awt.Toolkit;
 import java.awt.Transparency;
+import java.awt.color.ColorSpace;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
-import java.awt.image.FilteredImageSource;
 import java.awt.image.ImageFilter;
-import java.awt.image.PixelGrabber;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import javax.imageio.IIOException;
 import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
 import javax.imageio.ImageWriteParam;
 import javax.imageio.ImageWriter;
 import javax.imageio.spi.IIORegistry;
 import javax.imageio.spi.ImageReaderSpi;
 import javax.imageio.spi.ImageWriterSpi;
+import javax.imageio.stream.ImageInputStream;
 import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
 
 /**
  * <b>SIM</b>ple <b>IM</b>age <b>API</b> (SIMAPI) that provides convenient access to commonly used imaging operations.<p>
@@ -68,6 +86,12 @@ public class Simapi {
     /** Constant to identify a transparent background fill color. */
     public static final Color COLOR_TRANSPARENT = new Color(0, 0, 0, 255);
 
+    /**
+     * The minimum size of an image file in bytes that is read through a memory mapped buffer
+     * instead of a random access file, see {@link MappedFileImageInputStream}.<p>
+     */
+    public static final long MAPPED_FILE_MIN_SIZE = 1024 * 1024;
+
     /** Position indicator: Center (default). */
     public static final int POS_CENTER = 0;
 
@@ -95,9 +119,27 @@ public class Simapi {
     /** Position indicator: Up right. */
     public static final int POS_UP_RIGHT = 8;
 
+    /**
+     * Indicates to use <code>LANCZOS</code> quality render settings.<p>
+     *
+     * Scaling is done with a Lanczos resample filter instead of Java 2D. This gives sharp
+     * results without blurring the image in advance, and uses all threads configured with
+     * {@link RenderSettings#setParallelism(int)}.<p>
+     */
+    public static final int RENDER_LANCZOS = 5;
+
     /** Indicates to use the <code>MEDIUM</code> render settings. */
     public static final int RENDER_MEDIUM = 1;
 
+    /**
+     * Indicates to use <code>PYRAMID</code> quality render settings.<p>
+     *
+     * When scaling down, the image is halved repeatedly using an exact 2x2 box average,
+     * followed by a single bilinear scale step to the target size. The result is similar to
+     * {@link #RENDER_QUALITY}, but requires much less CPU and memory since the full size image is not blurred.<p>
+     */
+    public static final int RENDER_PYRAMID = 6;
+
     /** Indicates to use the <code>QUALITY</code> render settings (default). */
     public static final int RENDER_QUALITY = 0;
 
@@ -122,6 +164,18 @@ public class Simapi {
     /** Indicates to use the <code>SPEED</code> render settings. */
     public static final int RENDER_SPEED = 2;
 
+    /**
+     * The number of decoded rows kept in memory when an image is read with
+     * {@link #readResized(InputStream, int, int)}.<p>
+     */
+    public static final int STREAMING_STRIP_ROWS = 256;
+
+    /**
+     * The minimum ratio between a subsampled image and the target dimensions when reading images
+     * for a later downscale, see {@link #getSubsampling(int, int, int, int)}.<p>
+     */
+    public static final int SUBSAMPLING_MIN_RATIO = 2;
+
     /** Constant to identify the <code>BMP</code> image type. */
     public static final String TYPE_BMP = "BMP";
 
@@ -199,12 +253,47 @@ public class Simapi {
 
     }
 
-    /** Static QUALITY renderer used by some public static methods. */
-    private static Simapi STATIC_QUALITY_RENDERER = new Simapi();
+    /** The number of pixels a crop area is enlarged by before scaling, this covers the blur and filter radius. */
+    private static final int CROP_PADDING = 4;
+
+    /** The maximum size in bytes of a presized output buffer, larger images let the buffer grow. */
+    private static final int MAX_ESTIMATED_SIZE = 16 * 1024 * 1024;
+
+    /** The fork-join pools used for parallel image operations, mapped by their parallelism. */
+    private static final ConcurrentMap<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<Integer, ForkJoinPool>();
+
+    /** The image types that have already been resolved to an available image writer. */
+    private static final ConcurrentMap<String, String> WRITER_TYPES = new ConcurrentHashMap<String, String>();
+
+    /** Static QUALITY renderer used by some public static methods, its render settings are an immutable snapshot. */
+    private static volatile Simapi STATIC_QUALITY_RENDERER = new Simapi(
+        new RenderSettings(RENDER_QUALITY).createSnapshot());
 
     /** Rendering settings for the image generation / scaling / saving. */
     private RenderSettings m_renderSettings;
 
+    /** The instances lowered to the adaptive quality levels, indexed by level, only used for immutable render settings. */
+    private AtomicReferenceArray<Simapi> m_stageProcessors;
+
+    /**
+     * A CPU intensive stage of an image operation.<p>
+     *
+     * @param <T> the result type of the stage
+     */
+    private interface Stage<T> {
+
+        /**
+         * Runs the stage.<p>
+         *
+         * @param processor the instance to run the stage with, its render settings may be lowered by adaptive quality
+         *
+         * @return the result of the stage
+         *
+         * @throws Exception in case the stage fails
+         */
+        T run(Simapi processor) throws Exception;
+    }
+
     /**
      * Creates a new simapi instance using the default render settings ({@link #RENDER_QUALITY}).<p>     *
      */
@@ -216,11 +305,99 @@ public class Simapi {
     /**
      * Creates a new simapi instance with the specified render settings.<p>
      *
+     * A simapi instance keeps no state of its own between method calls. If the render settings are an
+     * immutable snapshot created with {@link RenderSettings#createSnapshot()}, the instance can be shared
+     * by any number of threads.<p>
+     *
      * @param renderSettings the render settings to use
      */
     public Simapi(RenderSettings renderSettings) {
 
         m_renderSettings = renderSettings;
+        m_stageProcessors = new AtomicReferenceArray<Simapi>(RENDER_SPEED + 1);
+    }
+
+    /**
+     * Moves an edge of an area in a scaled image outwards by up to {@link #CROP_PADDING} pixels,
+     * so that it maps as close as possible to a full pixel in the source image.<p>
+     *
+     * @param edge the edge position in the scaled image
+     * @param step the direction to move the edge, either <code>-1</code> or <code>1</code>
+     * @param limit the size of the scaled image
+     * @param ratio the ratio of the source image size to the scaled image size
+     *
+     * @return the aligned edge position in the scaled image
+     */
+    private static int alignEdge(int edge, int step, int limit, double ratio) {
+
+        int result = edge;
+        double minError = 1.0;
+        for (int i = 0; i <= CROP_PADDING; i++) {
+            int position = edge + (i * step);
+            if ((position <= 0) || (position >= limit)) {
+                // the image border always maps to a full pixel
+                return Math.max(0, Math.min(limit, position));
+            }
+            double error = Math.abs((position * ratio) - Math.round(position * ratio));
+            if (error < minError) {
+                result = position;
+                minError = error;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Waits until all the given tasks are done, ignoring their results and failures.<p>
+     *
+     * @param tasks the tasks to wait for
+     */
+    private static void awaitAll(List<? extends Future<?>> tasks) {
+
+        boolean interrupted = false;
+        for (Future<?> task : tasks) {
+            while (true) {
+                try {
+                    task.get();
+                    break;
+                } catch (InterruptedException e) {
+                    // keep waiting, the interruption is restored below
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    // the first failure is reported by the caller
+                    break;
+                } catch (CancellationException e) {
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Checks if the given reader writes the decoded rows from top to bottom into the destination image,
+     * so that the image can be read in a single pass with a {@link StripBuffer}.<p>
+     *
+     * The readers of other formats may access the data of the destination image directly,
+     * these images are read strip by strip.<p>
+     *
+     * @param reader the reader to check
+     *
+     * @return <code>true</code> if the reader supports reading the image in a single pass
+     */
+    private static boolean isStreamingFormat(ImageReader reader) {
+
+        if (reader.getOriginatingProvider() == null) {
+            return false;
+        }
+        for (String name : reader.getOriginatingProvider().getFormatNames()) {
+            if (TYPE_JPEG.equalsIgnoreCase(name) || TYPE_PNG.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -288,9 +465,15 @@ public class Simapi {
         }
 
         // check if a writer for the image name can be found
+        String cached = WRITER_TYPES.get(type);
+        if (cached != null) {
+            // type has already been resolved
+            return cached;
+        }
         Iterator<ImageWriter> iter = ImageIO.getImageWritersByFormatName(type);
         if (iter.hasNext()) {
             // type can be resolved
+            WRITER_TYPES.put(type, type);
             return type;
         }
 
@@ -298,6 +481,136 @@ public class Simapi {
         return null;
     }
 
+    /**
+     * Returns the render settings used by the public static methods of this class.<p>
+     *
+     * The returned settings are an immutable snapshot. To change for example the image limits that are
+     * enforced when reading images with {@link #read(InputStream)} and the other static read methods,
+     * create a modified copy with {@link RenderSettings#RenderSettings(RenderSettings)} and install it
+     * with {@link #setStaticRenderSettings(RenderSettings)}.<p>
+     *
+     * @return the render settings used by the public static methods of this class
+     */
+    public static RenderSettings getStaticRenderSettings() {
+
+        return STATIC_QUALITY_RENDERER.m_renderSettings;
+    }
+
+    /**
+     * Returns the largest integer subsampling factor that can be used when decoding an image of the given
+     * dimensions, without the decoded image getting too small for a later downscale to the given target dimensions.<p>
+     *
+     * To keep the quality of the later downscale (which may apply blur), the decoded image is kept
+     * at least {@link #SUBSAMPLING_MIN_RATIO} times as large as the target dimensions.
+     * A target width or height of <code>0</code> or less means that this dimension is not restricted.<p>
+     *
+     * @param imageWidth the width of the source image
+     * @param imageHeight the height of the source image
+     * @param targetWidth the target width the image will be scaled to
+     * @param targetHeight the target height the image will be scaled to
+     *
+     * @return the largest integer subsampling factor to use, <code>1</code> means no subsampling
+     */
+    public static int getSubsampling(int imageWidth, int imageHeight, int targetWidth, int targetHeight) {
+
+        if ((targetWidth <= 0) && (targetHeight <= 0)) {
+            // no target size given, no subsampling possible
+            return 1;
+        }
+        int subsampling = Integer.MAX_VALUE;
+        if (targetWidth > 0) {
+            subsampling = Math.min(subsampling, imageWidth / (targetWidth * SUBSAMPLING_MIN_RATIO));
+        }
+        if (targetHeight > 0) {
+            subsampling = Math.min(subsampling, imageHeight / (targetHeight * SUBSAMPLING_MIN_RATIO));
+        }
+        return Math.max(1, subsampling);
+    }
+
+    /**
+     * Reads the dimensions, format and color information of an image from a byte array, without decoding the image.<p>
+     *
+     * @param source the byte array to read the image information from
+     *
+     * @return the image information
+     *
+     * @throws IOException in case the image header could not be read
+     */
+    public static ImageInfo probe(byte[] source) throws IOException {
+
+        return probeImage(source);
+    }
+
+    /**
+     * Reads the dimensions, format and color information of an image from a local file, without decoding the image.<p>
+     *
+     * Only the image header is read, no pixel data is decoded and no image raster is allocated.
+     * This is much faster than reading the image just to find out its size.<p>
+     *
+     * @param source the file to read the image information from
+     *
+     * @return the image information
+     *
+     * @throws IOException in case the image header could not be read
+     */
+    public static ImageInfo probe(File source) throws IOException {
+
+        if (!source.canRead()) {
+            throw new IIOException("Can't read input file!");
+        }
+        return probeImage(source);
+    }
+
+    /**
+     * Reads the dimensions, format and color information of an image from an InputStream, without decoding the image.<p>
+     *
+     * Only the bytes of the image header are consumed from the stream.<p>
+     *
+     * @param source the input stream to read the image information from
+     *
+     * @return the image information
+     *
+     * @throws IOException in case the image header could not be read
+     */
+    public static ImageInfo probe(InputStream source) throws IOException {
+
+        return probeImage(source);
+    }
+
+    /**
+     * Reads the dimensions, format and color information of an image from a local file whose path is supplied as a String,
+     * without decoding the image.<p>
+     *
+     * @param source the path to the local file to read the image information from
+     *
+     * @return the image information
+     *
+     * @throws IOException in case the image header could not be read
+     */
+    public static ImageInfo probe(String source) throws IOException {
+
+        return probe(new File(source));
+    }
+
+    /**
+     * Reads the dimensions, format and color information of an image from a URL, without decoding the image.<p>
+     *
+     * @param source the URL to read the image information from
+     *
+     * @return the image information
+     *
+     * @throws IOException in case the image header could not be read
+     */
+    public static ImageInfo probe(URL source) throws IOException {
+
+        InputStream in = source.openStream();
+        try {
+            return probeImage(in);
+        } finally {
+            in.close();
+        }
+    }
+
     /**
      * Loads an image from a byte array
      *
@@ -309,7 +622,7 @@ public class Simapi {
      */
     public static BufferedImage read(byte[] source) throws IOException {
 
-        return read(new ByteArrayInputStream(source));
+        return readImage(source, null, 0, 0);
     }
 
     /**
@@ -323,7 +636,10 @@ public class Simapi {
      */
     public static BufferedImage read(File source) throws IOException {
 
-        return ensureImageIsSystemType(ImageIO.read(source), true);
+        if (!source.canRead()) {
+            throw new IIOException("Can't read input file!");
+        }
+        return readImage(source, null, 0, 0);
     }
 
     /**
@@ -337,7 +653,7 @@ public class Simapi {
      */
     public static BufferedImage read(InputStream source) throws IOException {
 
-        return ensureImageIsSystemType(ImageIO.read(source), true);
+        return readImage(source, null, 0, 0);
     }
 
     /**
@@ -365,153 +681,454 @@ public class Simapi {
      */
     public static BufferedImage read(URL source) throws IOException {
 
-        return ensureImageIsSystemType(ImageIO.read(source), true);
+        InputStream in = source.openStream();
+        try {
+            return readImage(in, null, 0, 0);
+        } finally {
+            in.close();
+        }
     }
 
     /**
-     * Returns an image that is ensured the be of either {@link BufferedImage#TYPE_INT_RGB} or
-     * {@link BufferedImage#TYPE_INT_ARGB}.<p>
+     * Loads an image from a byte array, decoding only as many pixels as required
+     * for a later downscale to the given target dimensions.<p>
      *
-     * Ensuring the image is of one of the possible return types is done before applying an image filter transformation
-     * since if the image is of a different (not native) type, the transformation can take very long
-     * and consume a lot of resources.<p>
+     * @param source the byte array to read the image from
+     * @param targetWidth the width the image will be scaled to, or <code>0</code> if not restricted
+     * @param targetHeight the height the image will be scaled to, or <code>0</code> if not restricted
      *
-     * @param image the original image
-     * @param allowTransparent if <code>true</code>, transparent (alpha layer) pixels is allowed
-     * @return an image that is ensured the be of a system type
+     * @return the loaded image, which may be smaller than the original image but not smaller than the target dimensions
+     *
+     * @throws IOException in case the image could not be loaded
+     *
+     * @see #getSubsampling(int, int, int, int)
      */
-    protected static BufferedImage ensureImageIsSystemType(BufferedImage image, boolean allowTransparent) {
-
-        switch (image.getType()) {
-            case BufferedImage.TYPE_INT_ARGB:
-            case BufferedImage.TYPE_INT_RGB:
-                // image already uses a system compatible color model, no need for transformation
-                return image;
-            default:
-                // image must be transformed to system color
-        }
-
-        BufferedImage result;
-        if (allowTransparent && (image.getColorModel().getTransparency() != Transparency.OPAQUE)) {
-            // use RGB color model with alpha
-            result = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
-        } else {
-            // use RGB color model without alpha (no transparency)
-            result = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
-        }
+    public static BufferedImage read(byte[] source, int targetWidth, int targetHeight) throws IOException {
 
-        // copy the pixels from the source image ti the result image
-        Graphics2D g = result.createGraphics();
-        g.drawImage(image, 0, 0, null);
-        g.dispose();
+        return readSubsampled(source, targetWidth, targetHeight);
+    }
 
-        // flush original - doesn't actually do anything but looks right to me anyway
-        image.flush();
-        image = null;
+    /**
+     * Loads an image from a local file, decoding only as many pixels as required
+     * for a later downscale to the given target dimensions.<p>
+     *
+     * @param source the file to read the input image from
+     * @param targetWidth the width the image will be scaled to, or <code>0</code> if not restricted
+     * @param targetHeight the height the image will be scaled to, or <code>0</code> if not restricted
+     *
+     * @return the loaded image, which may be smaller than the original image but not smaller than the target dimensions
+     *
+     * @throws IOException in case the image could not be loaded
+     *
+     * @see #getSubsampling(int, int, int, int)
+     */
+    public static BufferedImage read(File source, int targetWidth, int targetHeight) throws IOException {
 
-        return result;
+        if (!source.canRead()) {
+            throw new IIOException("Can't read input file!");
+        }
+        return readSubsampled(source, targetWidth, targetHeight);
     }
 
     /**
-     * Applies the given filter to the image.<p>
+     * Loads an image from an InputStream, decoding only as many pixels as required
+     * for a later downscale to the given target dimensions.<p>
      *
-     * @param image the image to apply the filter to
-     * @param filter the filter to apply
+     * @param source the input stream to read the input image from
+     * @param targetWidth the width the image will be scaled to, or <code>0</code> if not restricted
+     * @param targetHeight the height the image will be scaled to, or <code>0</code> if not restricted
      *
-     * @return the image with the filter applied
+     * @return the loaded image, which may be smaller than the original image but not smaller than the target dimensions
+     *
+     * @throws IOException in case the image could not be loaded
+     *
+     * @see #getSubsampling(int, int, int, int)
      */
-    public BufferedImage applyFilter(BufferedImage image, ImageFilter filter) {
+    public static BufferedImage read(InputStream source, int targetWidth, int targetHeight) throws IOException {
 
-        // apply filter using default AWT toolkit
-        Image img = Toolkit.getDefaultToolkit().createImage(new FilteredImageSource(image.getSource(), filter));
-
-        // use a pixel grabber to retrieve the image's color model;
-        // grabbing a single pixel is usually sufficient
-        PixelGrabber pg = new PixelGrabber(img, 0, 0, 1, 1, false);
-        try {
-            pg.grabPixels();
-        } catch (InterruptedException e) {
-            // ignore
-        }
+        return readSubsampled(source, targetWidth, targetHeight);
+    }
 
-        // recast the AWT image into a BufferedImage (using alpha RGB)
-        BufferedImage result = new BufferedImage(
-            img.getWidth(null),
-            img.getHeight(null),
-            pg.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+    /**
+     * Loads an image from a local file whose path is supplied as a String, decoding only as many pixels as required
+     * for a later downscale to the given target dimensions.<p>
+     *
+     * @param source the path to the local file to read the input image from
+     * @param targetWidth the width the image will be scaled to, or <code>0</code> if not restricted
+     * @param targetHeight the height the image will be scaled to, or <code>0</code> if not restricted
+     *
+     * @return the loaded image, which may be smaller than the original image but not smaller than the target dimensions
+     *
+     * @throws IOException in case the image could not be loaded
+     *
+     * @see #getSubsampling(int, int, int, int)
+     */
+    public static BufferedImage read(String source, int targetWidth, int targetHeight) throws IOException {
 
-        // draw the generated image to the result canvas and return
-        Graphics2D g = result.createGraphics();
-        g.drawImage(img, 0, 0, null);
-        g.dispose();
-        return result;
+        return read(new File(source), targetWidth, targetHeight);
     }
 
     /**
-     * Calculates the image size for an image after all filters returned by {@link RenderSettings#getImageFilters()}
-     * have been applied.<p>
+     * Loads an image from a URL, decoding only as many pixels as required
+     * for a later downscale to the given target dimensions.<p>
      *
-     * @param width the image width
-     * @param height the image height
+     * @param source the URL to read the input image from
+     * @param targetWidth the width the image will be scaled to, or <code>0</code> if not restricted
+     * @param targetHeight the height the image will be scaled to, or <code>0</code> if not restricted
      *
-     * @return the image size after all filters have been applied
+     * @return the loaded image, which may be smaller than the original image but not smaller than the target dimensions
+     *
+     * @throws IOException in case the image could not be loaded
+     *
+     * @see #getSubsampling(int, int, int, int)
      */
-    public Rectangle applyFilterDimensions(int width, int height) {
+    public static BufferedImage read(URL source, int targetWidth, int targetHeight) throws IOException {
 
-        Rectangle base = new Rectangle(width, height);
-        for (ImageFilter filter : m_renderSettings.getImageFilters()) {
-            if (filter instanceof WholeImageFilter) {
-                WholeImageFilter wholeFilter = (WholeImageFilter)filter;
-                base = wholeFilter.getTransformedSpace(base);
-            }
+        InputStream in = source.openStream();
+        try {
+            return readSubsampled(in, targetWidth, targetHeight);
+        } finally {
+            in.close();
         }
-        return base;
     }
 
     /**
-     * Applies all filters returned by {@link RenderSettings#getImageFilters()} to the given image.<p>
+     * Loads the given region of an image from a byte array, decoding only the image parts that intersect the region.<p>
      *
-     * @param image the image to apply the filters to
+     * This is much faster and uses less memory than reading the complete image
+     * and cropping it with {@link #crop(BufferedImage, int, int, int, int)} afterwards.<p>
      *
-     * @return the image with the filters applied
+     * @param source the byte array to read the image from
+     * @param x the x position where the region starts
+     * @param y the y position where the region starts
+     * @param width the width of the region
+     * @param height the height of the region
+     *
+     * @return the loaded image region
+     *
+     * @throws IOException in case the image could not be loaded
      */
-    public BufferedImage applyFilters(BufferedImage image) {
+    public static BufferedImage readRegion(byte[] source, int x, int y, int width, int height) throws IOException {
 
-        // make sure the image is of a compatible system type
-        image = ensureImageIsSystemType(image, true);
+        return readImage(source, new Rectangle(x, y, width, height), 0, 0);
+    }
 
-        threadSetNice();
+    /**
+     * Loads the given region of an image from a local file, decoding only the image parts that intersect the region.<p>
+     *
+     * This is much faster and uses less memory than reading the complete image
+     * and cropping it with {@link #crop(BufferedImage, int, int, int, int)} afterwards.<p>
+     *
+     * @param source the file to read the input image from
+     * @param x the x position where the region starts
+     * @param y the y position where the region starts
+     * @param width the width of the region
+     * @param height the height of the region
+     *
+     * @return the loaded image region
+     *
+     * @throws IOException in case the image could not be loaded
+     */
+    public static BufferedImage readRegion(File source, int x, int y, int width, int height) throws IOException {
 
-        for (ImageFilter filter : m_renderSettings.getImageFilters()) {
-            image = applyFilter(image, filter);
+        if (!source.canRead()) {
+            throw new IIOException("Can't read input file!");
         }
+        return readImage(source, new Rectangle(x, y, width, height), 0, 0);
+    }
 
-        threadSetNormal();
+    /**
+     * Loads the given region of an image from an InputStream, decoding only the image parts that intersect the region.<p>
+     *
+     * This is much faster and uses less memory than reading the complete image
+     * and cropping it with {@link #crop(BufferedImage, int, int, int, int)} afterwards.<p>
+     *
+     * @param source the input stream to read the input image from
+     * @param x the x position where the region starts
+     * @param y the y position where the region starts
+     * @param width the width of the region
+     * @param height the height of the region
+     *
+     * @return the loaded image region
+     *
+     * @throws IOException in case the image could not be loaded
+     */
+    public static BufferedImage readRegion(InputStream source, int x, int y, int width, int height) throws IOException {
 
-        return image;
+        return readImage(source, new Rectangle(x, y, width, height), 0, 0);
     }
 
     /**
-     * Crops an image according to the width and height specified.<p>
+     * Loads the given region of an image from a local file whose path is supplied as a String, decoding only the image parts that intersect the region.<p>
      *
-     * Use the constants <code>{@link Simapi#POS_CENTER}</code> etc. to indicate the crop position.<p>
+     * This is much faster and uses less memory than reading the complete image
+     * and cropping it with {@link #crop(BufferedImage, int, int, int, int)} afterwards.<p>
      *
-     * @param image the image to crop
-     * @param width the width of the target image
-     * @param height the height of the target image
-     * @param cropPosition the position to crop the image at
+     * @param source the path to the local file to read the input image from
+     * @param x the x position where the region starts
+     * @param y the y position where the region starts
+     * @param width the width of the region
+     * @param height the height of the region
      *
-     * @return the transformed image
+     * @return the loaded image region
+     *
+     * @throws IOException in case the image could not be loaded
      */
-    public BufferedImage crop(BufferedImage image, int width, int height, int cropPosition) {
+    public static BufferedImage readRegion(String source, int x, int y, int width, int height) throws IOException {
 
-        int imageWidth = image.getWidth();
-        int imageHeight = image.getHeight();
-        if ((imageWidth == width) && (imageHeight == height)) {
-            // no resize required
-            return image;
+        return readRegion(new File(source), x, y, width, height);
+    }
+
+    /**
+     * Loads the given region of an image from a URL, decoding only the image parts that intersect the region.<p>
+     *
+     * This is much faster and uses less memory than reading the complete image
+     * and cropping it with {@link #crop(BufferedImage, int, int, int, int)} afterwards.<p>
+     *
+     * @param source the URL to read the input image from
+     * @param x the x position where the region starts
+     * @param y the y position where the region starts
+     * @param width the width of the region
+     * @param height the height of the region
+     *
+     * @return the loaded image region
+     *
+     * @throws IOException in case the image could not be loaded
+     */
+    public static BufferedImage readRegion(URL source, int x, int y, int width, int height) throws IOException {
+
+        InputStream in = source.openStream();
+        try {
+            return readImage(in, new Rectangle(x, y, width, height), 0, 0);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads an image from a local file and resizes it to best fit into the given dimensions,
+     * without holding the complete source image in memory.<p>
+     *
+     * @param source the file to read the input image from
+     * @param width the maximum width of the result image, or <code>0</code> if not restricted
+     * @param height the maximum height of the result image, or <code>0</code> if not restricted
+     *
+     * @return the resized image
+     *
+     * @throws IOException in case the image could not be loaded
+     *
+     * @see #readResized(InputStream, int, int)
+     */
+    public static BufferedImage readResized(File source, int width, int height) throws IOException {
+
+        if (!source.canRead()) {
+            throw new IIOException("Can't read input file!");
+        }
+        return readStreaming(source, width, height);
+    }
+
+    /**
+     * Reads an image from an InputStream and resizes it to best fit into the given dimensions,
+     * without holding the complete source image in memory.<p>
+     *
+     * The image is decoded in horizontal strips (subsampled if possible), and each strip is
+     * downscaled with an exact area average before the next strip is decoded.
+     * This way the memory required grows with the image width, not with the image area,
+     * which allows processing very large images like print resolution scans.<p>
+     *
+     * Images are never enlarged. The aspect ratio of the image is kept.<p>
+     *
+     * @param source the input stream to read the input image from
+     * @param width the maximum width of the result image, or <code>0</code> if not restricted
+     * @param height the maximum height of the result image, or <code>0</code> if not restricted
+     *
+     * @return the resized image
+     *
+     * @throws IOException in case the image could not be loaded
+     */
+    public static BufferedImage readResized(InputStream source, int width, int height) throws IOException {
+
+        return readStreaming(source, width, height);
+    }
+
+    /**
+     * Sets the render settings used by the public static methods of this class.<p>
+     *
+     * A snapshot of the given settings is installed in a single step, so a static method that is
+     * already running keeps using the previous settings. Later changes to the given settings have no effect.<p>
+     *
+     * @param settings the render settings to use for the public static methods of this class
+     *
+     * @see #getStaticRenderSettings()
+     */
+    public static void setStaticRenderSettings(RenderSettings settings) {
+
+        STATIC_QUALITY_RENDERER = new Simapi(settings.createSnapshot());
+    }
+
+    /**
+     * Creates an image input stream for the given input.<p>
+     *
+     * In memory inputs are never copied to a temporary cache file, regardless of
+     * {@link ImageIO#getUseCache()}. A <code>byte[]</code> is read directly, without creating a copy,
+     * and an {@link InputStream} is cached in memory. Files with at least {@link #MAPPED_FILE_MIN_SIZE} bytes
+     * are read through a memory mapped buffer. All other inputs are passed to
+     * {@link ImageIO#createImageInputStream(Object)}.<p>
+     *
+     * @param input the input to create the image input stream for
+     *
+     * @return an image input stream for the given input, or <code>null</code> if the input is not supported
+     *
+     * @throws IOException in case the image input stream could not be created
+     */
+    protected static ImageInputStream createImageInputStream(Object input) throws IOException {
+
+        if (input instanceof byte[]) {
+            return new ByteArrayImageInputStream((byte[])input);
+        } else if ((input instanceof File)
+            && (((File)input).length() >= MAPPED_FILE_MIN_SIZE)
+            && (((File)input).length() <= Integer.MAX_VALUE)) {
+            return new MappedFileImageInputStream((File)input);
+        } else if (input instanceof ImageInputStream) {
+            return (ImageInputStream)input;
+        } else if (input instanceof InputStream) {
+            return new MemoryCacheImageInputStream((InputStream)input);
+        }
+        return ImageIO.createImageInputStream(input);
+    }
+
+    /**
+     * Creates an image output stream for the given output.<p>
+     *
+     * In memory outputs are never copied to a temporary cache file, regardless of
+     * {@link ImageIO#getUseCache()}. An {@link ImageOutputStream}, for example a {@link ByteArrayImageOutputStream},
+     * is used directly, and an {@link OutputStream} is cached in memory. All other outputs are passed to
+     * {@link ImageIO#createImageOutputStream(Object)}.<p>
+     *
+     * @param output the output to create the image output stream for
+     *
+     * @return an image output stream for the given output
+     *
+     * @throws IOException in case the image output stream could not be created
+     */
+    protected static ImageOutputStream createImageOutputStream(Object output) throws IOException {
+
+        if (output instanceof ImageOutputStream) {
+            return (ImageOutputStream)output;
+        } else if (output instanceof OutputStream) {
+            return new MemoryCacheImageOutputStream((OutputStream)output);
+        }
+        ImageOutputStream stream = null;
+        try {
+            stream = ImageIO.createImageOutputStream(output);
+        } catch (IOException e) {
+            throw new IIOException("Can't create output stream!", e);
+        }
+        if (stream == null) {
+            throw new IIOException("Can't create output stream!");
+        }
+        return stream;
+    }
+
+    /**
+     * Returns an image that is ensured the be of either {@link BufferedImage#TYPE_INT_RGB} or
+     * {@link BufferedImage#TYPE_INT_ARGB}.<p>
+     *
+     * Ensuring the image is of one of the possible return types is done before applying an image filter transformation
+     * since if the image is of a different (not native) type, the transformation can take very long
+     * and consume a lot of resources.<p>
+     *
+     * @param image the original image
+     * @param allowTransparent if <code>true</code>, transparent (alpha layer) pixels is allowed
+     * @return an image that is ensured the be of a system type
+     */
+    protected static BufferedImage ensureImageIsSystemType(BufferedImage image, boolean allowTransparent) {
+
+        return ensureImageIsSystemType(image, allowTransparent, 1);
+    }
+
+    /**
+     * Returns an image that is ensured the be of either {@link BufferedImage#TYPE_INT_RGB} or
+     * {@link BufferedImage#TYPE_INT_ARGB}, converting large images with the given number of parallel threads.<p>
+     *
+     * The byte based image layouts the image readers usually deliver are converted by reading and writing the
+     * image data buffers directly, all other images are drawn on the result image.<p>
+     *
+     * @param image the original image
+     * @param allowTransparent if <code>true</code>, transparent (alpha layer) pixels is allowed
+     * @param parallelism the number of parallel threads to use for the conversion
+     * @return an image that is ensured the be of a system type
+     *
+     * @see ImageKernels#convertToInt(BufferedImage, BufferedImage, int, int)
+     */
+    protected static BufferedImage ensureImageIsSystemType(
+        BufferedImage image,
+        boolean allowTransparent,
+        int parallelism) {
+
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_ARGB:
+            case BufferedImage.TYPE_INT_RGB:
+                // image already uses a system compatible color model, no need for transformation
+                return image;
+            default:
+                // image must be transformed to system color
+        }
+
+        BufferedImage result;
+        if (allowTransparent && (image.getColorModel().getTransparency() != Transparency.OPAQUE)) {
+            // use RGB color model with alpha
+            result = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        } else {
+            // use RGB color model without alpha (no transparency)
+            result = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        }
+
+        // copy the pixels from the source image ti the result image
+        boolean direct = ImageKernels.canConvertToInt(image, result.getColorModel().hasAlpha());
+        boolean parallel = (parallelism > 1)
+            && (((long)result.getWidth() * result.getHeight()) >= RenderSettings.MIN_PARALLEL_SIZE);
+        switch (image.getType()) {
+            case BufferedImage.TYPE_3BYTE_BGR:
+            case BufferedImage.TYPE_BYTE_GRAY:
+            case BufferedImage.TYPE_BYTE_INDEXED:
+                // Java 2D has fast native loops for these types, the direct conversion only helps if done in parallel
+                direct = direct && parallel;
+                break;
+            default:
+                // Java 2D uses slow generic loops for all other types
+        }
+        if (direct && parallel) {
+            STATIC_QUALITY_RENDERER.getForkJoinPool(parallelism).invoke(new ConvertBandTask(image, result, parallelism));
+        } else if (direct) {
+            ImageKernels.convertToInt(image, result, 0, result.getHeight());
+        } else {
+            Graphics2D g = result.createGraphics();
+            g.drawImage(image, 0, 0, null);
+            g.dispose();
         }
 
+        // flush original - doesn't actually do anything but looks right to me anyway
+        image.flush();
+        image = null;
+
+        return result;
+    }
+
+    /**
+     * Returns the area of an image with the given dimensions that is cut out when cropping it
+     * to the given width and height at the given crop position.<p>
+     *
+     * @param imageWidth the width of the image to crop
+     * @param imageHeight the height of the image to crop
+     * @param width the width of the target image
+     * @param height the height of the target image
+     * @param cropPosition the position to crop the image at, for example {@link #POS_CENTER}
+     *
+     * @return the area of the image that is cut out
+     */
+    protected static Rectangle getCropArea(int imageWidth, int imageHeight, int width, int height, int cropPosition) {
+
         int x;
         int y;
         switch (cropPosition) {
@@ -553,170 +1170,612 @@ public class Simapi {
                 y = (imageHeight - height) / 2;
         }
 
-        // return the result
-        return image.getSubimage(x, y, width, height);
+        return new Rectangle(x, y, width, height);
     }
 
     /**
-     * Crops a part of the given image from the specified <code>x,y</code> point to the given <code>width,height</code>.
+     * Returns the subsampling factor to use for decoding an image of the given dimensions,
+     * so that the decoded image fits into the image limits of the given render settings.<p>
      *
-     * Should the target image rectangle be outside of the source image, the source image is enlarged and
-     * the transparent color is used for the additional background pixels.
-     * If the image does not support transparent pixels, the transparent replacement color (whit by default)
-     * will be used.<p>
+     * @param settings the render settings that define the image limits
+     * @param imageWidth the width of the image (or region) to decode
+     * @param imageHeight the height of the image (or region) to decode
+     * @param subsampling the subsampling factor that is required for the target size
      *
-     * @param image the image to crop
-     * @param x the x position where the crop starts
-     * @param y the y position where the crop starts
-     * @param width the width of the cropped target image
-     * @param height the height of the cropped target image
+     * @return the given subsampling factor, or a larger one if required to fit into the image limits
      *
-     * @return a cropped part of the given image from the specified
-     *      <code>x,y</code> point to the given <code>width,height</code>
+     * @throws ImageLimitException in case the image does not fit into the image limits and subsampling
+     *      of large images is disabled in the render settings
      *
-     * @see #crop(BufferedImage, int, int, int, int, Color)
+     * @see RenderSettings#isSubsampleLargeImages()
      */
-    public BufferedImage crop(BufferedImage image, int x, int y, int width, int height) {
-
-        return crop(image, x, y, width, height, COLOR_TRANSPARENT);
+    protected static int getLimitedSubsampling(
+        RenderSettings settings,
+        int imageWidth,
+        int imageHeight,
+        int subsampling) throws ImageLimitException {
+
+        int result = Math.max(1, subsampling);
+        while (!settings.isWithinImageLimits(
+            ((imageWidth + result) - 1) / result,
+            ((imageHeight + result) - 1) / result)) {
+            if (!settings.isSubsampleLargeImages() || ((result >= imageWidth) && (result >= imageHeight))) {
+                throw new ImageLimitException(imageWidth, imageHeight);
+            }
+            result++;
+        }
+        return result;
     }
 
     /**
-     * Crops a part of the given image from the specified <code>x,y</code> point to the given <code>width,height</code>.
-     *
-     * Should the target image rectangle be outside of the source image, the source image is enlarged and
-     * the given background replace color is used for the additional pixels.<p>
+     * Reads the dimensions, format and color information of the first image from the given input,
+     * reading only the image header.<p>
      *
-     * @param image the image to crop
-     * @param x the x position where the crop starts
-     * @param y the y position where the crop starts
-     * @param width the width of the cropped target image
-     * @param height the height of the cropped target image
-     * @param backgroundColor the color to use if the background must be enlarged
+     * @param input the input to read the image information from, must be supported by {@link #createImageInputStream(Object)}
      *
-     * @return a cropped part of the given image from the specified
-     *      <code>x,y</code> point to the given <code>width,height</code>
+     * @return the image information
      *
-     * @see #crop(BufferedImage, int, int, int, int)
+     * @throws IOException in case the image header could not be read
      */
-    public BufferedImage crop(BufferedImage image, int x, int y, int width, int height, Color backgroundColor) {
+    protected static ImageInfo probeImage(Object input) throws IOException {
 
-        if ((x < 0) || (y < 0) || ((x + width) >= image.getWidth()) || ((y + height) >= image.getHeight())) {
-            // crop area lies partly outside of image - blow up result image to fit
-            int xpos = x;
-            int ypos = y;
-            int imageWidth = image.getWidth();
-            int imageHeight = image.getHeight();
-            if (x < 0) {
-                xpos = Math.abs(x);
-                x = 0;
-                imageWidth += xpos;
-            } else {
-                xpos = 0;
-            }
-            if (y < 0) {
-                ypos = Math.abs(y);
-                y = 0;
-                imageHeight += ypos;
-            } else {
-                ypos = 0;
-            }
-            if (imageWidth < width) {
-                imageWidth += width;
-            }
-            if (imageHeight < height) {
-                imageHeight += height;
-            }
-            // draw input image to enlarged canvas
-            BufferedImage result = createImage(image.getColorModel(), imageWidth, imageHeight);
-            Graphics2D g = result.createGraphics();
-            // check the background color
-            ColorModel cm = result.getColorModel();
-            if (!cm.hasAlpha() && (backgroundColor == COLOR_TRANSPARENT)) {
-                // alpha not supported by target color model
-                backgroundColor = m_renderSettings.getTransparentReplaceColor();
-            }
-            if (backgroundColor != COLOR_TRANSPARENT) {
-                // don't fill if background is transparent
-                g.setPaintMode();
-                g.setColor(backgroundColor);
-                g.fillRect(0, 0, result.getWidth(), result.getHeight());
-            }
-            g.drawImage(image, xpos, ypos, null);
-            g.dispose();
-            // exchange image with result
-            image = result;
-        } else if (backgroundColor != COLOR_TRANSPARENT) {
-            // background color provided
-            int imageWidth = image.getWidth();
-            int imageHeight = image.getHeight();
-
-            BufferedImage result = createImage(image.getColorModel(), imageWidth, imageHeight);
-            Graphics2D g = result.createGraphics();
-            // check the background color
-            ColorModel cm = result.getColorModel();
-            if (!cm.hasAlpha() && (backgroundColor == COLOR_TRANSPARENT)) {
-                // alpha not supported by target color model
-                backgroundColor = m_renderSettings.getTransparentReplaceColor();
-            }
-            if (backgroundColor != COLOR_TRANSPARENT) {
-                // don't fill if background is transparent
-                g.setPaintMode();
-                g.setColor(backgroundColor);
-                g.fillRect(0, 0, result.getWidth(), result.getHeight());
+        ImageInputStream stream = createImageInputStream(input);
+        if (stream == null) {
+            throw new IIOException("Can't create an ImageInputStream!");
+        }
+        try {
+            ImageReader reader = ImageIOPool.getReader(stream);
+            try {
+                String format = reader.getFormatName();
+                String type = getImageType(format);
+                if (type == null) {
+                    type = format.toUpperCase();
+                }
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if (reader instanceof JPEGImageReader) {
+                    // the JPEG reader provides the color information from the header segments
+                    JPEGImageReader jpegReader = (JPEGImageReader)reader;
+                    String colorSpace = jpegReader.getSourceColorSpace(0);
+                    return new ImageInfo(
+                        type,
+                        width,
+                        height,
+                        jpegReader.getSourceNumComponents(0),
+                        colorSpace.endsWith("A"),
+                        colorSpace,
+                        jpegReader.hasEmbeddedICCProfile(0),
+                        jpegReader.getExifOrientation(0));
+                }
+                ImageTypeSpecifier imageType = reader.getRawImageType(0);
+                if (imageType == null) {
+                    imageType = reader.getImageTypes(0).next();
+                }
+                ColorModel colorModel = imageType.getColorModel();
+                String colorSpace;
+                switch (colorModel.getColorSpace().getType()) {
+                    case ColorSpace.TYPE_RGB:
+                        colorSpace = "RGB";
+                        break;
+                    case ColorSpace.TYPE_GRAY:
+                        colorSpace = "Gray";
+                        break;
+                    case ColorSpace.TYPE_CMYK:
+                        colorSpace = "CMYK";
+                        break;
+                    default:
+                        colorSpace = "Unknown";
+                }
+                return new ImageInfo(
+                    type,
+                    width,
+                    height,
+                    colorModel.getNumComponents(),
+                    colorModel.hasAlpha(),
+                    colorSpace,
+                    false,
+                    1);
+            } finally {
+                ImageIOPool.releaseReader(reader);
             }
-            g.drawImage(image, x, y, null);
-            g.dispose();
-            // exchange image with result
-            image = result;
+        } finally {
+            stream.close();
         }
-
-        // return the result image
-        return image.getSubimage(x, y, width, height);
     }
 
     /**
-     * Crops a part of the given image around the specified <code>x,y</code> point
-     * to the dimensions specified in <code>targetWidth,targetHeight</code>.<p>
-     *
-     * In case the target dimensions are larger then the original image, the cropped image
-     * part is upscaled to the target size.<p>
+     * Reads the first image from the given input, decoding only the given source region and using the largest
+     * subsampling factor that still delivers enough pixels for a downscale to the given target dimensions.<p>
      *
-     * In case the target dimensions are smaller, the <code>downScale</code> parameter can be used
-     * to control the crop: if <code>false</code> the the cropped image is taken from the original pixels,
-     * if <code>true</code> then the image is rist downscaled to the target dimensions and then cropped.<p>
+     * The image dimensions are read from the image header before any pixel data is decoded,
+     * so the full resolution raster is never allocated if a region is given or subsampling is possible.<p>
      *
-     * The aspect ratio of the target image is not kept.<p>
+     * The region is clipped to the image bounds. Should the region lie partly outside of the image,
+     * the result is enlarged to the region size using transparent background pixels,
+     * the same as {@link #crop(BufferedImage, int, int, int, int)} would do.<p>
      *
-     * @param image the image to crop
-     * @param x the x position where the crop starts
-     * @param y the y position where the crop starts
-     * @param scale indicates if a large image should be downscaled first
-     * @param targetWidth the width of the target image
-     * @param targetHeight the width of the target image
+     * @param input the input to read the image from, must be supported by {@link #createImageInputStream(Object)}
+     * @param region the region of the source image to read, or <code>null</code> to read the complete image
+     * @param targetWidth the width the image (or region) will be scaled to, or <code>0</code> if not restricted
+     * @param targetHeight the height the image (or region) will be scaled to, or <code>0</code> if not restricted
      *
-     * @return a cropped part of the given image from the specified <code>x,y</code> point
-     *      to the given <code>width,height</code>, resized to the dimensions specified in <code>targetWidth,targetHeight</code>
+     * @return the loaded image
      *
-     * @see #cropToSize(BufferedImage, int, int, int, int, int, int, Color)
+     * @throws IOException in case the image could not be loaded
      */
-    public BufferedImage cropPointToSize(
-        BufferedImage image,
-        int x,
-        int y,
-        boolean scale,
-        int targetWidth,
-        int targetHeight) {
+    protected static BufferedImage readImage(Object input, Rectangle region, int targetWidth, int targetHeight)
+    throws IOException {
 
-        int imageWidth = image.getWidth();
-        int imageHeight = image.getHeight();
+        return readImage(STATIC_QUALITY_RENDERER.m_renderSettings, input, region, targetWidth, targetHeight);
+    }
 
-        double cW = targetWidth;
-        double cH = targetHeight;
+    /**
+     * Reads the first image from the given input, decoding only the given source region and using the largest
+     * subsampling factor that still delivers enough pixels for a downscale to the given target dimensions.<p>
+     *
+     * The image dimensions are checked against the image limits of the given render settings
+     * before any pixel data is decoded.<p>
+     *
+     * @param settings the render settings that define the image limits
+     * @param input the input to read the image from, must be supported by {@link #createImageInputStream(Object)}
+     * @param region the region of the source image to read, or <code>null</code> to read the complete image
+     * @param targetWidth the width the image (or region) will be scaled to, or <code>0</code> if not restricted
+     * @param targetHeight the height the image (or region) will be scaled to, or <code>0</code> if not restricted
+     *
+     * @return the loaded image
+     *
+     * @throws ImageLimitException in case the image exceeds the image limits of the render settings
+     * @throws IOException in case the image could not be loaded
+     *
+     * @see #readImage(Object, Rectangle, int, int)
+     */
+    protected static BufferedImage readImage(
+        RenderSettings settings,
+        Object input,
+        Rectangle region,
+        int targetWidth,
+        int targetHeight) throws IOException {
 
-        if ((imageWidth <= targetWidth) || (imageHeight <= targetHeight) || scale) {
+        ImageInputStream stream = createImageInputStream(input);
+        if (stream == null) {
+            throw new IIOException("Can't create an ImageInputStream!");
+        }
+        try {
+            ImageReader reader = ImageIOPool.getReader(stream);
+            try {
+                return readImage(settings, reader, region, targetWidth, targetHeight);
+            } finally {
+                ImageIOPool.releaseReader(reader);
+            }
+        } finally {
+            stream.close();
+        }
+    }
 
-            // the target dimensions do NOT fit in the original image, or we should downscale
+    /**
+     * Reads the first image from the given image reader, decoding only the given source region and using the largest
+     * subsampling factor that still delivers enough pixels for a downscale to the given target dimensions.<p>
+     *
+     * @param reader the image reader to read the image from, the input of the reader must already be set
+     * @param region the region of the source image to read, or <code>null</code> to read the complete image
+     * @param targetWidth the width the image (or region) will be scaled to, or <code>0</code> if not restricted
+     * @param targetHeight the height the image (or region) will be scaled to, or <code>0</code> if not restricted
+     *
+     * @return the loaded image
+     *
+     * @throws IOException in case the image could not be loaded
+     *
+     * @see #readImage(Object, Rectangle, int, int)
+     */
+    protected static BufferedImage readImage(ImageReader reader, Rectangle region, int targetWidth, int targetHeight)
+    throws IOException {
+
+        return readImage(STATIC_QUALITY_RENDERER.m_renderSettings, reader, region, targetWidth, targetHeight);
+    }
+
+    /**
+     * Reads the first image from the given image reader, decoding only the given source region and using the largest
+     * subsampling factor that still delivers enough pixels for a downscale to the given target dimensions.<p>
+     *
+     * The image dimensions are checked against the image limits of the given render settings
+     * before any pixel data is decoded.<p>
+     *
+     * @param settings the render settings that define the image limits
+     * @param reader the image reader to read the image from, the input of the reader must already be set
+     * @param region the region of the source image to read, or <code>null</code> to read the complete image
+     * @param targetWidth the width the image (or region) will be scaled to, or <code>0</code> if not restricted
+     * @param targetHeight the height the image (or region) will be scaled to, or <code>0</code> if not restricted
+     *
+     * @return the loaded image
+     *
+     * @throws ImageLimitException in case the image exceeds the image limits of the render settings
+     * @throws IOException in case the image could not be loaded
+     *
+     * @see #readImage(Object, Rectangle, int, int)
+     */
+    protected static BufferedImage readImage(
+        RenderSettings settings,
+        ImageReader reader,
+        Rectangle region,
+        int targetWidth,
+        int targetHeight) throws IOException {
+
+        ImageReadParam param = reader.getDefaultReadParam();
+        int imageWidth = reader.getWidth(0);
+        int imageHeight = reader.getHeight(0);
+        Rectangle sourceRegion = null;
+        if (region != null) {
+            sourceRegion = region.intersection(new Rectangle(imageWidth, imageHeight));
+            if (sourceRegion.isEmpty()) {
+                throw new IIOException("Source region does not intersect the image!");
+            }
+            param.setSourceRegion(sourceRegion);
+            imageWidth = sourceRegion.width;
+            imageHeight = sourceRegion.height;
+        }
+        int subsampling = getLimitedSubsampling(
+            settings,
+            imageWidth,
+            imageHeight,
+            getSubsampling(imageWidth, imageHeight, targetWidth, targetHeight));
+        if (subsampling > 1) {
+            param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        }
+        BufferedImage result = ensureImageIsSystemType(
+            CancellationListener.read(reader, param),
+            true,
+            settings.getParallelism());
+        if ((sourceRegion != null) && !sourceRegion.equals(region)) {
+            // region lies partly outside of the image - enlarge the result to the requested size
+            double xScale = result.getWidth() / (double)sourceRegion.width;
+            double yScale = result.getHeight() / (double)sourceRegion.height;
+            result = STATIC_QUALITY_RENDERER.crop(
+                result,
+                (int)Math.round((region.x - sourceRegion.x) * xScale),
+                (int)Math.round((region.y - sourceRegion.y) * yScale),
+                (int)Math.round(region.width * xScale),
+                (int)Math.round(region.height * yScale));
+        }
+        return result;
+    }
+
+    /**
+     * Reads the first image from the given input strip by strip and resizes it to best fit into the given dimensions.<p>
+     *
+     * JPEG and PNG images are decoded in a single pass into a {@link StripBuffer}, so only
+     * {@link #STREAMING_STRIP_ROWS} decoded rows are held in memory. Other images, and images
+     * that are not decoded from top to bottom, are read with a separate source region for every strip.<p>
+     *
+     * @param input the input to read the image from, must be supported by {@link #createImageInputStream(Object)}
+     * @param width the maximum width of the result image, or <code>0</code> if not restricted
+     * @param height the maximum height of the result image, or <code>0</code> if not restricted
+     *
+     * @return the resized image
+     *
+     * @throws IOException in case the image could not be loaded
+     *
+     * @see #readResized(InputStream, int, int)
+     */
+    protected static BufferedImage readStreaming(Object input, int width, int height) throws IOException {
+
+        ImageInputStream stream = createImageInputStream(input);
+        if (stream == null) {
+            throw new IIOException("Can't create an ImageInputStream!");
+        }
+        try {
+            ImageReader reader = ImageIOPool.getReader(stream);
+            try {
+                int imageWidth = reader.getWidth(0);
+                int imageHeight = reader.getHeight(0);
+
+                // calculate the target size, keeping the aspect ratio
+                double scale = 1.0;
+                if (width > 0) {
+                    scale = Math.min(scale, width / (double)imageWidth);
+                }
+                if (height > 0) {
+                    scale = Math.min(scale, height / (double)imageHeight);
+                }
+                int targetWidth = Math.max(1, (int)Math.round(imageWidth * scale));
+                int targetHeight = Math.max(1, (int)Math.round(imageHeight * scale));
+
+                // use subsampling to reduce the decoded rows
+                RenderSettings settings = STATIC_QUALITY_RENDERER.m_renderSettings;
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = getLimitedSubsampling(
+                    settings,
+                    imageWidth,
+                    imageHeight,
+                    getSubsampling(imageWidth, imageHeight, targetWidth, targetHeight));
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                int sourceWidth = ((imageWidth + subsampling) - 1) / subsampling;
+                int sourceHeight = ((imageHeight + subsampling) - 1) / subsampling;
+                // the image limits may require more subsampling than the target size allows
+                targetWidth = Math.min(targetWidth, sourceWidth);
+                targetHeight = Math.min(targetHeight, sourceHeight);
+                if ((targetWidth == sourceWidth) && (targetHeight == sourceHeight)) {
+                    // no scaling required
+                    return ensureImageIsSystemType(
+                        CancellationListener.read(reader, param),
+                        true,
+                        settings.getParallelism());
+                }
+
+                ImageTypeSpecifier type = reader.getImageTypes(0).next();
+                if (isStreamingFormat(reader)
+                    && StripBuffer.isSupported(type, sourceWidth, sourceHeight, STREAMING_STRIP_ROWS)) {
+                    // decode the image in a single pass, the reader writes into a destination that keeps only one strip
+                    StripBuffer buffer = new StripBuffer(
+                        type,
+                        sourceWidth,
+                        sourceHeight,
+                        STREAMING_STRIP_ROWS,
+                        targetWidth,
+                        targetHeight);
+                    param.setDestination(buffer.createDestination());
+                    CancellationListener.read(reader, param);
+                    param.setDestination(null);
+                    BufferedImage result = buffer.getTarget();
+                    if (result != null) {
+                        return result;
+                    }
+                    // the reader did not write the rows in sequence, e.g. for an interlaced image
+                }
+
+                // read the image strip by strip, every strip decodes the image again up to the strip
+                StripScaler scaler = new StripScaler(
+                    sourceWidth,
+                    sourceHeight,
+                    targetWidth,
+                    targetHeight,
+                    type.getColorModel().hasAlpha());
+                int[] pixels = null;
+                for (int row = 0; row < sourceHeight; row += STREAMING_STRIP_ROWS) {
+                    int y = row * subsampling;
+                    int rows = Math.min(STREAMING_STRIP_ROWS * subsampling, imageHeight - y);
+                    param.setSourceRegion(new Rectangle(0, y, imageWidth, rows));
+                    BufferedImage strip = CancellationListener.read(reader, param);
+                    pixels = strip.getRGB(0, 0, sourceWidth, strip.getHeight(), pixels, 0, sourceWidth);
+                    scaler.addRows(pixels, strip.getHeight());
+                    strip.flush();
+                }
+                if (!scaler.isComplete()) {
+                    throw new IIOException("Image reader returned less rows than expected!");
+                }
+                return scaler.getTarget();
+            } finally {
+                ImageIOPool.releaseReader(reader);
+            }
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Reads the first image from the given input, using the largest subsampling factor that still
+     * delivers enough pixels for a downscale to the given target dimensions.<p>
+     *
+     * @param input the input to read the image from, must be supported by {@link #createImageInputStream(Object)}
+     * @param targetWidth the width the image will be scaled to, or <code>0</code> if not restricted
+     * @param targetHeight the height the image will be scaled to, or <code>0</code> if not restricted
+     *
+     * @return the loaded image
+     *
+     * @throws IOException in case the image could not be loaded
+     *
+     * @see #readImage(Object, Rectangle, int, int)
+     */
+    protected static BufferedImage readSubsampled(Object input, int targetWidth, int targetHeight) throws IOException {
+
+        return readImage(input, null, targetWidth, targetHeight);
+    }
+
+    /**
+     * Applies the given filter to the image.<p>
+     *
+     * @param image the image to apply the filter to
+     * @param filter the filter to apply
+     *
+     * @return the image with the filter applied
+     */
+    public BufferedImage applyFilter(BufferedImage image, ImageFilter filter) {
+
+        // run the filter directly on the pixels of the image, this requires a system compatible image type
+        image = ensureImageIsSystemType(image, true, m_renderSettings.getParallelism());
+        return ImageFilterRunner.filter(image, filter);
+    }
+
+    /**
+     * Calculates the image size for an image after all filters returned by {@link RenderSettings#getImageFilters()}
+     * have been applied.<p>
+     *
+     * @param width the image width
+     * @param height the image height
+     *
+     * @return the image size after all filters have been applied
+     */
+    public Rectangle applyFilterDimensions(int width, int height) {
+
+        Rectangle base = new Rectangle(width, height);
+        for (ImageFilter filter : m_renderSettings.getImageFilters()) {
+            if (filter instanceof WholeImageFilter) {
+                WholeImageFilter wholeFilter = (WholeImageFilter)filter;
+                base = wholeFilter.getTransformedSpace(base);
+            }
+        }
+        return base;
+    }
+
+    /**
+     * Applies all filters returned by {@link RenderSettings#getImageFilters()} to the given image.<p>
+     *
+     * @param image the image to apply the filters to
+     *
+     * @return the image with the filters applied
+     */
+    public BufferedImage applyFilters(final BufferedImage image) {
+
+        return runImageStage(new Stage<BufferedImage>() {
+
+            public BufferedImage run(Simapi processor) {
+
+                // make sure the image is of a compatible system type
+                RenderSettings settings = processor.m_renderSettings;
+                BufferedImage result = ensureImageIsSystemType(image, true, settings.getParallelism());
+
+                // consecutive point filters are applied in a single pass
+                for (ImageFilter filter : PointFilterChain.fuse(settings.getImageFilters())) {
+                    result = processor.applyFilter(result, filter);
+                }
+                return result;
+            }
+        });
+    }
+
+    /**
+     * Crops an image according to the width and height specified.<p>
+     *
+     * Use the constants <code>{@link Simapi#POS_CENTER}</code> etc. to indicate the crop position.<p>
+     *
+     * @param image the image to crop
+     * @param width the width of the target image
+     * @param height the height of the target image
+     * @param cropPosition the position to crop the image at
+     *
+     * @return the transformed image
+     */
+    public BufferedImage crop(BufferedImage image, int width, int height, int cropPosition) {
+
+        int imageWidth = image.getWidth();
+        int imageHeight = image.getHeight();
+        if ((imageWidth == width) && (imageHeight == height)) {
+            // no resize required
+            return image;
+        }
+
+        Rectangle crop = getCropArea(imageWidth, imageHeight, width, height, cropPosition);
+
+        // return the result
+        return image.getSubimage(crop.x, crop.y, width, height);
+    }
+
+    /**
+     * Crops a part of the given image from the specified <code>x,y</code> point to the given <code>width,height</code>.
+     *
+     * Should the target image rectangle be outside of the source image, the source image is enlarged and
+     * the transparent color is used for the additional background pixels.
+     * If the image does not support transparent pixels, the transparent replacement color (whit by default)
+     * will be used.<p>
+     *
+     * @param image the image to crop
+     * @param x the x position where the crop starts
+     * @param y the y position where the crop starts
+     * @param width the width of the cropped target image
+     * @param height the height of the cropped target image
+     *
+     * @return a cropped part of the given image from the specified
+     *      <code>x,y</code> point to the given <code>width,height</code>
+     *
+     * @see #crop(BufferedImage, int, int, int, int, Color)
+     */
+    public BufferedImage crop(BufferedImage image, int x, int y, int width, int height) {
+
+        return crop(image, x, y, width, height, COLOR_TRANSPARENT);
+    }
+
+    /**
+     * Crops a part of the given image from the specified <code>x,y</code> point to the given <code>width,height</code>.
+     *
+     * Should the target image rectangle be outside of the source image, the source image is enlarged and
+     * the given background replace color is used for the additional pixels.<p>
+     *
+     * @param image the image to crop
+     * @param x the x position where the crop starts
+     * @param y the y position where the crop starts
+     * @param width the width of the cropped target image
+     * @param height the height of the cropped target image
+     * @param backgroundColor the color to use if the background must be enlarged
+     *
+     * @return a cropped part of the given image from the specified
+     *      <code>x,y</code> point to the given <code>width,height</code>
+     *
+     * @see #crop(BufferedImage, int, int, int, int)
+     */
+    public BufferedImage crop(BufferedImage image, int x, int y, int width, int height, Color backgroundColor) {
+
+        boolean inside = (x >= 0) && (y >= 0) && ((x + width) <= image.getWidth()) && ((y + height) <= image.getHeight());
+        if (inside && ((backgroundColor == COLOR_TRANSPARENT) || !image.getColorModel().hasAlpha())) {
+            // crop area lies inside the image and no background replacement is required - no need to copy pixels
+            return image.getSubimage(x, y, width, height);
+        }
+
+        // crop area lies partly outside of the image or background replacement is required
+        // only the crop area is copied to a new image, not the complete image
+        BufferedImage result = createImage(image.getColorModel(), width, height);
+        Graphics2D g = result.createGraphics();
+        // check the background color
+        ColorModel cm = result.getColorModel();
+        if (!cm.hasAlpha() && (backgroundColor == COLOR_TRANSPARENT)) {
+            // alpha not supported by target color model
+            backgroundColor = m_renderSettings.getTransparentReplaceColor();
+        }
+        if (backgroundColor != COLOR_TRANSPARENT) {
+            // don't fill if background is transparent
+            g.setPaintMode();
+            g.setColor(backgroundColor);
+            g.fillRect(0, 0, width, height);
+        }
+        g.drawImage(image, -x, -y, null);
+        g.dispose();
+
+        // return the result image
+        return result;
+    }
+
+    /**
+     * Crops a part of the given image around the specified <code>x,y</code> point
+     * to the dimensions specified in <code>targetWidth,targetHeight</code>.<p>
+     *
+     * In case the target dimensions are larger then the original image, the cropped image
+     * part is upscaled to the target size.<p>
+     *
+     * In case the target dimensions are smaller, the <code>downScale</code> parameter can be used
+     * to control the crop: if <code>false</code> the the cropped image is taken from the original pixels,
+     * if <code>true</code> then the image is rist downscaled to the target dimensions and then cropped.<p>
+     *
+     * The aspect ratio of the target image is not kept.<p>
+     *
+     * @param image the image to crop
+     * @param x the x position where the crop starts
+     * @param y the y position where the crop starts
+     * @param scale indicates if a large image should be downscaled first
+     * @param targetWidth the width of the target image
+     * @param targetHeight the width of the target image
+     *
+     * @return a cropped part of the given image from the specified <code>x,y</code> point
+     *      to the given <code>width,height</code>, resized to the dimensions specified in <code>targetWidth,targetHeight</code>
+     *
+     * @see #cropToSize(BufferedImage, int, int, int, int, int, int, Color)
+     */
+    public BufferedImage cropPointToSize(
+        BufferedImage image,
+        int x,
+        int y,
+        boolean scale,
+        int targetWidth,
+        int targetHeight) {
+
+        int imageWidth = image.getWidth();
+        int imageHeight = image.getHeight();
+
+        double cW = targetWidth;
+        double cH = targetHeight;
+
+        if ((imageWidth <= targetWidth) || (imageHeight <= targetHeight) || scale) {
+
+            // the target dimensions do NOT fit in the original image, or we should downscale
             // in this case we must first scale the cropping dimensions,
             // and later rescale the result image to the requested size
 
@@ -835,7 +1894,11 @@ public class Simapi {
     }
 
     /**
-     * Returns the byte contents of the given image.<p>
+     * Returns the byte contents of the given image as a read only byte buffer.<p>
+     *
+     * The output buffer is presized from the image dimensions, the image type and the compression quality,
+     * and the returned buffer is a view of the output buffer. The encoded image is only copied
+     * in case the output buffer is much larger than the encoded image.<p>
      *
      * @param image the image to get the byte contents for
      * @param type the type of the image to get the byte contents for
@@ -844,25 +1907,95 @@ public class Simapi {
      *
      * @throws IOException in case the image could not be converted to bytes
      */
-    public byte[] getBytes(BufferedImage image, String type) throws IOException {
+    public ByteBuffer getByteBuffer(BufferedImage image, String type) throws IOException {
 
-        ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        ByteArrayImageOutputStream out = new ByteArrayImageOutputStream(getEstimatedSize(image, type));
         write(image, out, type);
-        return out.toByteArray();
+        return out.toByteBuffer();
     }
 
     /**
-     * Reduces the colors in the given image to the given maximum color number.<p>
-     *
-     * @param image the image to reduce the colors from
-     * @param maxColors the maximum number of allowed colors in the output image (usually 256)
-     * @param alphaToBitmask indicates if alpha information should be converted
+     * Returns the byte contents of the given image.<p>
+     *
+     * @param image the image to get the byte contents for
+     * @param type the type of the image to get the byte contents for
+     *
+     * @return the byte contents of the given image
+     *
+     * @throws IOException in case the image could not be converted to bytes
+     *
+     * @see #getByteBuffer(BufferedImage, String)
+     */
+    public byte[] getBytes(BufferedImage image, String type) throws IOException {
+
+        ByteArrayImageOutputStream out = new ByteArrayImageOutputStream(getEstimatedSize(image, type));
+        write(image, out, type);
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns the render settings of this simapi instance.<p>
+     *
+     * @return the render settings of this simapi instance
+     */
+    public RenderSettings getRenderSettings() {
+
+        return m_renderSettings;
+    }
+
+    /**
+     * Returns the byte contents of several size / format variants of the given source image,
+     * for example all entries of a responsive image <code>srcset</code>.<p>
+     *
+     * @param source the byte contents of the source image
+     * @param variants the variants to create
+     *
+     * @return the byte contents of the variants, in the same order as the given variants
+     *
+     * @throws IOException in case the image could not be read or a variant could not be written
+     *
+     * @see #writeVariants(InputStream, ImageVariant[], OutputStream[])
+     */
+    public byte[][] getVariantBytes(byte[] source, ImageVariant[] variants) throws IOException {
+
+        // presize the output buffers from the image header, the pixels are decoded only once by writeVariants
+        ImageInfo info = probe(source);
+        ByteArrayImageOutputStream[] outputs = new ByteArrayImageOutputStream[variants.length];
+        for (int i = 0; i < variants.length; i++) {
+            double scale = variants[i].getScale(info.getWidth(), info.getHeight());
+            outputs[i] = new ByteArrayImageOutputStream(
+                getEstimatedSize(
+                    Math.max(1, (int)Math.round(info.getWidth() * scale)),
+                    Math.max(1, (int)Math.round(info.getHeight() * scale)),
+                    info.hasAlpha(),
+                    variants[i].getType()));
+        }
+        writeVariants((Object)source, variants, outputs);
+        byte[][] result = new byte[variants.length][];
+        for (int i = 0; i < variants.length; i++) {
+            result[i] = outputs[i].toByteArray();
+        }
+        return result;
+    }
+
+    /**
+     * Reduces the colors in the given image to the given maximum color number.<p>
+     *
+     * @param image the image to reduce the colors from
+     * @param maxColors the maximum number of allowed colors in the output image (usually 256)
+     * @param alphaToBitmask indicates if alpha information should be converted
      *
      * @return the transformed image
      */
-    public BufferedImage reduceColors(BufferedImage image, int maxColors, boolean alphaToBitmask) {
+    public BufferedImage reduceColors(final BufferedImage image, final int maxColors, final boolean alphaToBitmask) {
 
-        return Quantize.process(image, maxColors, alphaToBitmask);
+        return runImageStage(new Stage<BufferedImage>() {
+
+            public BufferedImage run(Simapi processor) {
+
+                return Quantize.process(image, maxColors, alphaToBitmask);
+            }
+        });
     }
 
     /**
@@ -967,56 +2100,689 @@ public class Simapi {
      */
     public BufferedImage resize(BufferedImage image, int width, int height, Color backgroundColor, int position) {
 
-        return resize(image, width, height, backgroundColor, position, true);
+        return resize(image, width, height, backgroundColor, position, true);
+    }
+
+    /**
+     * Resizes the given image to best fit into the given dimensions (only if it does not already
+     * fit in the dimensions), placing the scaled image
+     * at the indicated position on a background with the given color.
+     *
+     * @param image the image to resize
+     * @param width the width of the target image
+     * @param height the height of the target image
+     * @param backgroundColor the background color to use
+     * @param position the position to place the scaled image at
+     * @param blowup if false, smaller images will not be enlarged to fit in the target dimensions
+     *
+     * @return the transformed image
+     */
+    public BufferedImage resize(
+        BufferedImage image,
+        final int width,
+        final int height,
+        Color backgroundColor,
+        int position,
+        boolean blowup) {
+
+        // resize the image to fit into the required dimension
+        BufferedImage scaled = resize(image, width, height, true, blowup);
+        // check if the image fits after rescale
+        int scaledWidth = scaled.getWidth();
+        int scaledHeight = scaled.getHeight();
+
+        // check the background color
+        ColorModel cm = scaled.getColorModel();
+        if (!cm.hasAlpha() && (backgroundColor == COLOR_TRANSPARENT)) {
+            // alpha not supported by target color model
+            backgroundColor = m_renderSettings.getTransparentReplaceColor();
+        }
+
+        if ((scaledWidth == width) && (scaledHeight == height)) {
+            if (image.getColorModel().hasAlpha() && (backgroundColor != COLOR_TRANSPARENT)) {
+                // background color replacement may be required
+                position = Simapi.POS_UP_LEFT;
+            } else {
+                // no resize required and also no background color change
+                return scaled;
+            }
+        }
+
+        final BufferedImage source = scaled;
+        final Color background = backgroundColor;
+        final int placement = position;
+        return runImageStage(new Stage<BufferedImage>() {
+
+            public BufferedImage run(Simapi processor) {
+
+                return processor.placeImage(source, width, height, background, placement);
+            }
+        });
+    }
+
+    /**
+     * Resizes an image according to the width and height specified,
+     * cropping the image along the sides in case the required height and width can not be reached without
+     * changing the apsect ratio of the image.<p>
+     *
+     * Use the constants <code>{@link Simapi#POS_CENTER}</code> etc. to indicate the crop position.<p>
+     *
+     * @param image the image to resize
+     * @param width the width of the target image
+     * @param height the height of the target image
+     * @param position the position to place the cropped image at
+     *
+     * @return the transformed image
+     */
+    public BufferedImage resize(BufferedImage image, int width, int height, int position) {
+
+        final int imageWidth = image.getWidth();
+        final int imageHeight = image.getHeight();
+        if ((imageWidth == width) && (imageHeight == height)) {
+            // no resize required
+            return image;
+        }
+
+        float widthScale = (width / (float)imageWidth);
+        float heightScale = (height / (float)imageHeight);
+
+        // keep image aspect ratio, find best scale for the result image
+        if (widthScale >= heightScale) {
+            heightScale = widthScale;
+        } else {
+            widthScale = heightScale;
+        }
+
+        if ((widthScale == 1.0) || (heightScale == 1.0)) {
+            // no scale required, return the cropped result
+            return crop(image, width, height, position);
+        }
+
+        if (widthScale > 1.0) {
+            // enlarging a small image, the complete scaled image is not much larger than the result
+            return crop(scale(image, widthScale, heightScale), width, height, position);
+        }
+
+        // calculate the crop area in the scaled image
+        int scaledWidth = Math.round(imageWidth * widthScale);
+        int scaledHeight = Math.round(imageHeight * heightScale);
+        Rectangle crop = getCropArea(scaledWidth, scaledHeight, width, height, position);
+
+        // enlarge the crop area by the blur and filter radius, so that its edges are scaled as inside the image
+        // the edges are aligned to full source pixels, so that the area is scaled with the same ratio as the image
+        double xRatio = imageWidth / (double)scaledWidth;
+        double yRatio = imageHeight / (double)scaledHeight;
+        int left = alignEdge(crop.x - CROP_PADDING, -1, scaledWidth, xRatio);
+        int top = alignEdge(crop.y - CROP_PADDING, -1, scaledHeight, yRatio);
+        int right = alignEdge(crop.x + crop.width + CROP_PADDING, 1, scaledWidth, xRatio);
+        int bottom = alignEdge(crop.y + crop.height + CROP_PADDING, 1, scaledHeight, yRatio);
+
+        // map the enlarged area back to the source image, so that only this area is blurred and scaled
+        int x = (int)Math.round(left * xRatio);
+        int y = (int)Math.round(top * yRatio);
+        int w = Math.max(1, Math.min((int)Math.round(right * xRatio), imageWidth) - x);
+        int h = Math.max(1, Math.min((int)Math.round(bottom * yRatio), imageHeight) - y);
+
+        final BufferedImage area = image.getSubimage(x, y, w, h);
+        final float scale = widthScale;
+        final int areaWidth = right - left;
+        final int areaHeight = bottom - top;
+        BufferedImage scaledImage = runImageStage(new Stage<BufferedImage>() {
+
+            public BufferedImage run(Simapi processor) {
+
+                return processor.scaleImage(area, imageWidth, imageHeight, scale, scale, areaWidth, areaHeight);
+            }
+        });
+        return crop(scaledImage, crop.x - left, crop.y - top, crop.width, crop.height);
+    }
+
+    /**
+     * Scales an image according to the given scale factor.<p>
+     *
+     * If the scale is 2.0, the result image will be twice as large as the original,
+     * if the scale is 0.5, the result image will be half as large as the original.<p>
+     *
+     * @param image the image to scale
+     * @param scale the scale factor
+     *
+     * @return the transformed image
+     */
+    public BufferedImage scale(BufferedImage image, float scale) {
+
+        return scale(image, scale, scale);
+    }
+
+    /**
+     * Scale the image with different ratios along the width and height.<p>
+     *
+     * @param image the image to scale
+     * @param widthScale the scale factor for the width
+     * @param heightScale the scale factor for the height
+     *
+     * @return the transformed image
+     */
+    public BufferedImage scale(BufferedImage image, float widthScale, float heightScale) {
+
+        int targetWidth = Math.round(image.getWidth() * widthScale);
+        int targetHeight = Math.round(image.getHeight() * heightScale);
+
+        return scale(image, widthScale, heightScale, targetWidth, targetHeight);
+    }
+
+    /**
+     * Scale the image with different ratios along the width and height to the given target dimensions.<p>
+     *
+     * Giving both scale factor and target dimensions is required to avoid rounding errors that
+     * lead to the "missing line" issue.<p>
+     *
+     * @param image the image to scale
+     * @param widthScale the scale factor for the width
+     * @param heightScale the scale factor for the height
+     * @param targetWidth the width of the target image
+     * @param targetHeight the height of the target image
+     *
+     * @return the transformed image
+     */
+    public BufferedImage scale(
+        final BufferedImage image,
+        final float widthScale,
+        final float heightScale,
+        final int targetWidth,
+        final int targetHeight) {
+
+        return runImageStage(new Stage<BufferedImage>() {
+
+            public BufferedImage run(Simapi processor) {
+
+                return processor.scaleImage(
+                    image,
+                    image.getWidth(),
+                    image.getHeight(),
+                    widthScale,
+                    heightScale,
+                    targetWidth,
+                    targetHeight);
+            }
+        });
+    }
+
+    /**
+     * Scale the image to the width and height to the given target dimensions.<p>
+     *
+     * @param image the image to scale
+     * @param targetWidth the width of the target image
+     * @param targetHeight the height of the target image
+     *
+     * @return the transformed image
+     */
+    public BufferedImage scale(final BufferedImage image, final int targetWidth, final int targetHeight) {
+
+        return runImageStage(new Stage<BufferedImage>() {
+
+            public BufferedImage run(Simapi processor) {
+
+                return processor.resample(image, targetWidth, targetHeight);
+            }
+        });
+    }
+
+    /**
+     * Writes several size / format variants of the given source image to the given destinations,
+     * for example all entries of a responsive image <code>srcset</code>.<p>
+     *
+     * The source image is decoded only once, subsampled to the size required by the largest variant.
+     * The smaller variants are then created from the next larger one in a cascade. If the render settings
+     * allow parallel operations, the variants are encoded in parallel while the cascade continues.<p>
+     *
+     * The destination streams are not closed.<p>
+     *
+     * @param source the input stream to read the source image from
+     * @param variants the variants to create
+     * @param destinations the output streams to write the variants to, in the same order as the variants
+     *
+     * @throws IOException in case the image could not be read or a variant could not be written
+     */
+    public void writeVariants(InputStream source, ImageVariant[] variants, OutputStream[] destinations)
+    throws IOException {
+
+        writeVariants((Object)source, variants, (Object[])destinations);
+    }
+
+    /**
+     * Writes an image to a local file.<p>
+     *
+     * @param image the image to write
+     * @param destination the destination file
+     * @param type the type of the image to write
+     *
+     * @throws IOException in case the image could not be written
+     */
+    public void write(BufferedImage image, File destination, String type) throws IOException {
+
+        write(image, (Object)destination, type);
+    }
+
+    /**
+     * Writes an image to an output stream.<p>
+     *
+     * @param image the image to write
+     * @param destination the output stream to write the image to
+     * @param type the type of the image to write
+     *
+     * @throws IOException in case the image could not be written
+     */
+    public void write(BufferedImage image, OutputStream destination, String type) throws IOException {
+
+        write(image, (Object)destination, type);
+    }
+
+    /**
+     * Writes an image to a local file.<p>
+     *
+     * @param image the image to write
+     * @param destination the destination file name
+     * @param type the type of the image to write
+     *
+     * @throws IOException in case the image could not be written
+     */
+    public void write(BufferedImage image, String destination, String type) throws IOException {
+
+        write(image, new File(destination), type);
+    }
+
+    /**
+     * Writes an image to a byte channel.<p>
+     *
+     * The image is encoded into a presized buffer in memory, which is then written to the channel
+     * without creating another copy. The channel is not closed.<p>
+     *
+     * @param image the image to write
+     * @param destination the channel to write the image to
+     * @param type the type of the image to write
+     *
+     * @throws IOException in case the image could not be written
+     */
+    public void write(BufferedImage image, WritableByteChannel destination, String type) throws IOException {
+
+        ByteArrayImageOutputStream out = new ByteArrayImageOutputStream(getEstimatedSize(image, type));
+        write(image, out, type);
+        out.writeTo(destination);
+    }
+
+    /**
+     * Creates a buffered image that has the given dimensions and uses the given color model.<p>
+     *
+     * @param colorModel the color model to use
+     * @param width the width of the image to create
+     * @param height the height of the image to create
+     *
+     * @return a new image with the given dimensions and uses the given color model
+     */
+    protected BufferedImage createImage(ColorModel colorModel, int width, int height) {
+
+        BufferedImage result;
+        if ((colorModel.getTransparency() == Transparency.OPAQUE)
+            && (m_renderSettings.getTransparentReplaceColor() != COLOR_TRANSPARENT)) {
+            result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        } else {
+            result = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the estimated size in bytes of the given image encoded with the given image type.<p>
+     *
+     * @param image the image to estimate the encoded size for
+     * @param type the image type to estimate the encoded size for
+     *
+     * @return the estimated size of the encoded image in bytes
+     *
+     * @see #getEstimatedSize(int, int, boolean, String)
+     */
+    protected int getEstimatedSize(BufferedImage image, String type) {
+
+        return getEstimatedSize(image.getWidth(), image.getHeight(), image.getColorModel().hasAlpha(), type);
+    }
+
+    /**
+     * Returns the estimated size in bytes of an image with the given dimensions encoded with the given image type.<p>
+     *
+     * The estimate is used to presize output buffers. It is calibrated to be somewhat smaller than the
+     * actual size of typical photos, since the buffer doubles its size when it has to grow, while
+     * a buffer that is too large wastes memory or has to be trimmed by copying. The estimate is limited
+     * to {@link #MAX_ESTIMATED_SIZE} bytes.<p>
+     *
+     * @param width the width of the image
+     * @param height the height of the image
+     * @param hasAlpha indicates if the image has an alpha channel
+     * @param type the image type to estimate the encoded size for
+     *
+     * @return the estimated size of the encoded image in bytes
+     */
+    protected int getEstimatedSize(int width, int height, boolean hasAlpha, String type) {
+
+        long pixels = (long)width * height;
+        int channels = hasAlpha ? 4 : 3;
+        double bytesPerPixel;
+        String imageType = getImageType(type);
+        if (TYPE_JPEG == imageType) {
+            // photos need about 0.1 - 0.3 bytes per pixel at quality 0.8 - 0.95, growing steeply towards 1.0
+            float quality = m_renderSettings.getCompressionQuality();
+            bytesPerPixel = 0.03 + (0.15 * quality * quality * quality * quality);
+        } else if (TYPE_GIF == imageType) {
+            // 8 bit palette image, compression is usually weak for photos
+            bytesPerPixel = 0.75;
+        } else if ((TYPE_BMP == imageType) || (TYPE_PNM == imageType)) {
+            // uncompressed formats
+            bytesPerPixel = channels;
+        } else {
+            // lossless compression, photos usually shrink to about half of the uncompressed size
+            bytesPerPixel = channels * 0.5;
+        }
+        long size = 1024 + (long)(pixels * bytesPerPixel);
+        // the buffer grows if required, so a large image does not allocate a huge buffer up front
+        return (int)Math.max(4096, Math.min(MAX_ESTIMATED_SIZE, size));
+    }
+
+    /**
+     * Returns the shared fork-join pool for parallel image operations with the given parallelism.<p>
+     *
+     * @param parallelism the parallelism of the pool
+     *
+     * @return the shared fork-join pool with the given parallelism
+     */
+    protected ForkJoinPool getForkJoinPool(int parallelism) {
+
+        Integer key = Integer.valueOf(parallelism);
+        ForkJoinPool pool = POOLS.get(key);
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism);
+            ForkJoinPool existing = POOLS.putIfAbsent(key, pool);
+            if (existing != null) {
+                // another thread was faster
+                pool.shutdown();
+                pool = existing;
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * Returns the instance to run the next stage with.<p>
+     *
+     * If the render settings have an adaptive quality controller, this selects the level for the stage
+     * and returns an instance with render settings lowered to that level. For the full quality level,
+     * this instance itself is returned, since stages never start other stages. The lowered instances
+     * are kept for immutable render settings.<p>
+     *
+     * @return the instance to run the next stage with
+     */
+    protected Simapi getStageProcessor() {
+
+        AdaptiveQuality adaptive = m_renderSettings.getAdaptiveQuality();
+        if (adaptive == null) {
+            return this;
+        }
+        int level = adaptive.selectLevel();
+        if (level == RENDER_QUALITY) {
+            return this;
+        }
+        if (!m_renderSettings.isImmutable()) {
+            // the render settings may still change, so the lowered settings are created for every stage
+            return new Simapi(m_renderSettings.createAdaptiveSnapshot(level));
+        }
+        Simapi processor = m_stageProcessors.get(level);
+        if (processor == null) {
+            // concurrent threads may create the same instance, which is harmless
+            processor = new Simapi(m_renderSettings.createAdaptiveSnapshot(level));
+            m_stageProcessors.set(level, processor);
+        }
+        return processor;
+    }
+
+    /**
+     * Writes an image to the given output object, using the the given quality.<p>
+     *
+     * The <code>quality</code> is used only if the image <code>type</code> supports different qualities.
+     * For example, this it is used when writing JPEG images.
+     * A quality of 0.1 is very poor, 0.75 is ok, 1.0 is maximum.<p>
+     *
+     * @param im the image to write
+     * @param output the destination to write the image to
+     * @param formatName the type of the image to write
+     *
+     * @throws IOException in case the image could not be written
+     */
+    protected void write(final BufferedImage im, final Object output, final String formatName) throws IOException {
+
+        runStage(new Stage<Void>() {
+
+            public Void run(Simapi processor) throws IOException {
+
+                processor.encode(im, output, formatName);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Writes several size / format variants of the given source image to the given destinations.<p>
+     *
+     * @param source the source to read the source image from, must be supported by {@link #createImageInputStream(Object)}
+     * @param variants the variants to create
+     * @param destinations the destinations to write the variants to, in the same order as the variants,
+     *      must be supported by {@link #createImageOutputStream(Object)}
+     *
+     * @throws IOException in case the image could not be read or a variant could not be written
+     *
+     * @see #writeVariants(InputStream, ImageVariant[], OutputStream[])
+     */
+    protected void writeVariants(Object source, final ImageVariant[] variants, Object[] destinations)
+    throws IOException {
+
+        if (variants.length != destinations.length) {
+            throw new IllegalArgumentException("number of variants and destinations must match");
+        }
+
+        // decode the source only once, subsampled to the size required by the largest variant
+        int maxWidth = 0;
+        int maxHeight = 0;
+        for (ImageVariant variant : variants) {
+            maxWidth = Math.max(maxWidth, variant.getWidth());
+            maxHeight = Math.max(maxHeight, variant.getHeight());
+        }
+        final BufferedImage image = readImage(m_renderSettings, source, null, maxWidth, maxHeight);
+
+        // create the variants from large to small
+        Integer[] order = new Integer[variants.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = Integer.valueOf(i);
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+
+            public int compare(Integer o1, Integer o2) {
+
+                return Double.compare(
+                    variants[o2.intValue()].getScale(image.getWidth(), image.getHeight()),
+                    variants[o1.intValue()].getScale(image.getWidth(), image.getHeight()));
+            }
+        });
+
+        int parallelism = m_renderSettings.getParallelism();
+        SimapiScheduler scheduler = m_renderSettings.getScheduler();
+        // on a compute thread the encoders run directly, waiting for another compute thread could dead lock
+        boolean parallel = (parallelism > 1) && ((scheduler == null) || !scheduler.isSchedulerThread());
+        List<Future<Void>> tasks = new ArrayList<Future<Void>>(variants.length);
+        // the encoders get their own token, so they can be aborted without cancelling the caller
+        final CancellationToken token = CancellationToken.getCurrent().createStageToken();
+        boolean complete = false;
+        try {
+            BufferedImage current = image;
+            for (Integer index : order) {
+                ImageVariant variant = variants[index.intValue()];
+                double scale = variant.getScale(image.getWidth(), image.getHeight());
+                int width = Math.max(1, (int)Math.round(image.getWidth() * scale));
+                int height = Math.max(1, (int)Math.round(image.getHeight() * scale));
+                if ((width != current.getWidth()) || (height != current.getHeight())) {
+                    // scale the next larger variant to the size of this variant
+                    current = scale(
+                        current,
+                        width / (float)current.getWidth(),
+                        height / (float)current.getHeight(),
+                        width,
+                        height);
+                }
+                final BufferedImage variantImage = current;
+                final Object destination = destinations[index.intValue()];
+                final String type = variant.getType();
+                if (parallel) {
+                    // encode in parallel while the cascade continues
+                    Callable<Void> encoder = new Callable<Void>() {
+
+                        public Void call() throws IOException {
+
+                            // the encoder is cancelled together with the operation that started it
+                            CancellationToken previous = CancellationToken.setCurrent(token);
+                            try {
+                                write(variantImage, destination, type);
+                            } finally {
+                                CancellationToken.setCurrent(previous);
+                            }
+                            return null;
+                        }
+                    };
+                    if (scheduler != null) {
+                        // the encode stages run directly on the compute thread the encoder was started on
+                        tasks.add(scheduler.submit(encoder, m_renderSettings.getSchedulerPriority()));
+                    } else {
+                        tasks.add(getForkJoinPool(parallelism).submit(encoder));
+                    }
+                } else {
+                    write(variantImage, destination, type);
+                }
+            }
+
+            // wait for all encoders to finish
+            for (Future<Void> task : tasks) {
+                try {
+                    task.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IIOException("Interrupted while writing image variants!", e);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException)cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException)cause;
+                    }
+                    throw new IIOException("Can't write image variant!", cause);
+                }
+            }
+            complete = true;
+        } finally {
+            if (!complete) {
+                // no encoder may write to its destination once this method has failed
+                token.cancel();
+                awaitAll(tasks);
+            }
+        }
+    }
+
+    /**
+     * Encodes an image to the given output object, see {@link #write(BufferedImage, Object, String)}.<p>
+     *
+     * @param im the image to write
+     * @param output the destination to write the image to
+     * @param formatName the type of the image to write
+     *
+     * @throws IOException in case the image could not be written
+     */
+    private void encode(BufferedImage im, Object output, String formatName) throws IOException {
+
+        if (output == null) {
+            throw new IllegalArgumentException("output == null!");
+        }
+        if (im == null) {
+            throw new IllegalArgumentException("image == null!");
+        }
+        if (formatName == null) {
+            throw new IllegalArgumentException("formatName == null!");
+        }
+
+        // create the output stream
+        ImageOutputStream stream = createImageOutputStream(output);
+
+        // make sure we have our exact constants to work with
+        formatName = getImageType(formatName);
+        if (formatName == null) {
+            stream.close();
+            throw new IllegalArgumentException("no writers found for format '" + formatName + "'");
+        }
+
+        // make sure there are no transparent pixels left if not supported by the written image format
+        if (im.getColorModel().hasAlpha()
+            && ((TYPE_JPEG == formatName) || (TYPE_TIFF == formatName) || (TYPE_BMP == formatName))) {
+            // several formats do not support alpha
+            if (im.getType() == BufferedImage.TYPE_INT_ARGB) {
+                // the usual case, compose the pixels directly
+                im = ImageKernels.flatten(im, m_renderSettings.getTransparentReplaceColor());
+            } else {
+                BufferedImage result = new BufferedImage(im.getWidth(), im.getHeight(), BufferedImage.TYPE_INT_RGB);
+                Graphics2D g = result.createGraphics();
+                g.setPaintMode();
+                g.setColor(m_renderSettings.getTransparentReplaceColor());
+                g.fillRect(0, 0, result.getWidth(), result.getHeight());
+                g.drawImage(im, 0, 0, null);
+                g.dispose();
+                im = result;
+            }
+        }
+
+        // obtain a pooled writer for the image
+        // this must work since it is already done in the #getImageType(String) call above
+        ImageIOPool.PooledWriter pooled = ImageIOPool.getWriter(formatName);
+        try {
+            // the write parameters are already prepared for compression if supported by the writer
+            ImageWriteParam param = pooled.getParam();
+            if (param.canWriteCompressed()) {
+                param.setCompressionQuality(m_renderSettings.getCompressionQuality());
+            }
+
+            // now write the image
+            ImageWriter writer = pooled.getWriter();
+            writer.setOutput(stream);
+            CancellationListener.write(writer, new IIOImage(im, null, null), param);
+            stream.flush();
+        } finally {
+            ImageIOPool.releaseWriter(pooled);
+            stream.close();
+        }
     }
 
     /**
-     * Resizes the given image to best fit into the given dimensions (only if it does not already
-     * fit in the dimensions), placing the scaled image
-     * at the indicated position on a background with the given color.
+     * Places a scaled image on a new background image of the given dimensions.<p>
      *
-     * @param image the image to resize
+     * @param scaled the scaled image to place
      * @param width the width of the target image
      * @param height the height of the target image
-     * @param backgroundColor the background color to use
+     * @param backgroundColor the background color, or {@link #COLOR_TRANSPARENT}
      * @param position the position to place the scaled image at
-     * @param blowup if false, smaller images will not be enlarged to fit in the target dimensions
      *
-     * @return the transformed image
+     * @return the target image
      */
-    public BufferedImage resize(
-        BufferedImage image,
+    private BufferedImage placeImage(
+        BufferedImage scaled,
         int width,
         int height,
         Color backgroundColor,
-        int position,
-        boolean blowup) {
+        int position) {
 
-        // resize the image to fit into the required dimension
-        BufferedImage scaled = resize(image, width, height, true, blowup);
-        // check if the image fits after rescale
         int scaledWidth = scaled.getWidth();
         int scaledHeight = scaled.getHeight();
 
-        // check the background color
-        ColorModel cm = scaled.getColorModel();
-        if (!cm.hasAlpha() && (backgroundColor == COLOR_TRANSPARENT)) {
-            // alpha not supported by target color model
-            backgroundColor = m_renderSettings.getTransparentReplaceColor();
-        }
-
-        if ((scaledWidth == width) && (scaledHeight == height)) {
-            if (image.getColorModel().hasAlpha() && (backgroundColor != COLOR_TRANSPARENT)) {
-                // background color replacement may be required
-                position = Simapi.POS_UP_LEFT;
-            } else {
-                // no resize required and also no background color change
-                return scaled;
-            }
-        }
-
-        threadSetNice();
-
         // create the background image
         BufferedImage result = createImage(scaled.getColorModel(), width, height);
         Graphics2D g = result.createGraphics();
@@ -1072,101 +2838,146 @@ public class Simapi {
         g.drawImage(scaled, x, y, null);
         g.dispose();
         scaled.flush();
-        scaled = null;
-
-        threadSetNormal();
         return result;
     }
 
     /**
-     * Resizes an image according to the width and height specified,
-     * cropping the image along the sides in case the required height and width can not be reached without
-     * changing the apsect ratio of the image.<p>
-     *
-     * Use the constants <code>{@link Simapi#POS_CENTER}</code> etc. to indicate the crop position.<p>
+     * Resamples the image to the given target dimensions, see {@link #scale(BufferedImage, int, int)}.<p>
      *
-     * @param image the image to resize
-     * @param width the width of the target image
-     * @param height the height of the target image
-     * @param position the position to place the cropped image at
+     * @param image the image to scale
+     * @param targetWidth the width of the target image
+     * @param targetHeight the height of the target image
      *
      * @return the transformed image
      */
-    public BufferedImage resize(BufferedImage image, int width, int height, int position) {
-
-        int imageWidth = image.getWidth();
-        int imageHeight = image.getHeight();
-        if ((imageWidth == width) && (imageHeight == height)) {
-            // no resize required
-            return image;
+    private BufferedImage resample(BufferedImage image, int targetWidth, int targetHeight) {
+
+        int parallelism = m_renderSettings.getParallelism();
+        int resampleFilter = m_renderSettings.getResampleFilter();
+        if (resampleFilter != ResampleOp.FILTER_UNDEFINED) {
+            // use the resample filter instead of Java 2D
+            ResampleOp resampler = new ResampleOp(targetWidth, targetHeight, resampleFilter);
+            if (parallelism > 1) {
+                resampler.setPool(getForkJoinPool(parallelism));
+            }
+            return resampler.filter(ensureImageIsSystemType(image, true, m_renderSettings.getParallelism()), null);
         }
 
-        float widthScale = (width / (float)imageWidth);
-        float heightScale = (height / (float)imageHeight);
-
-        // keep image aspect ratio, find best scale for the result image
-        if (widthScale >= heightScale) {
-            heightScale = widthScale;
+        BufferedImage result = createImage(image.getColorModel(), targetWidth, targetHeight);
+        if ((parallelism > 1)
+            && (((long)targetWidth * targetHeight) >= RenderSettings.MIN_PARALLEL_SIZE)
+            && (targetHeight >= (2 * BandTask.MIN_BAND_HEIGHT))) {
+            // large target image, render horizontal bands in parallel
+            getForkJoinPool(parallelism).invoke(
+                new ScaleBandTask(image, result, m_renderSettings.getRenderingHints(), parallelism));
         } else {
-            widthScale = heightScale;
-        }
+            Graphics2D g = result.createGraphics();
 
-        BufferedImage scaledImage;
-        if ((widthScale != 1.0) && (heightScale != 1.0)) {
-            // scale the image to the required size
-            scaledImage = scale(image, widthScale, heightScale);
-            // reset to new scale
-            imageWidth = scaledImage.getWidth();
-            imageHeight = scaledImage.getHeight();
-        } else {
-            // no scale required
-            scaledImage = image;
+            g.setRenderingHints(m_renderSettings.getRenderingHints());
+            g.drawImage(image, 0, 0, targetWidth, targetHeight, null);
+            g.dispose();
         }
 
-        // return the cropped result
-        return crop(scaledImage, width, height, position);
+        return result;
     }
 
     /**
-     * Scales an image according to the given scale factor.<p>
+     * Runs a CPU intensive image stage that throws no checked exceptions.<p>
      *
-     * If the scale is 2.0, the result image will be twice as large as the original,
-     * if the scale is 0.5, the result image will be half as large as the original.<p>
+     * @param stage the stage to run
      *
-     * @param image the image to scale
-     * @param scale the scale factor
+     * @return the resulting image
      *
-     * @return the transformed image
+     * @see #runStage(Stage)
      */
-    public BufferedImage scale(BufferedImage image, float scale) {
+    private BufferedImage runImageStage(Stage<BufferedImage> stage) {
 
-        return scale(image, scale, scale);
+        try {
+            return runStage(stage);
+        } catch (IOException e) {
+            // image stages throw no checked exceptions, so the waiting thread was interrupted
+            ImageCancelledException cancel = new ImageCancelledException(false);
+            cancel.initCause(e);
+            throw cancel;
+        }
     }
 
     /**
-     * Scale the image with different ratios along the width and height.<p>
+     * Runs a CPU intensive stage.<p>
      *
-     * @param image the image to scale
-     * @param widthScale the scale factor for the width
-     * @param heightScale the scale factor for the height
+     * If the render settings have a scheduler, the stage is run on a compute thread of the scheduler
+     * and the current thread waits for the result. Otherwise the stage is run on the current thread,
+     * with lowered thread priority.<p>
      *
-     * @return the transformed image
+     * If the render settings have an adaptive quality controller, the stage is run with render settings
+     * lowered to the level the current load requires, and the latency of the stage is reported to the controller.<p>
+     *
+     * The cancellation token of the current thread is installed for the stage, so the row loops
+     * of the stage abort once the token is cancelled or its deadline expires.<p>
+     *
+     * @param <T> the result type of the stage
+     * @param stage the stage to run
+     *
+     * @return the result of the stage
+     *
+     * @throws IOException in case the stage fails
      */
-    public BufferedImage scale(BufferedImage image, float widthScale, float heightScale) {
+    private <T> T runStage(final Stage<T> stage) throws IOException {
 
-        int targetWidth = Math.round(image.getWidth() * widthScale);
-        int targetHeight = Math.round(image.getHeight() * heightScale);
+        final CancellationToken token = CancellationToken.getCurrent();
+        token.check();
+        AdaptiveQuality adaptive = m_renderSettings.getAdaptiveQuality();
+        final Simapi processor = getStageProcessor();
+        long start = System.nanoTime();
+        try {
+            SimapiScheduler scheduler = m_renderSettings.getScheduler();
+            if (scheduler != null) {
+                return scheduler.invoke(new Callable<T>() {
+
+                    public T call() throws Exception {
+
+                        // the stage is also cancelled if the compute thread is interrupted
+                        CancellationToken previous = CancellationToken.setCurrent(token.createStageToken());
+                        try {
+                            return stage.run(processor);
+                        } finally {
+                            CancellationToken.setCurrent(previous);
+                        }
+                    }
+                }, m_renderSettings.getSchedulerPriority());
+            }
+            CancellationToken previous = CancellationToken.setCurrent(token);
+            int oldPriority = threadSetNice();
+            try {
+                return SimapiScheduler.call(new Callable<T>() {
 
-        return scale(image, widthScale, heightScale, targetWidth, targetHeight);
+                    public T call() throws Exception {
+
+                        return stage.run(processor);
+                    }
+                });
+            } finally {
+                threadSetNormal(oldPriority);
+                CancellationToken.setCurrent(previous);
+            }
+        } finally {
+            if (adaptive != null) {
+                // the latency includes the time the stage was waiting for a compute thread
+                adaptive.addLatency(System.nanoTime() - start);
+            }
+        }
     }
 
     /**
-     * Scale the image with different ratios along the width and height to the given target dimensions.<p>
+     * Scales the image with different ratios along the width and height to the given target dimensions,
+     * see {@link #scale(BufferedImage, float, float, int, int)}.<p>
      *
-     * Giving both scale factor and target dimensions is required to avoid rounding errors that
-     * lead to the "missing line" issue.<p>
+     * The given image may be a part of a larger source image, in which case the blur is selected
+     * by the size of the complete source image.<p>
      *
      * @param image the image to scale
+     * @param sourceWidth the width of the complete source image
+     * @param sourceHeight the height of the complete source image
      * @param widthScale the scale factor for the width
      * @param heightScale the scale factor for the height
      * @param targetWidth the width of the target image
@@ -1174,33 +2985,45 @@ public class Simapi {
      *
      * @return the transformed image
      */
-    public BufferedImage scale(
+    private BufferedImage scaleImage(
         BufferedImage image,
+        int sourceWidth,
+        int sourceHeight,
         float widthScale,
         float heightScale,
         int targetWidth,
         int targetHeight) {
 
-        if (m_renderSettings.isUseBlur() && ((widthScale < 0.575f) || (heightScale < 0.575f))) {
+        if (m_renderSettings.isUsePyramid() && ((widthScale < 0.5f) || (heightScale < 0.5f))) {
+            // halve the image until the remaining scale step is small, this avoids aliasing without blur
+            // each axis is halved on its own, so a strong reduction along only one axis is smoothed as well
+            image = ensureImageIsSystemType(image, true, m_renderSettings.getParallelism());
+            boolean halveWidth = (image.getWidth() / 2) >= targetWidth;
+            boolean halveHeight = (image.getHeight() / 2) >= targetHeight;
+            while (halveWidth || halveHeight) {
+                image = ImageKernels.halve(image, halveWidth, halveHeight);
+                halveWidth = (image.getWidth() / 2) >= targetWidth;
+                halveHeight = (image.getHeight() / 2) >= targetHeight;
+            }
+        } else if (m_renderSettings.isUseBlur() && ((widthScale < 0.575f) || (heightScale < 0.575f))) {
             // must apply blur before scaling or the result image will look jagged
 
-            threadSetNice();
-
-            int pixel = image.getWidth() * image.getHeight();
+            // the blur is selected by the size of the complete source image, so that a part of it is blurred the same way
+            int pixel = sourceWidth * sourceHeight;
             if (pixel > m_renderSettings.getMaximumBlurSize()) {
                 // input image too big - scale down to the maximum blur size first
                 // this is done to avoid "out of memory" errors and CPU overhead when blurring
                 double fac = Math.sqrt((double)m_renderSettings.getMaximumBlurSize() / pixel);
                 int height = (int)(image.getHeight() * fac);
                 int width = (int)(image.getWidth() * fac);
-                image = scale(image, width, height);
+                image = resample(image, width, height);
                 // recalculate the image scale for the reduced image
                 widthScale = (targetWidth / (float)width);
                 heightScale = (targetHeight / (float)height);
             }
 
             double factor = ((1 / widthScale) + (1 / heightScale)) / 2.0;
-            int average = (image.getWidth() + image.getHeight()) / 2;
+            int average = (sourceWidth + sourceHeight) / 2;
             if (((factor < 10.0) && (average < 1000))) {
                 // image is quite small and suitable factor - use gaussian blur
                 GaussianFilter gauss = new GaussianFilter();
@@ -1223,200 +3046,44 @@ public class Simapi {
                 blur.setRadius(radius);
                 image = blur.filter(image, null);
             }
-
-            threadSetNormal();
         }
 
-        return scale(image, targetWidth, targetHeight);
-    }
-
-    /**
-     * Scale the image to the width and height to the given target dimensions.<p>
-     *
-     * @param image the image to scale
-     * @param targetWidth the width of the target image
-     * @param targetHeight the height of the target image
-     *
-     * @return the transformed image
-     */
-    public BufferedImage scale(BufferedImage image, int targetWidth, int targetHeight) {
-
-        BufferedImage result = createImage(image.getColorModel(), targetWidth, targetHeight);
-        Graphics2D g = result.createGraphics();
-
-        g.setRenderingHints(m_renderSettings.getRenderingHints());
-        g.drawImage(image, 0, 0, targetWidth, targetHeight, null);
-        g.dispose();
-
-        return result;
-    }
-
-    /**
-     * Writes an image to a local file.<p>
-     *
-     * @param image the image to write
-     * @param destination the destination file
-     * @param type the type of the image to write
-     *
-     * @throws IOException in case the image could not be written
-     */
-    public void write(BufferedImage image, File destination, String type) throws IOException {
-
-        write(image, (Object)destination, type);
-    }
-
-    /**
-     * Writes an image to an output stream.<p>
-     *
-     * @param image the image to write
-     * @param destination the output stream to write the image to
-     * @param type the type of the image to write
-     *
-     * @throws IOException in case the image could not be written
-     */
-    public void write(BufferedImage image, OutputStream destination, String type) throws IOException {
-
-        write(image, (Object)destination, type);
-    }
-
-    /**
-     * Writes an image to a local file.<p>
-     *
-     * @param image the image to write
-     * @param destination the destination file name
-     * @param type the type of the image to write
-     *
-     * @throws IOException in case the image could not be written
-     */
-    public void write(BufferedImage image, String destination, String type) throws IOException {
-
-        write(image, new File(destination), type);
-    }
-
-    /**
-     * Creates a buffered image that has the given dimensions and uses the given color model.<p>
-     *
-     * @param colorModel the color model to use
-     * @param width the width of the image to create
-     * @param height the height of the image to create
-     *
-     * @return a new image with the given dimensions and uses the given color model
-     */
-    protected BufferedImage createImage(ColorModel colorModel, int width, int height) {
-
-        BufferedImage result;
-        if ((colorModel.getTransparency() == Transparency.OPAQUE)
-            && (m_renderSettings.getTransparentReplaceColor() != COLOR_TRANSPARENT)) {
-            result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        } else {
-            result = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-        }
-        return result;
+        return resample(image, targetWidth, targetHeight);
     }
 
     /**
-     * Writes an image to the given output object, using the the given quality.<p>
-     *
-     * The <code>quality</code> is used only if the image <code>type</code> supports different qualities.
-     * For example, this it is used when writing JPEG images.
-     * A quality of 0.1 is very poor, 0.75 is ok, 1.0 is maximum.<p>
+     * Lower the current thread priority in order not to block other threads while image operations are performed.<p>
      *
-     * @param im the image to write
-     * @param output the destination to write the image to
-     * @param formatName the type of the image to write
+     * The previous priority is returned instead of being stored, so that the instance can be used
+     * by many threads at the same time.<p>
      *
-     * @throws IOException in case the image could not be written
-     */
-    protected void write(BufferedImage im, Object output, String formatName) throws IOException {
-
-        if (output == null) {
-            throw new IllegalArgumentException("output == null!");
-        }
-        if (im == null) {
-            throw new IllegalArgumentException("image == null!");
-        }
-        if (formatName == null) {
-            throw new IllegalArgumentException("formatName == null!");
-        }
-
-        // create the output stream
-        ImageOutputStream stream = null;
-        try {
-            stream = ImageIO.createImageOutputStream(output);
-        } catch (IOException e) {
-            throw new IIOException("Can't create output stream!", e);
-        }
-
-        // make sure we have our exact constants to work with
-        formatName = getImageType(formatName);
-        if (formatName == null) {
-            stream.close();
-            throw new IllegalArgumentException("no writers found for format '" + formatName + "'");
-        }
-
-        // make sure there are no transparent pixels left if not supported by the written image format
-        if (im.getColorModel().hasAlpha()
-            && ((TYPE_JPEG == formatName) || (TYPE_TIFF == formatName) || (TYPE_BMP == formatName))) {
-            // several formats do not support alpha
-            BufferedImage result = new BufferedImage(im.getWidth(), im.getHeight(), BufferedImage.TYPE_INT_RGB);
-            Graphics2D g = result.createGraphics();
-            g.setPaintMode();
-            g.setColor(m_renderSettings.getTransparentReplaceColor());
-            g.fillRect(0, 0, result.getWidth(), result.getHeight());
-            g.drawImage(im, 0, 0, null);
-            g.dispose();
-            im = result;
-        }
-
-        // obtain the writer for the image
-        // this must work since it is already done in the #getImageType(String) call above
-        ImageWriter writer = ImageIO.getImageWritersByFormatName(formatName).next();
-
-        // get default image writer parameter
-        ImageWriteParam param = writer.getDefaultWriteParam();
-        if (param.canWriteCompressed()) {
-            // set compression parameters if supported by writer
-            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-            if ((param.getCompressionTypes() != null) && (param.getCompressionType() == null)) {
-                // a compression parameter is required but not provided, use the first one available
-                param.setCompressionType(param.getCompressionTypes()[0]);
-            }
-            param.setCompressionQuality(m_renderSettings.getCompressionQuality());
-        }
-
-        // now write the image
-        writer.setOutput(stream);
-        writer.write(null, new IIOImage(im, null, null), param);
-        stream.flush();
-        writer.dispose();
-        stream.close();
-    }
-
-    /**
-     * Lower the current thread priority in order not to block other threads while image operations are performed.<p>
+     * @return the previous thread priority, to be passed to {@link #threadSetNormal(int)}
      */
-    private void threadSetNice() {
+    private int threadSetNice() {
 
         Thread t = Thread.currentThread();
-        if (t.getPriority() > m_renderSettings.getThreadNicePriority()) {
-            m_renderSettings.setThreadOldPriority(t.getPriority());
+        int oldPriority = t.getPriority();
+        if (oldPriority > m_renderSettings.getThreadNicePriority()) {
             try {
                 t.setPriority(m_renderSettings.getThreadNicePriority());
             } catch (Exception e) {
                 // can't set thread priority, continue with current priority
             }
         }
+        return oldPriority;
     }
 
     /**
-     * Set the current thread priority to normal.<p>
+     * Restores the thread priority the current thread had before {@link #threadSetNice()} was called.<p>
+     *
+     * @param oldPriority the previous thread priority returned by {@link #threadSetNice()}
      */
-    private void threadSetNormal() {
+    private void threadSetNormal(int oldPriority) {
 
         Thread t = Thread.currentThread();
-        if (t.getPriority() != m_renderSettings.getThreadOldPriority()) {
+        if (t.getPriority() != oldPriority) {
             try {
-                t.setPriority(m_renderSettings.getThreadOldPriority());
+                t.setPriority(oldPriority);
             } catch (Exception e) {
                 // can't set thread priority, continue with current priority
             }
@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.alkacon.simapi;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+/**
+ * Asynchronous facade for the image processing pipeline of a {@link Simapi} instance.<p>
+ *
+ * Reading runs on the I/O executor, transforming and encoding run on the compute executor.
+ * The methods return immediately with a {@link SimapiFuture}, and each stage is started
+ * when the stage it depends on has completed, so no thread waits for a previous stage.<p>
+ *
+ * If the result is no longer required, for example because the HTTP client has gone away,
+ * cancel the last future of the pipeline. This also cancels all previous stages,
+ * so stages that have not started yet are never run.<p>
+ *
+ * Example:<pre>
+ * SimapiFuture&lt;byte[]&gt; bytes = async.encodeAsync(
+ *     async.transformAsync(async.readAsync(input, 800, 600), new SimapiAsync.Transformation() {
+ *
+ *         public BufferedImage transform(Simapi simapi, BufferedImage image) {
+ *
+ *             return simapi.resize(image, 800, 600, true);
+ *         }
+ *     }),
+ *     Simapi.TYPE_JPEG);
+ * </pre>
+ */
+public class SimapiAsync {
+
+    /**
+     * A transformation of an image, run on the compute executor.<p>
+     */
+    public interface Transformation {
+
+        /**
+         * Transforms the given image.<p>
+         *
+         * @param simapi the image processor to use
+         * @param image the image to transform
+         *
+         * @return the transformed image
+         *
+         * @throws Exception in case the image could not be transformed
+         */
+        BufferedImage transform(Simapi simapi, BufferedImage image) throws Exception;
+    }
+
+    /** The executor that runs the CPU intensive stages. */
+    private Executor m_computeExecutor;
+
+    /** The executor that runs the reading stages. */
+    private Executor m_ioExecutor;
+
+    /** The image processor. */
+    private Simapi m_simapi;
+
+    /**
+     * Creates a new asynchronous facade that uses the given executor for reading.<p>
+     *
+     * If the render settings of the image processor have a {@link SimapiScheduler}, its compute threads
+     * are used for transforming and encoding, with the priority class of the render settings.
+     * Otherwise the I/O executor is used for all stages.<p>
+     *
+     * @param simapi the image processor
+     * @param ioExecutor the executor that runs the reading stages
+     */
+    public SimapiAsync(Simapi simapi, Executor ioExecutor) {
+
+        this(simapi, ioExecutor, getComputeExecutor(simapi, ioExecutor));
+    }
+
+    /**
+     * Creates a new asynchronous facade that uses the given executors.<p>
+     *
+     * @param simapi the image processor
+     * @param ioExecutor the executor that runs the reading stages
+     * @param computeExecutor the executor that runs the transforming and encoding stages
+     */
+    public SimapiAsync(Simapi simapi, Executor ioExecutor, Executor computeExecutor) {
+
+        if (simapi == null) {
+            throw new IllegalArgumentException("simapi == null!");
+        }
+        if ((ioExecutor == null) || (computeExecutor == null)) {
+            throw new IllegalArgumentException("executor == null!");
+        }
+        m_simapi = simapi;
+        m_ioExecutor = ioExecutor;
+        m_computeExecutor = computeExecutor;
+    }
+
+    /**
+     * Returns the executor for the CPU intensive stages of the given image processor.<p>
+     *
+     * @param simapi the image processor
+     * @param ioExecutor the executor to use if the image processor has no scheduler
+     *
+     * @return the executor for the CPU intensive stages
+     */
+    private static Executor getComputeExecutor(Simapi simapi, Executor ioExecutor) {
+
+        RenderSettings settings = simapi.getRenderSettings();
+        SimapiScheduler scheduler = settings.getScheduler();
+        return scheduler != null ? scheduler.getExecutor(settings.getSchedulerPriority()) : ioExecutor;
+    }
+
+    /**
+     * Passes the cancellation or failure of a completed stage to the stage that depends on it.<p>
+     *
+     * @param source the completed stage
+     * @param target the stage that depends on the completed stage
+     *
+     * @return <code>true</code> if the source stage was successful and the target stage can be run
+     */
+    private static boolean propagate(SimapiFuture<?> source, SimapiFuture<?> target) {
+
+        if (source.isCancelled()) {
+            target.cancel(false);
+            return false;
+        }
+        Throwable failure = source.getFailure();
+        if (failure != null) {
+            target.fail(failure);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Encodes an image asynchronously.<p>
+     *
+     * @param image the future image to encode
+     * @param type the type of the encoded image, for example {@link Simapi#TYPE_JPEG}
+     *
+     * @return the future encoded image bytes
+     *
+     * @see Simapi#getBytes(BufferedImage, String)
+     */
+    public SimapiFuture<byte[]> encodeAsync(final SimapiFuture<BufferedImage> image, final String type) {
+
+        final SimapiFuture<byte[]> result = new SimapiFuture<byte[]>(image);
+        image.addListener(new Runnable() {
+
+            public void run() {
+
+                if (propagate(image, result)) {
+                    result.run(m_computeExecutor, new Callable<byte[]>() {
+
+                        public byte[] call() throws Exception {
+
+                            return m_simapi.getBytes(image.get(), type);
+                        }
+                    });
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Returns the image processor used by this facade.<p>
+     *
+     * @return the image processor used by this facade
+     */
+    public Simapi getSimapi() {
+
+        return m_simapi;
+    }
+
+    /**
+     * Reads and transforms an image and encodes the result, asynchronously.<p>
+     *
+     * @param source the source to read the image from, for example a <code>byte[]</code> or an input stream
+     * @param transformation the transformation to apply
+     * @param type the type of the encoded image, for example {@link Simapi#TYPE_JPEG}
+     *
+     * @return the future encoded image bytes
+     */
+    public SimapiFuture<byte[]> processAsync(Object source, Transformation transformation, String type) {
+
+        return encodeAsync(transformAsync(readAsync(source), transformation), type);
+    }
+
+    /**
+     * Reads an image asynchronously.<p>
+     *
+     * @param source the source to read the image from, for example a <code>byte[]</code> or an input stream
+     *
+     * @return the future image
+     */
+    public SimapiFuture<BufferedImage> readAsync(Object source) {
+
+        return readAsync(source, 0, 0);
+    }
+
+    /**
+     * Reads an image asynchronously, subsampled as far as possible for a later downscale to the given dimensions.<p>
+     *
+     * @param source the source to read the image from, for example a <code>byte[]</code> or an input stream
+     * @param targetWidth the width the image will be scaled to, or <code>0</code> if not restricted
+     * @param targetHeight the height the image will be scaled to, or <code>0</code> if not restricted
+     *
+     * @return the future image
+     *
+     * @see Simapi#readImage(RenderSettings, Object, java.awt.Rectangle, int, int)
+     */
+    public SimapiFuture<BufferedImage> readAsync(final Object source, final int targetWidth, final int targetHeight) {
+
+        SimapiFuture<BufferedImage> result = new SimapiFuture<BufferedImage>(null);
+        result.run(m_ioExecutor, new Callable<BufferedImage>() {
+
+            public BufferedImage call() throws Exception {
+
+                return Simapi.readImage(m_simapi.getRenderSettings(), source, null, targetWidth, targetHeight);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Transforms an image asynchronously.<p>
+     *
+     * @param image the future image to transform
+     * @param transformation the transformation to apply
+     *
+     * @return the future transformed image
+     */
+    public SimapiFuture<BufferedImage> transformAsync(
+        final SimapiFuture<BufferedImage> image,
+        final Transformation transformation) {
+
+        final SimapiFuture<BufferedImage> result = new SimapiFuture<BufferedImage>(image);
+        image.addListener(new Runnable() {
+
+            public void run() {
+
+                if (propagate(image, result)) {
+                    result.run(m_computeExecutor, new Callable<BufferedImage>() {
+
+                        public BufferedImage call() throws Exception {
+
+                            return transformation.transform(m_simapi, image.get());
+                        }
+                    });
+                }
+            }
+        });
+        return result;
+    }
+}
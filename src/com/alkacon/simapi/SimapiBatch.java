@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.alkacon.simapi;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import javax.imageio.IIOException;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Processes many image jobs in parallel, while limiting the memory used for decoded images.<p>
+ *
+ * The batch processor enforces a global budget of decoded pixels that are in memory at the same time.
+ * Before an image is decoded, its dimensions are read from the image header and the required pixels
+ * are reserved from the budget. If the budget is exhausted, the job waits until other jobs have finished.
+ * Waiting jobs are served in the order they requested their pixels, so large images are not starved
+ * by a stream of small ones. A job that requires more pixels than the complete budget
+ * is run alone, once all other jobs have finished.<p>
+ *
+ * The budget counts the decoded source pixels only, the images created by the operations of a job
+ * are usually much smaller and are not counted.<p>
+ *
+ * @see BatchJob
+ */
+public class SimapiBatch {
+
+    /** The number of pixels represented by a single budget permit. */
+    private static final int PIXELS_PER_PERMIT = 1024;
+
+    /** The pixel budget, in permits. */
+    private Semaphore m_budget;
+
+    /** The executor that runs the jobs. */
+    private ExecutorService m_executor;
+
+    /** Indicates if the executor was created by this batch processor. */
+    private boolean m_isOwnExecutor;
+
+    /** The total number of permits in the budget. */
+    private int m_maxPermits;
+
+    /** The image processor used by the jobs. */
+    private Simapi m_simapi;
+
+    /**
+     * Creates a new batch processor that runs the jobs on the given executor.<p>
+     *
+     * @param simapi the image processor used by the jobs
+     * @param executor the executor that runs the jobs
+     * @param maxPixels the maximum number of decoded pixels that may be in memory at the same time
+     */
+    public SimapiBatch(Simapi simapi, ExecutorService executor, long maxPixels) {
+
+        if (simapi == null) {
+            throw new IllegalArgumentException("simapi == null!");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("executor == null!");
+        }
+        if (maxPixels < 1) {
+            throw new IllegalArgumentException("maxPixels must be positive");
+        }
+        m_simapi = simapi;
+        m_executor = executor;
+        m_maxPermits = (int)Math.min(Integer.MAX_VALUE, getPermits(maxPixels));
+        // the semaphore is fair, so waiting jobs are served in order
+        m_budget = new Semaphore(m_maxPermits, true);
+    }
+
+    /**
+     * Creates a new batch processor that runs the jobs on a fixed number of threads.<p>
+     *
+     * The threads are created by this batch processor and must be released with {@link #shutdown()}.<p>
+     *
+     * @param simapi the image processor used by the jobs
+     * @param threads the number of threads that run the jobs
+     * @param maxPixels the maximum number of decoded pixels that may be in memory at the same time
+     */
+    public SimapiBatch(Simapi simapi, int threads, long maxPixels) {
+
+        this(simapi, Executors.newFixedThreadPool(threads), maxPixels);
+        m_isOwnExecutor = true;
+    }
+
+    /**
+     * Returns the number of permits required for the given number of pixels.<p>
+     *
+     * @param pixels the number of pixels
+     *
+     * @return the number of permits required for the given number of pixels
+     */
+    private static long getPermits(long pixels) {
+
+        return Math.max(1, (pixels + PIXELS_PER_PERMIT - 1) / PIXELS_PER_PERMIT);
+    }
+
+    /**
+     * Returns the number of decoded pixels that are currently not reserved by a running job.<p>
+     *
+     * @return the number of decoded pixels that are currently not reserved by a running job
+     */
+    public long getAvailablePixels() {
+
+        return (long)m_budget.availablePermits() * PIXELS_PER_PERMIT;
+    }
+
+    /**
+     * Returns the maximum number of decoded pixels that may be in memory at the same time.<p>
+     *
+     * @return the maximum number of decoded pixels that may be in memory at the same time
+     */
+    public long getMaxPixels() {
+
+        return (long)m_maxPermits * PIXELS_PER_PERMIT;
+    }
+
+    /**
+     * Shuts down the executor of this batch processor, if it was created by this batch processor.<p>
+     *
+     * Jobs that are already submitted are still processed.<p>
+     */
+    public void shutdown() {
+
+        if (m_isOwnExecutor) {
+            m_executor.shutdown();
+        }
+    }
+
+    /**
+     * Submits a job for processing.<p>
+     *
+     * The returned future provides the job once it has been completed,
+     * or the exception that caused the job to fail.<p>
+     *
+     * @param job the job to process
+     *
+     * @return the future result of the job
+     */
+    public Future<BatchJob> submit(final BatchJob job) {
+
+        if (job == null) {
+            throw new IllegalArgumentException("job == null!");
+        }
+        return m_executor.submit(new Callable<BatchJob>() {
+
+            public BatchJob call() throws Exception {
+
+                process(job);
+                return job;
+            }
+        });
+    }
+
+    /**
+     * Submits all given jobs for processing.<p>
+     *
+     * @param jobs the jobs to process
+     *
+     * @return the future results of the jobs, in the order of the given jobs
+     */
+    public List<Future<BatchJob>> submitAll(List<BatchJob> jobs) {
+
+        List<Future<BatchJob>> result = new ArrayList<Future<BatchJob>>(jobs.size());
+        for (BatchJob job : jobs) {
+            result.add(submit(job));
+        }
+        return result;
+    }
+
+    /**
+     * Processes the given job in the current thread.<p>
+     *
+     * @param job the job to process
+     *
+     * @throws IOException in case the image could not be read or written
+     * @throws InterruptedException in case the thread was interrupted while waiting for the pixel budget
+     */
+    protected void process(BatchJob job) throws IOException, InterruptedException {
+
+        Object source = job.openSource();
+        try {
+            ImageInputStream stream = Simapi.createImageInputStream(source);
+            if (stream == null) {
+                throw new IIOException("Can't create an ImageInputStream!");
+            }
+            try {
+                ImageReader reader = ImageIOPool.getReader(stream);
+                try {
+                    // estimate the decoded size from the image header
+                    int width = reader.getWidth(0);
+                    int height = reader.getHeight(0);
+                    int subsampling = Simapi.getLimitedSubsampling(
+                        m_simapi.getRenderSettings(),
+                        width,
+                        height,
+                        Simapi.getSubsampling(width, height, job.getTargetWidth(), job.getTargetHeight()));
+                    long pixels = (long)((width + subsampling - 1) / subsampling)
+                        * ((height + subsampling - 1) / subsampling);
+                    int permits = (int)Math.min(m_maxPermits, getPermits(pixels));
+
+                    m_budget.acquire(permits);
+                    try {
+                        BufferedImage image = Simapi.readImage(
+                            m_simapi.getRenderSettings(),
+                            reader,
+                            null,
+                            job.getTargetWidth(),
+                            job.getTargetHeight());
+                        image = job.apply(m_simapi, image);
+                        m_simapi.write(image, job.getDestination(), job.getType());
+                    } finally {
+                        m_budget.release(permits);
+                    }
+                } finally {
+                    ImageIOPool.releaseReader(reader);
+                }
+            } finally {
+                stream.close();
+            }
+        } finally {
+            if ((source instanceof InputStream) && (source != job.getSource())) {
+                // close streams opened by the job, but not streams provided by the caller
+                ((InputStream)source).close();
+            }
+        }
+    }
+}
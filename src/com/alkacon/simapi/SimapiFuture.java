@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.alkacon.simapi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The future result of an asynchronous image processing stage, created by {@link SimapiAsync}.<p>
+ *
+ * The next stage of a pipeline is started when the previous stage completes, so no thread
+ * is blocked while waiting for a previous stage.<p>
+ *
+ * Cancelling a stage also cancels all stages it depends on. A running stage is interrupted
+ * if <code>mayInterruptIfRunning</code> is set, stages that have not started yet are never run.
+ * This way an abandoned request stops consuming CPU as soon as possible.<p>
+ *
+ * @param <T> the result type of the stage
+ */
+public class SimapiFuture<T> implements Future<T> {
+
+    /** Indicates if the stage was cancelled. */
+    private boolean m_isCancelled;
+
+    /** Indicates if the stage is done. */
+    private boolean m_isDone;
+
+    /** The exception thrown by the stage, or the stage it depends on. */
+    private Throwable m_failure;
+
+    /** The listeners to notify once the stage is done. */
+    private List<Runnable> m_listeners;
+
+    /** The result of the stage. */
+    private T m_result;
+
+    /** The thread that currently runs the stage. */
+    private Thread m_runner;
+
+    /** The stage this stage depends on, or <code>null</code>. */
+    private SimapiFuture<?> m_source;
+
+    /**
+     * Creates a new future result of a stage.<p>
+     *
+     * @param source the stage this stage depends on, or <code>null</code>
+     */
+    protected SimapiFuture(SimapiFuture<?> source) {
+
+        m_source = source;
+        m_listeners = new ArrayList<Runnable>();
+    }
+
+    /**
+     * @see java.util.concurrent.Future#cancel(boolean)
+     */
+    public boolean cancel(boolean mayInterruptIfRunning) {
+
+        synchronized (this) {
+            if (m_isDone) {
+                return false;
+            }
+            m_isCancelled = true;
+            m_isDone = true;
+            if (mayInterruptIfRunning && (m_runner != null)) {
+                m_runner.interrupt();
+            }
+            notifyAll();
+        }
+        if (m_source != null) {
+            // the result of the previous stage is no longer required
+            m_source.cancel(mayInterruptIfRunning);
+        }
+        fireCompleted();
+        return true;
+    }
+
+    /**
+     * @see java.util.concurrent.Future#get()
+     */
+    public synchronized T get() throws InterruptedException, ExecutionException {
+
+        while (!m_isDone) {
+            wait();
+        }
+        return getResult();
+    }
+
+    /**
+     * @see java.util.concurrent.Future#get(long, java.util.concurrent.TimeUnit)
+     */
+    public synchronized T get(long timeout, TimeUnit unit)
+    throws InterruptedException, ExecutionException, TimeoutException {
+
+        long end = System.nanoTime() + unit.toNanos(timeout);
+        while (!m_isDone) {
+            long remaining = end - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return getResult();
+    }
+
+    /**
+     * @see java.util.concurrent.Future#isCancelled()
+     */
+    public synchronized boolean isCancelled() {
+
+        return m_isCancelled;
+    }
+
+    /**
+     * @see java.util.concurrent.Future#isDone()
+     */
+    public synchronized boolean isDone() {
+
+        return m_isDone;
+    }
+
+    /**
+     * Adds a listener that is called once this stage is done.<p>
+     *
+     * If the stage is already done, the listener is called immediately.<p>
+     *
+     * @param listener the listener to call
+     */
+    protected void addListener(Runnable listener) {
+
+        synchronized (this) {
+            if (!m_isDone) {
+                m_listeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    /**
+     * Completes this stage with the given failure.<p>
+     *
+     * @param failure the failure
+     */
+    protected void fail(Throwable failure) {
+
+        complete(null, failure);
+    }
+
+    /**
+     * Returns the failure of this stage, or <code>null</code> if the stage is not done or was successful.<p>
+     *
+     * @return the failure of this stage
+     */
+    protected synchronized Throwable getFailure() {
+
+        return m_failure;
+    }
+
+    /**
+     * Runs the given stage with the given executor and completes this future with its result.<p>
+     *
+     * The stage is not run if this future is already done, for example because it was cancelled.<p>
+     *
+     * @param executor the executor to run the stage with
+     * @param stage the stage to run
+     */
+    protected void run(Executor executor, final Callable<T> stage) {
+
+        try {
+            executor.execute(new Runnable() {
+
+                public void run() {
+
+                    synchronized (SimapiFuture.this) {
+                        if (m_isDone) {
+                            return;
+                        }
+                        m_runner = Thread.currentThread();
+                    }
+                    try {
+                        complete(stage.call(), null);
+                    } catch (Throwable e) {
+                        complete(null, e);
+                    } finally {
+                        synchronized (SimapiFuture.this) {
+                            m_runner = null;
+                            if (m_isCancelled) {
+                                // clear a pending interrupt, the thread is returned to the executor
+                                Thread.interrupted();
+                            }
+                        }
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            complete(null, e);
+        }
+    }
+
+    /**
+     * Completes this stage with the given result or failure, if it is not already done.<p>
+     *
+     * @param result the result
+     * @param failure the failure, or <code>null</code> if the stage was successful
+     */
+    private void complete(T result, Throwable failure) {
+
+        synchronized (this) {
+            if (m_isDone) {
+                return;
+            }
+            m_result = result;
+            m_failure = failure;
+            m_isDone = true;
+            notifyAll();
+        }
+        fireCompleted();
+    }
+
+    /**
+     * Calls all listeners, which must only be done once this stage is done.<p>
+     */
+    private void fireCompleted() {
+
+        List<Runnable> listeners;
+        synchronized (this) {
+            listeners = m_listeners;
+            m_listeners = new ArrayList<Runnable>();
+        }
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Returns the result of this stage, which must be done.<p>
+     *
+     * @return the result of this stage
+     *
+     * @throws ExecutionException in case the stage failed
+     */
+    private T getResult() throws ExecutionException {
+
+        if (m_isCancelled) {
+            throw new CancellationException("Image operation was cancelled!");
+        }
+        if (m_failure != null) {
+            throw new ExecutionException(m_failure);
+        }
+        return m_result;
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.alkacon.simapi;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.IIOException;
+
+/**
+ * Runs the CPU intensive stages of the image processing on a dedicated, size limited pool of compute threads.<p>
+ *
+ * The scheduler replaces lowering the priority of the calling thread, which has no effect on many
+ * platforms and for pooled threads. Instead, the calling thread only waits for the result, while the number
+ * of threads that scale, blur, filter or encode images at the same time never exceeds the pool size.<p>
+ *
+ * Waiting stages are run by priority class: all {@link #PRIORITY_INTERACTIVE} stages are started before
+ * any {@link #PRIORITY_BACKGROUND} stage. Stages of the same priority class are started in the order
+ * they were submitted.<p>
+ *
+ * A scheduler is shared by setting it in the {@link RenderSettings} of all {@link Simapi} instances
+ * that should use it, with the priority class for the instance.<p>
+ *
+ * @see RenderSettings#setScheduler(SimapiScheduler)
+ * @see RenderSettings#setSchedulerPriority(int)
+ */
+public class SimapiScheduler {
+
+    /** Priority class for batch processing, started only if no interactive stages are waiting. */
+    public static final int PRIORITY_BACKGROUND = 1;
+
+    /** Priority class for requests a user waits for. */
+    public static final int PRIORITY_INTERACTIVE = 0;
+
+    /** The scheduler whose compute thread is the current thread. */
+    private static final ThreadLocal<SimapiScheduler> CURRENT = new ThreadLocal<SimapiScheduler>();
+
+    /** The executor that runs the stages. */
+    private ThreadPoolExecutor m_executor;
+
+    /** The sequence number for the next submitted stage. */
+    private AtomicLong m_sequence;
+
+    /** The number of compute threads. */
+    private int m_threads;
+
+    /**
+     * Future of a stage that is ordered by priority class and submission sequence.<p>
+     *
+     * @param <T> the result type of the stage
+     */
+    private static class PriorityTask<T> extends FutureTask<T> implements Comparable<PriorityTask<?>> {
+
+        /** The priority class of the stage. */
+        private int m_priority;
+
+        /** The submission sequence number of the stage. */
+        private long m_sequence;
+
+        /**
+         * Creates a new prioritized stage.<p>
+         *
+         * @param stage the stage to run
+         * @param priority the priority class of the stage
+         * @param sequence the submission sequence number of the stage
+         */
+        PriorityTask(Callable<T> stage, int priority, long sequence) {
+
+            super(stage);
+            m_priority = priority;
+            m_sequence = sequence;
+        }
+
+        /**
+         * @see java.lang.Comparable#compareTo(java.lang.Object)
+         */
+        public int compareTo(PriorityTask<?> other) {
+
+            int result = Integer.compare(m_priority, other.m_priority);
+            return result != 0 ? result : Long.compare(m_sequence, other.m_sequence);
+        }
+    }
+
+    /**
+     * Creates a new scheduler with the given number of compute threads.<p>
+     *
+     * The threads are daemon threads, they are released with {@link #shutdown()}.<p>
+     *
+     * @param threads the number of compute threads
+     */
+    public SimapiScheduler(int threads) {
+
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        m_threads = threads;
+        m_sequence = new AtomicLong();
+        final AtomicInteger count = new AtomicInteger();
+        m_executor = new ThreadPoolExecutor(
+            threads,
+            threads,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new PriorityBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+
+                public Thread newThread(final Runnable runnable) {
+
+                    Thread thread = new Thread(new Runnable() {
+
+                        public void run() {
+
+                            // mark the thread, so stages started from a stage run directly
+                            CURRENT.set(SimapiScheduler.this);
+                            runnable.run();
+                        }
+                    }, "simapi-compute-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+    }
+
+    /**
+     * Runs the given stage on the current thread.<p>
+     *
+     * Checked exceptions other than {@link IOException} are wrapped in an {@link IIOException}.<p>
+     *
+     * @param <T> the result type of the stage
+     * @param stage the stage to run
+     *
+     * @return the result of the stage
+     *
+     * @throws IOException in case the stage fails
+     */
+    protected static <T> T call(Callable<T> stage) throws IOException {
+
+        try {
+            return stage.call();
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IIOException("Image operation failed!", e);
+        }
+    }
+
+    /**
+     * Returns an executor that runs its tasks on the compute threads of this scheduler with the given priority class.<p>
+     *
+     * @param priority the priority class of the tasks, for example {@link #PRIORITY_INTERACTIVE}
+     *
+     * @return an executor that runs its tasks on the compute threads of this scheduler
+     */
+    public Executor getExecutor(final int priority) {
+
+        return new Executor() {
+
+            public void execute(Runnable task) {
+
+                submit(Executors.callable(task), priority);
+            }
+        };
+    }
+
+    /**
+     * Returns the number of stages that are waiting for a compute thread.<p>
+     *
+     * @return the number of stages that are waiting for a compute thread
+     */
+    public int getQueueSize() {
+
+        return m_executor.getQueue().size();
+    }
+
+    /**
+     * Returns the number of compute threads.<p>
+     *
+     * @return the number of compute threads
+     */
+    public int getThreads() {
+
+        return m_threads;
+    }
+
+    /**
+     * Runs the given stage on a compute thread and waits for the result.<p>
+     *
+     * If the current thread already is a compute thread of this scheduler, the stage is run directly.
+     * If the current thread is interrupted while waiting, the stage is cancelled.<p>
+     *
+     * @param <T> the result type of the stage
+     * @param stage the stage to run
+     * @param priority the priority class of the stage, for example {@link #PRIORITY_INTERACTIVE}
+     *
+     * @return the result of the stage
+     *
+     * @throws IOException in case the stage fails, or an {@link InterruptedIOException}
+     *      in case the current thread was interrupted while waiting
+     */
+    public <T> T invoke(Callable<T> stage, int priority) throws IOException {
+
+        if (isSchedulerThread()) {
+            // a stage started from a stage, waiting for another compute thread could dead lock
+            return call(stage);
+        }
+        Future<T> future = submit(stage, priority);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for image operation!");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException)cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new IIOException("Image operation failed!", cause);
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the current thread is a compute thread of this scheduler.<p>
+     *
+     * @return <code>true</code> if the current thread is a compute thread of this scheduler
+     */
+    public boolean isSchedulerThread() {
+
+        return CURRENT.get() == this;
+    }
+
+    /**
+     * Shuts down the compute threads after all submitted stages have been completed.<p>
+     */
+    public void shutdown() {
+
+        m_executor.shutdown();
+    }
+
+    /**
+     * Submits the given stage to be run on a compute thread.<p>
+     *
+     * @param <T> the result type of the stage
+     * @param stage the stage to run
+     * @param priority the priority class of the stage, for example {@link #PRIORITY_INTERACTIVE}
+     *
+     * @return the future result of the stage
+     */
+    public <T> Future<T> submit(Callable<T> stage, int priority) {
+
+        if ((priority != PRIORITY_INTERACTIVE) && (priority != PRIORITY_BACKGROUND)) {
+            throw new IllegalArgumentException("unknown priority class " + priority);
+        }
+        PriorityTask<T> task = new PriorityTask<T>(stage, priority, m_sequence.getAndIncrement());
+        m_executor.execute(task);
+        return task;
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ * Copyright (c) Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.alkacon.simapi;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+
+import javax.imageio.ImageTypeSpecifier;
+
+/**
+ * Data buffer of a full size destination image that keeps only a strip of rows in memory
+ * and feeds every completed strip to a {@link StripScaler}.<p>
+ *
+ * An image reader decodes into the destination image as usual. The rows must be written from top to bottom,
+ * once a row below the current strip is written, the strip is complete and is passed on to the scaler.
+ * Progressive readers that decode the complete image again for every pass are supported,
+ * every pass restarts the scaler.<p>
+ *
+ * Readers that write the rows in any other order, for example for interlaced images,
+ * are detected and make {@link #getTarget()} return <code>null</code>.<p>
+ */
+public class StripBuffer extends DataBuffer {
+
+    /** The color model of the destination image. */
+    private ColorModel m_colorModel;
+
+    /** The first row of the current strip. */
+    private int m_firstRow;
+
+    /** The largest element index written in the current strip. */
+    private int m_maxIndex;
+
+    /** The number of elements of the rows before the current strip. */
+    private int m_offset;
+
+    /** The current strip converted to packed ARGB pixels. */
+    private BufferedImage m_rgbStrip;
+
+    /** The number of elements of one row. */
+    private int m_rowSize;
+
+    /** The sample model of the destination image. */
+    private SampleModel m_sampleModel;
+
+    /** The strip scaler that receives the completed strips. */
+    private StripScaler m_scaler;
+
+    /** Indicates if all rows have been written in sequence so far. */
+    private boolean m_sequential;
+
+    /** The image holding the current strip. */
+    private BufferedImage m_strip;
+
+    /** The data buffer of the current strip. */
+    private DataBuffer m_stripBuffer;
+
+    /** The number of rows of a strip. */
+    private int m_stripRows;
+
+    /** The number of elements of a strip. */
+    private int m_stripSize;
+
+    /** The height of the target image. */
+    private int m_targetHeight;
+
+    /** The width of the target image. */
+    private int m_targetWidth;
+
+    /**
+     * Pixel interleaved sample model that copies complete rows into the strip at once,
+     * instead of writing them element by element through the data buffer.<p>
+     */
+    private class StripSampleModel extends PixelInterleavedSampleModel {
+
+        /**
+         * Creates a copy of the given sample model.<p>
+         *
+         * @param model the sample model to copy
+         */
+        StripSampleModel(PixelInterleavedSampleModel model) {
+
+            super(
+                model.getDataType(),
+                model.getWidth(),
+                model.getHeight(),
+                model.getPixelStride(),
+                model.getScanlineStride(),
+                model.getBandOffsets());
+        }
+
+        /**
+         * @see java.awt.image.ComponentSampleModel#setPixels(int, int, int, int, int[], java.awt.image.DataBuffer)
+         */
+        @Override
+        public void setPixels(int x, int y, int w, int h, int[] iArray, DataBuffer data) {
+
+            if ((data == StripBuffer.this) && (h == 1)) {
+                setRow(x, y, w, iArray);
+            } else {
+                super.setPixels(x, y, w, h, iArray, data);
+            }
+        }
+    }
+
+    /**
+     * Creates a new strip buffer.<p>
+     *
+     * @param type the image type of the destination image, must be supported as checked by {@link #isSupported(ImageTypeSpecifier, int, int, int)}
+     * @param width the width of the destination image
+     * @param height the height of the destination image
+     * @param stripRows the number of rows of a strip
+     * @param targetWidth the width of the scaled target image
+     * @param targetHeight the height of the scaled target image
+     */
+    public StripBuffer(
+        ImageTypeSpecifier type,
+        int width,
+        int height,
+        int stripRows,
+        int targetWidth,
+        int targetHeight) {
+
+        super(type.getSampleModel().getDataType(), getScanlineStride(type.getSampleModel(width, 1)) * height);
+        m_colorModel = type.getColorModel();
+        m_sampleModel = type.getSampleModel(width, height);
+        if (m_sampleModel.getClass() == PixelInterleavedSampleModel.class) {
+            m_sampleModel = new StripSampleModel((PixelInterleavedSampleModel)m_sampleModel);
+        }
+        SampleModel stripModel = type.getSampleModel(width, stripRows);
+        m_stripBuffer = stripModel.createDataBuffer();
+        m_strip = new BufferedImage(
+            m_colorModel,
+            Raster.createWritableRaster(stripModel, m_stripBuffer, null),
+            m_colorModel.isAlphaPremultiplied(),
+            null);
+        m_rgbStrip = new BufferedImage(
+            width,
+            stripRows,
+            m_colorModel.hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        m_stripRows = stripRows;
+        m_rowSize = getScanlineStride(stripModel);
+        m_stripSize = m_rowSize * stripRows;
+        m_targetWidth = targetWidth;
+        m_targetHeight = targetHeight;
+        restart();
+    }
+
+    /**
+     * Returns <code>true</code> if images of the given type can be streamed through a strip buffer.<p>
+     *
+     * @param type the image type of the destination image
+     * @param width the width of the destination image
+     * @param height the height of the destination image
+     * @param stripRows the number of rows of a strip
+     *
+     * @return <code>true</code> if images of the given type can be streamed through a strip buffer
+     */
+    public static boolean isSupported(ImageTypeSpecifier type, int width, int height, int stripRows) {
+
+        SampleModel sampleModel = type.getSampleModel(width, 1);
+        if (sampleModel instanceof ComponentSampleModel) {
+            // only interleaved sample models that store all bands in one bank are supported
+            int[] banks = ((ComponentSampleModel)sampleModel).getBankIndices();
+            for (int i = 0; i < banks.length; i++) {
+                if (banks[i] != 0) {
+                    return false;
+                }
+            }
+        }
+        long rowSize = getScanlineStride(sampleModel);
+        return (rowSize > 0) && ((rowSize * Math.max(height, stripRows)) < Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the number of elements of one row for the given sample model,
+     * or <code>-1</code> if the sample model is not supported.<p>
+     *
+     * @param sampleModel the sample model
+     *
+     * @return the number of elements of one row
+     */
+    private static int getScanlineStride(SampleModel sampleModel) {
+
+        if (sampleModel instanceof ComponentSampleModel) {
+            return ((ComponentSampleModel)sampleModel).getScanlineStride();
+        }
+        if (sampleModel instanceof MultiPixelPackedSampleModel) {
+            return ((MultiPixelPackedSampleModel)sampleModel).getScanlineStride();
+        }
+        if (sampleModel instanceof SinglePixelPackedSampleModel) {
+            return ((SinglePixelPackedSampleModel)sampleModel).getScanlineStride();
+        }
+        return -1;
+    }
+
+    /**
+     * Creates the destination image the reader should decode into.<p>
+     *
+     * @return the destination image
+     */
+    public BufferedImage createDestination() {
+
+        return new BufferedImage(
+            m_colorModel,
+            Raster.createWritableRaster(m_sampleModel, this, null),
+            m_colorModel.isAlphaPremultiplied(),
+            null);
+    }
+
+    /**
+     * @see java.awt.image.DataBuffer#getElem(int, int)
+     */
+    @Override
+    public int getElem(int bank, int i) {
+
+        int index = i - m_offset;
+        if ((index < 0) || (index >= m_stripSize)) {
+            return 0;
+        }
+        return m_stripBuffer.getElem(bank, index);
+    }
+
+    /**
+     * Passes the last strip to the scaler and returns the scaled image.<p>
+     *
+     * @return the scaled image, or <code>null</code> if the reader did not write all rows in sequence
+     */
+    public BufferedImage getTarget() {
+
+        int height = m_sampleModel.getHeight();
+        int rows = height - m_firstRow;
+        if (!m_sequential || (rows > m_stripRows) || (m_maxIndex < ((rows - 1) * m_rowSize))) {
+            return null;
+        }
+        flush(rows);
+        return m_scaler.isComplete() ? m_scaler.getTarget() : null;
+    }
+
+    /**
+     * @see java.awt.image.DataBuffer#setElem(int, int, int)
+     */
+    @Override
+    public void setElem(int bank, int i, int val) {
+
+        int index = i - m_offset;
+        if ((index < 0) || (index >= m_stripSize)) {
+            index = moveTo(i / m_rowSize);
+            if (index < 0) {
+                return;
+            }
+            index = i - m_offset;
+        }
+        if (index > m_maxIndex) {
+            m_maxIndex = index;
+        }
+        m_stripBuffer.setElem(bank, index, val);
+    }
+
+    /**
+     * Passes the given number of rows of the current strip to the scaler.<p>
+     *
+     * @param rows the number of rows to pass to the scaler
+     */
+    private void flush(int rows) {
+
+        // converting with the graphics pipeline is much faster than reading the pixels one by one
+        Graphics2D g = m_rgbStrip.createGraphics();
+        try {
+            g.setComposite(AlphaComposite.Src);
+            g.drawImage(m_strip, 0, 0, null);
+        } finally {
+            g.dispose();
+        }
+        m_scaler.addRows(((DataBufferInt)m_rgbStrip.getRaster().getDataBuffer()).getData(), rows);
+    }
+
+    /**
+     * Moves the current strip so that it contains the given row.<p>
+     *
+     * @param row the row that is written
+     *
+     * @return <code>0</code> if the row can be written, or <code>-1</code> if the rows are not written in sequence
+     */
+    private int moveTo(int row) {
+
+        if (!m_sequential) {
+            return -1;
+        }
+        if (row == 0) {
+            // the reader starts the next progressive pass
+            restart();
+        } else if ((row < (m_firstRow + (2 * m_stripRows)))
+            && (row >= (m_firstRow + m_stripRows))
+            && (m_maxIndex >= (m_stripSize - m_rowSize))) {
+            // the current strip is complete
+            flush(m_stripRows);
+            m_firstRow += m_stripRows;
+            m_offset = m_firstRow * m_rowSize;
+            m_maxIndex = -1;
+        } else {
+            // rows written before the current strip, or rows skipped
+            m_sequential = false;
+            return -1;
+        }
+        return 0;
+    }
+
+    /**
+     * Starts writing the image from the first row.<p>
+     */
+    private void restart() {
+
+        m_scaler = new StripScaler(
+            m_sampleModel.getWidth(),
+            m_sampleModel.getHeight(),
+            m_targetWidth,
+            m_targetHeight,
+            m_colorModel.hasAlpha());
+        m_firstRow = 0;
+        m_offset = 0;
+        m_maxIndex = -1;
+        m_sequential = true;
+    }
+
+    /**
+     * Writes the samples of a part of a row.<p>
+     *
+     * @param x the first column to write
+     * @param y the row to write
+     * @param w the number of columns to write
+     * @param samples the samples to write, pixel after pixel
+     */
+    private void setRow(int x, int y, int w, int[] samples) {
+
+        if (((y < m_firstRow) || (y >= (m_firstRow + m_stripRows))) && (moveTo(y) < 0)) {
+            return;
+        }
+        int row = y - m_firstRow;
+        m_strip.getRaster().setPixels(x, row, w, 1, samples);
+        m_maxIndex = Math.max(m_maxIndex, row * m_rowSize);
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.alkacon.simapi;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+/**
+ * Downscales an image that is delivered row by row, without ever holding the complete source image in memory.<p>
+ *
+ * The scaler uses an exact area average: every source pixel contributes to the target pixels it overlaps,
+ * weighted by the overlapping area. Only two target rows are accumulated at a time, so the memory
+ * required for scaling grows with the image width, not with the image area.<p>
+ *
+ * Colors of images with alpha channel are weighted by their alpha value,
+ * so that transparent pixels do not bleed their color into the result.<p>
+ */
+public class StripScaler {
+
+    /** The two accumulated target rows, 4 float values (alpha, red, green, blue) for each target pixel. */
+    private float[][] m_acc;
+
+    /** The index of the current source row. */
+    private int m_currentRow;
+
+    /** The target image. */
+    private BufferedImage m_target;
+
+    /** The index of the target row accumulated in the first accumulator. */
+    private int m_targetRow;
+
+    /** Indicates if the source has an alpha channel. */
+    private boolean m_hasAlpha;
+
+    /** The horizontally scaled current source row. */
+    private float[] m_hrow;
+
+    /** The source height. */
+    private int m_sourceHeight;
+
+    /** The source width. */
+    private int m_sourceWidth;
+
+    /** The first target column for each source column. */
+    private int[] m_xIndex;
+
+    /** The weight of each source column for its first target column. */
+    private float[] m_xWeight0;
+
+    /** The weight of each source column for the next target column. */
+    private float[] m_xWeight1;
+
+    /** The vertical scale factor. */
+    private double m_yScale;
+
+    /**
+     * Creates a new strip scaler.<p>
+     *
+     * @param sourceWidth the width of the source image
+     * @param sourceHeight the height of the source image
+     * @param targetWidth the width of the target image, must not be larger than the source width
+     * @param targetHeight the height of the target image, must not be larger than the source height
+     * @param hasAlpha if <code>true</code>, the source pixels have an alpha channel
+     */
+    public StripScaler(int sourceWidth, int sourceHeight, int targetWidth, int targetHeight, boolean hasAlpha) {
+
+        if ((targetWidth > sourceWidth) || (targetHeight > sourceHeight)) {
+            throw new IllegalArgumentException("strip scaler can only reduce the image size");
+        }
+        m_sourceWidth = sourceWidth;
+        m_sourceHeight = sourceHeight;
+        m_hasAlpha = hasAlpha;
+        m_target = new BufferedImage(
+            targetWidth,
+            targetHeight,
+            hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        m_acc = new float[][] {new float[targetWidth * 4], new float[targetWidth * 4]};
+        m_hrow = new float[targetWidth * 4];
+        m_yScale = targetHeight / (double)sourceHeight;
+
+        // pre calculate the horizontal area weights
+        double xScale = targetWidth / (double)sourceWidth;
+        m_xIndex = new int[sourceWidth];
+        m_xWeight0 = new float[sourceWidth];
+        m_xWeight1 = new float[sourceWidth];
+        for (int x = 0; x < sourceWidth; x++) {
+            double start = x * xScale;
+            double end = (x + 1) * xScale;
+            int index = Math.min((int)start, targetWidth - 1);
+            m_xIndex[x] = index;
+            if ((end <= (index + 1)) || (index == (targetWidth - 1))) {
+                m_xWeight0[x] = (float)(end - start);
+            } else {
+                m_xWeight0[x] = (float)((index + 1) - start);
+                m_xWeight1[x] = (float)(end - (index + 1));
+            }
+        }
+    }
+
+    /**
+     * Adds the next source rows to the scaler.<p>
+     *
+     * @param pixels the packed ARGB pixels of the rows, row after row
+     * @param rows the number of rows contained in the pixel array
+     */
+    public void addRows(int[] pixels, int rows) {
+
+        for (int r = 0; r < rows; r++) {
+            if (m_currentRow >= m_sourceHeight) {
+                throw new IllegalStateException("more rows added than the source height");
+            }
+            scaleRow(pixels, r * m_sourceWidth);
+
+            // distribute the row to the target rows it overlaps
+            double start = m_currentRow * m_yScale;
+            double end = (m_currentRow + 1) * m_yScale;
+            int lastRow = m_target.getHeight() - 1;
+            if ((end <= (m_targetRow + 1)) || (m_targetRow == lastRow)) {
+                accumulate(m_acc[0], (float)(end - start));
+            } else {
+                accumulate(m_acc[0], (float)((m_targetRow + 1) - start));
+                accumulate(m_acc[1], (float)(end - (m_targetRow + 1)));
+            }
+            m_currentRow++;
+
+            // emit the target row if it is complete
+            if ((m_targetRow < lastRow) && ((m_currentRow * m_yScale) >= (m_targetRow + 1))) {
+                emitRow();
+            }
+        }
+        if ((m_currentRow == m_sourceHeight) && (m_targetRow < m_target.getHeight())) {
+            // last row
+            emitRow();
+        }
+    }
+
+    /**
+     * Returns the scaled target image.<p>
+     *
+     * The image is complete only after all source rows have been added.<p>
+     *
+     * @return the scaled target image
+     */
+    public BufferedImage getTarget() {
+
+        return m_target;
+    }
+
+    /**
+     * Returns <code>true</code> if all source rows have been added.<p>
+     *
+     * @return <code>true</code> if all source rows have been added
+     */
+    public boolean isComplete() {
+
+        return m_currentRow == m_sourceHeight;
+    }
+
+    /**
+     * Adds the horizontally scaled current row to the given accumulator row with the given weight.<p>
+     *
+     * @param acc the accumulator row
+     * @param weight the weight of the current row
+     */
+    private void accumulate(float[] acc, float weight) {
+
+        for (int i = 0; i < acc.length; i++) {
+            acc[i] += m_hrow[i] * weight;
+        }
+    }
+
+    /**
+     * Writes the first accumulator row to the target image and switches to the next target row.<p>
+     */
+    private void emitRow() {
+
+        float[] acc = m_acc[0];
+        int width = m_target.getWidth();
+        int[] row = new int[width];
+        for (int x = 0, i = 0; x < width; x++, i += 4) {
+            int a = m_hasAlpha ? clamp(acc[i]) : 0xff;
+            float r = acc[i + 1];
+            float g = acc[i + 2];
+            float b = acc[i + 3];
+            if (m_hasAlpha) {
+                if (a == 0) {
+                    r = 0f;
+                    g = 0f;
+                    b = 0f;
+                } else {
+                    float f = 255f / acc[i];
+                    r *= f;
+                    g *= f;
+                    b *= f;
+                }
+            }
+            row[x] = (a << 24) | (clamp(r) << 16) | (clamp(g) << 8) | clamp(b);
+        }
+        WritableRaster raster = m_target.getRaster();
+        raster.setDataElements(0, m_targetRow, width, 1, row);
+
+        // the next row becomes the current row
+        Arrays.fill(acc, 0f);
+        m_acc[0] = m_acc[1];
+        m_acc[1] = acc;
+        m_targetRow++;
+    }
+
+    /**
+     * Scales the source row starting at the given offset horizontally into the current row buffer.<p>
+     *
+     * @param pixels the source pixels
+     * @param offset the offset of the row in the source pixels
+     */
+    private void scaleRow(int[] pixels, int offset) {
+
+        float[] hrow = m_hrow;
+        Arrays.fill(hrow, 0f);
+        for (int x = 0; x < m_sourceWidth; x++) {
+            int argb = pixels[offset + x];
+            float a = m_hasAlpha ? (argb >>> 24) : 255f;
+            float f = m_hasAlpha ? (a / 255f) : 1f;
+            float r = ((argb >> 16) & 0xff) * f;
+            float g = ((argb >> 8) & 0xff) * f;
+            float b = (argb & 0xff) * f;
+            int i = m_xIndex[x] * 4;
+            float w = m_xWeight0[x];
+            hrow[i] += a * w;
+            hrow[i + 1] += r * w;
+            hrow[i + 2] += g * w;
+            hrow[i + 3] += b * w;
+            w = m_xWeight1[x];
+            if (w > 0f) {
+                hrow[i + 4] += a * w;
+                hrow[i + 5] += r * w;
+                hrow[i + 6] += g * w;
+                hrow[i + 7] += b * w;
+            }
+        }
+    }
+
+    /**
+     * Rounds and clamps the given value to the range 0 - 255.<p>
+     *
+     * @param value the value to clamp
+     *
+     * @return the rounded and clamped value
+     */
+    private static int clamp(float value) {
+
+        int v = (int)(value + 0.5f);
+        return v < 0 ? 0 : (v > 0xff ? 0xff : v);
+    }
+}
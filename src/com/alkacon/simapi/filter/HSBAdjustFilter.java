@@ -1 +1 @@
-/* * Copyright (C) Jerry Huxtable 1998 */package com.alkacon.simapi.filter;import java.awt.*;import java.awt.image.*;public class HSBAdjustFilter extends RGBImageFilter implements java.io.Serializable {		static final long serialVersionUID = 4578927872126740383L;		public float hFactor, sFactor, bFactor;	private float[] hsb = new float[3];		public HSBAdjustFilter() {		this(0, 0, 0);	}	public HSBAdjustFilter(float r, float g, float b) {		hFactor = r;		sFactor = g;		bFactor = b;		canFilterIndexColorModel = true;	}	public int filterRGB(int x, int y, int rgb) {		int a = rgb & 0xff000000;		int r = (rgb >> 16) & 0xff;		int g = (rgb >> 8) & 0xff;		int b = rgb & 0xff;		Color.RGBtoHSB(r, g, b, hsb);		hsb[0] += hFactor;		while (hsb[0] < 0)			hsb[0] += Math.PI*2;		hsb[1] += sFactor;		if (hsb[1] < 0)			hsb[1] = 0;		else if (hsb[1] > 1.0)			hsb[1] = 1.0f;		hsb[2] += bFactor;		if (hsb[2] < 0)			hsb[2] = 0;		else if (hsb[2] > 1.0)			hsb[2] = 1.0f;		rgb = Color.HSBtoRGB(hsb[0], hsb[1], hsb[2]);		return a | (rgb & 0xffffff);	}	public String toString() {		return "Colors/Adjust HSB...";	}}
\ No newline at end of file
+/* * Copyright (C) Jerry Huxtable 1998 */package com.alkacon.simapi.filter;import java.awt.*;import java.awt.image.*;public class HSBAdjustFilter extends RGBImageFilter implements java.io.Serializable {		static final long serialVersionUID = 4578927872126740383L;		public float hFactor, sFactor, bFactor;	private float[] hsb = new float[3];		public HSBAdjustFilter() {		this(0, 0, 0);	}	public HSBAdjustFilter(float r, float g, float b) {		hFactor = r;		sFactor = g;		bFactor = b;		canFilterIndexColorModel = true;	}	public int filterRGB(int x, int y, int rgb) {		int a = rgb & 0xff000000;		int r = (rgb >> 16) & 0xff;		int g = (rgb >> 8) & 0xff;		int b = rgb & 0xff;		Color.RGBtoHSB(r, g, b, hsb);		hsb[0] += hFactor;		while (hsb[0] < 0)			hsb[0] += Math.PI*2;		hsb[1] += sFactor;		if (hsb[1] < 0)			hsb[1] = 0;		else if (hsb[1] > 1.0)			hsb[1] = 1.0f;		hsb[2] += bFactor;		if (hsb[2] < 0)			hsb[2] = 0;		else if (hsb[2] > 1.0)			hsb[2] = 1.0f;		rgb = Color.HSBtoRGB(hsb[0], hsb[1], hsb[2]);		return a | (rgb & 0xffffff);	}	// each filter instance needs its own scratch array, since filter instances may run in parallel	public Object clone() {		HSBAdjustFilter f = (HSBAdjustFilter)super.clone();		f.hsb = new float[3];		return f;	}	public String toString() {		return "Colors/Adjust HSB...";	}}
\ No newline at end of file
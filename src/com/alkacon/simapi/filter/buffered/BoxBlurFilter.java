@@ -4,6 +4,8 @@
 
 package com.alkacon.simapi.filter.buffered;
 
+import com.alkacon.simapi.CancellationToken;
+
 import java.awt.image.BufferedImage;
 
 public class BoxBlurFilter extends AbstractBufferedImageOp {
@@ -42,7 +44,9 @@ public class BoxBlurFilter extends AbstractBufferedImageOp {
 
         int inIndex = 0;
         
+        CancellationToken token = CancellationToken.getCurrent();
         for ( int y = 0; y < height; y++ ) {
+            token.check();
             int outIndex = y;
             int ta = 0, tr = 0, tg = 0, tb = 0;
 
@@ -4,6 +4,7 @@
 
 package com.alkacon.simapi.filter.buffered;
 
+import com.alkacon.simapi.CancellationToken;
 import com.alkacon.simapi.filter.PixelUtils;
 
 import java.awt.Rectangle;
@@ -103,7 +104,9 @@ public class ConvolveFilter extends AbstractBufferedImageOp {
         int cols = kernel.getWidth();
         int cols2 = cols / 2;
 
+        CancellationToken token = CancellationToken.getCurrent();
         for (int y = 0; y < height; y++) {
+            token.check();
             int ioffset = y * width;
             for (int x = 0; x < width; x++) {
                 float r = 0, g = 0, b = 0, a = 0;
@@ -161,7 +164,9 @@ public class ConvolveFilter extends AbstractBufferedImageOp {
         int rows2 = rows / 2;
         int cols2 = cols / 2;
 
+        CancellationToken token = CancellationToken.getCurrent();
         for (int y = 0; y < height; y++) {
+            token.check();
             for (int x = 0; x < width; x++) {
                 float r = 0, g = 0, b = 0, a = 0;
 
@@ -226,7 +231,9 @@ public class ConvolveFilter extends AbstractBufferedImageOp {
         int rows = kernel.getHeight();
         int rows2 = rows / 2;
 
+        CancellationToken token = CancellationToken.getCurrent();
         for (int y = 0; y < height; y++) {
+            token.check();
             for (int x = 0; x < width; x++) {
                 float r = 0, g = 0, b = 0, a = 0;
 
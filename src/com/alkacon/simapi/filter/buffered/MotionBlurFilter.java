@@ -4,6 +4,7 @@
 
 package com.alkacon.simapi.filter.buffered;
 
+import com.alkacon.simapi.CancellationToken;
 import com.alkacon.simapi.filter.PixelUtils;
 
 import java.awt.geom.AffineTransform;
@@ -93,7 +94,9 @@ public class MotionBlurFilter extends AbstractBufferedImageOp {
         AffineTransform t = new AffineTransform();
         Point2D.Float p = new Point2D.Float();
 
+        CancellationToken token = CancellationToken.getCurrent();
         for (int y = 0; y < height; y++) {
+            token.check();
             for (int x = 0; x < width; x++) {
                 int a = 0, r = 0, g = 0, b = 0;
                 int count = 0;
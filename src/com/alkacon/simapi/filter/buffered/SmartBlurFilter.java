@@ -4,6 +4,7 @@
 
 package com.alkacon.simapi.filter.buffered;
 
+import com.alkacon.simapi.CancellationToken;
 import com.alkacon.simapi.filter.PixelUtils;
 
 import java.awt.image.BufferedImage;
@@ -43,7 +44,9 @@ public class SmartBlurFilter extends AbstractBufferedImageOp {
         int cols = kernel.getWidth();
         int cols2 = cols/2;
 
+        CancellationToken token = CancellationToken.getCurrent();
         for (int y = 0; y < height; y++) {
+            token.check();
             int ioffset = y*width;
             int outIndex = y;
             for (int x = 0; x < width; x++) {
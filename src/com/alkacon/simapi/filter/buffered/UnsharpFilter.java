@@ -4,6 +4,7 @@
 
 package com.alkacon.simapi.filter.buffered;
 
+import com.alkacon.simapi.CancellationToken;
 import com.alkacon.simapi.filter.PixelUtils;
 
 import java.awt.image.BufferedImage;
@@ -58,7 +59,9 @@ public class UnsharpFilter extends GaussianFilter {
         float a = 4*amount;
 
         int index = 0;
+        CancellationToken token = CancellationToken.getCurrent();
         for ( int y = 0; y < height; y++ ) {
+            token.check();
             for ( int x = 0; x < width; x++ ) {
                 int rgb1 = outPixels[index];
                 int r1 = (rgb1 >> 16) & 0xff;
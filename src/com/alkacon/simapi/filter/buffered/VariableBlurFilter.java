@@ -4,6 +4,8 @@
 
 package com.alkacon.simapi.filter.buffered;
 
+import com.alkacon.simapi.CancellationToken;
+
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.geom.Point2D;
@@ -69,7 +71,9 @@ public class VariableBlurFilter extends AbstractBufferedImageOp {
 
         int inIndex = 0;
 
+        CancellationToken token = CancellationToken.getCurrent();
         for ( int y = 0; y < height; y++ ) {
+            token.check();
             int outIndex = y;
 
             if ( blurMask != null ) {
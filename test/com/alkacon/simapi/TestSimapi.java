@@ -21,25 +21,61 @@
 
 package com.alkacon.simapi;
 
+import com.alkacon.simapi.CmykJpegReader.ResampleOp;
+import com.alkacon.simapi.filter.BorderFilter;
 import com.alkacon.simapi.filter.ContrastFilter;
+import com.alkacon.simapi.filter.FlipFilter;
+import com.alkacon.simapi.filter.GammaFilter;
 import com.alkacon.simapi.filter.GrayscaleFilter;
 import com.alkacon.simapi.filter.ImageMath;
 import com.alkacon.simapi.filter.LinearColormap;
 import com.alkacon.simapi.filter.LookupFilter;
+import com.alkacon.simapi.filter.OffsetFilter;
 import com.alkacon.simapi.filter.RotateFilter;
 import com.alkacon.simapi.filter.ShadowFilter;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.ImageFilter;
+import java.awt.image.RGBImageFilter;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
-
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
 import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
 import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
 
 import junit.extensions.TestSetup;
 import junit.framework.Test;
@@ -71,31 +107,57 @@ public class TestSimapi extends VisualTestCase {
         suite.setName(TestSimapi.class.getName());
 
         suite.addTest(new TestSimapi("testCMYKJpeg"));
+        suite.addTest(new TestSimapi("testAdaptiveQuality"));
+        suite.addTest(new TestSimapi("testAsync"));
+        suite.addTest(new TestSimapi("testBatch"));
+        suite.addTest(new TestSimapi("testByteBuffer"));
+        suite.addTest(new TestSimapi("testCancellationToken"));
 
         suite.addTest(new TestSimapi("testSpecialScaleSize"));
+        suite.addTest(new TestSimapi("testSystemTypeConversion"));
+        suite.addTest(new TestSimapi("testImageLimits"));
+        suite.addTest(new TestSimapi("testImageVariants"));
         suite.addTest(new TestSimapi("testCropPointToSize"));
 
+        suite.addTest(new TestSimapi("testProbe"));
         suite.addTest(new TestSimapi("testRead"));
+        suite.addTest(new TestSimapi("testReadMappedFile"));
+        suite.addTest(new TestSimapi("testReadRegion"));
+        suite.addTest(new TestSimapi("testReadResized"));
+        suite.addTest(new TestSimapi("testReadResizedInterlaced"));
+        suite.addTest(new TestSimapi("testReadSubsampled"));
+        suite.addTest(new TestSimapi("testReadWriteInMemory"));
+        suite.addTest(new TestSimapi("testRenderSettingsSnapshot"));
         suite.addTest(new TestSimapi("testWriteGif"));
         suite.addTest(new TestSimapi("testWriteJpegAndPng"));
         suite.addTest(new TestSimapi("testWriteJpegQuality"));
+        suite.addTest(new TestSimapi("testWriterReuse"));
 
         suite.addTest(new TestSimapi("testBadScaleQualityIssue"));
         suite.addTest(new TestSimapi("testBadScaleQualityIssue2"));
         suite.addTest(new TestSimapi("testBadScaleQualityIssue3"));
         suite.addTest(new TestSimapi("testNotSharpEnoughIssue"));
+        suite.addTest(new TestSimapi("testLanczosScale"));
 
         suite.addTest(new TestSimapi("testCrop"));
         suite.addTest(new TestSimapi("testImageCropping"));
 
+        suite.addTest(new TestSimapi("testFilterRunner"));
         suite.addTest(new TestSimapi("testFilters"));
+        suite.addTest(new TestSimapi("testFlatten"));
         suite.addTest(new TestSimapi("testGIFProcessing"));
+        suite.addTest(new TestSimapi("testParallelScale"));
+        suite.addTest(new TestSimapi("testPointFilterChain"));
+        suite.addTest(new TestSimapi("testPyramidScale"));
+        suite.addTest(new TestSimapi("testResampleWeightsCache"));
         suite.addTest(new TestSimapi("testResizeCrop"));
+        suite.addTest(new TestSimapi("testResizeCropPositions"));
         suite.addTest(new TestSimapi("testResizeScale"));
         suite.addTest(new TestSimapi("testResizeScaleFill"));
         suite.addTest(new TestSimapi("testResizeScaleFillSmall"));
         suite.addTest(new TestSimapi("testScaleTransparent"));
         suite.addTest(new TestSimapi("testScalingSpeed"));
+        suite.addTest(new TestSimapi("testScheduler"));
         suite.addTest(new TestSimapi("testScreenShotScaling"));
         suite.addTest(new TestSimapi("testSetupWizardIssue"));
         suite.addTest(new TestSimapi("testSlowScalingIssue"));
@@ -104,6 +166,250 @@ public class TestSimapi extends VisualTestCase {
         return wrapper;
     }
 
+    /**
+     * Tests lowering the render quality under load.<p>
+     *
+     * @throws Exception if the test fails
+     */
+    public void testAdaptiveQuality() throws Exception {
+
+        BufferedImage img = Simapi.read(getClass().getResource("Messdiener_sml.jpg"));
+        AdaptiveQuality adaptive = new AdaptiveQuality(null);
+        adaptive.setLatencyThresholds(1000, 2000);
+
+        final Set<Integer> filtered = Collections.synchronizedSet(new HashSet<Integer>());
+        RenderSettings settings = new RenderSettings(Simapi.RENDER_QUALITY);
+        settings.setAdaptiveQuality(adaptive);
+        settings.addOptionalImageFilter(new RGBImageFilter() {
+
+            @Override
+            public int filterRGB(int x, int y, int rgb) {
+
+                filtered.add(Integer.valueOf(y));
+                return rgb;
+            }
+        });
+        Simapi simapi = new Simapi(settings.createSnapshot());
+
+        // without load the settings are used unchanged
+        simapi.applyFilters(img);
+        assertEquals(img.getHeight(), filtered.size());
+        assertEquals(Simapi.RENDER_QUALITY, adaptive.getLevel());
+        assertEquals(1, adaptive.getCount(Simapi.RENDER_QUALITY));
+
+        // high latencies lower the quality and skip the optional filters
+        for (int i = 0; i < AdaptiveQuality.LATENCY_SAMPLES; i++) {
+            adaptive.addLatency(TimeUnit.MILLISECONDS.toNanos(5000));
+        }
+        filtered.clear();
+        BufferedImage result = simapi.applyFilters(img);
+        assertTrue(filtered.isEmpty());
+        assertEquals(img.getWidth(), result.getWidth());
+        assertEquals(Simapi.RENDER_SPEED, adaptive.getLevel());
+        assertEquals(1, adaptive.getCount(Simapi.RENDER_SPEED));
+        assertNotNull(simapi.scale(img, img.getWidth() / 4, img.getHeight() / 4));
+        assertEquals(2, adaptive.getCount(Simapi.RENDER_SPEED));
+
+        // the quality is raised only once the load has clearly dropped
+        for (int i = 0; i < AdaptiveQuality.LATENCY_SAMPLES; i++) {
+            adaptive.addLatency(TimeUnit.MILLISECONDS.toNanos(1500));
+        }
+        assertEquals(Simapi.RENDER_SPEED, adaptive.selectLevel());
+        for (int i = 0; i < AdaptiveQuality.LATENCY_SAMPLES; i++) {
+            adaptive.addLatency(TimeUnit.MILLISECONDS.toNanos(100));
+        }
+        assertEquals(Simapi.RENDER_QUALITY, adaptive.selectLevel());
+
+        // the lowered settings
+        RenderSettings speed = settings.createAdaptiveSnapshot(Simapi.RENDER_SPEED);
+        assertFalse(speed.isUseBlur());
+        assertNull(speed.getAdaptiveQuality());
+        assertTrue(speed.getImageFilters().isEmpty());
+        assertEquals(
+            RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR,
+            speed.getRenderingHints().get(RenderingHints.KEY_INTERPOLATION));
+        RenderSettings medium = settings.createAdaptiveSnapshot(Simapi.RENDER_MEDIUM);
+        assertTrue(medium.isUseBlur());
+        assertEquals(settings.getBlurFactor() * RenderSettings.ADAPTIVE_BLUR_FACTOR, medium.getBlurFactor(), 0.0);
+        assertEquals(1, settings.getImageFilters().size());
+
+        // the full quality uses the instance itself, the lowered instances are reused for immutable settings
+        AdaptiveQuality reused = new AdaptiveQuality(null);
+        reused.setLatencyThresholds(1000, 2000);
+        RenderSettings reusedSettings = new RenderSettings(Simapi.RENDER_QUALITY);
+        reusedSettings.setAdaptiveQuality(reused);
+        Simapi cached = new Simapi(reusedSettings.createSnapshot());
+        assertSame(cached, cached.getStageProcessor());
+        for (int i = 0; i < AdaptiveQuality.LATENCY_SAMPLES; i++) {
+            reused.addLatency(TimeUnit.MILLISECONDS.toNanos(5000));
+        }
+        Simapi lowered = cached.getStageProcessor();
+        assertNotSame(cached, lowered);
+        assertFalse(lowered.getRenderSettings().isUseBlur());
+        assertSame(lowered, cached.getStageProcessor());
+        Simapi mutable = new Simapi(reusedSettings);
+        assertNotSame(mutable.getStageProcessor(), mutable.getStageProcessor());
+
+        // the queue size of a scheduler is watched as well
+        SimapiScheduler scheduler = new SimapiScheduler(1);
+        try {
+            AdaptiveQuality queued = new AdaptiveQuality(scheduler);
+            assertEquals(Simapi.RENDER_QUALITY, queued.selectLevel());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    /**
+     * Tests the asynchronous image processing pipeline, including cancellation.<p>
+     *
+     * @throws Exception if the test fails
+     */
+    public void testAsync() throws Exception {
+
+        File input = new File(getClass().getResource("Messdiener_sml.jpg").getPath());
+        final byte[] source = Files.readAllBytes(input.toPath());
+        Simapi simapi = new Simapi();
+        byte[] expected = simapi.getBytes(simapi.resize(Simapi.read(source), 200, 150, true), Simapi.TYPE_JPEG);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            SimapiAsync async = new SimapiAsync(simapi, executor);
+            SimapiFuture<byte[]> result = async.processAsync(source, new SimapiAsync.Transformation() {
+
+                public BufferedImage transform(Simapi processor, BufferedImage image) {
+
+                    return processor.resize(image, 200, 150, true);
+                }
+            }, Simapi.TYPE_JPEG);
+            assertTrue(Arrays.equals(expected, result.get()));
+
+            // cancelling the last stage interrupts the running stage and never runs the later stages
+            final CountDownLatch started = new CountDownLatch(1);
+            final CountDownLatch interrupted = new CountDownLatch(1);
+            SimapiFuture<BufferedImage> blocked = async.transformAsync(
+                async.readAsync(source),
+                new SimapiAsync.Transformation() {
+
+                    public BufferedImage transform(Simapi processor, BufferedImage image) throws Exception {
+
+                        started.countDown();
+                        try {
+                            Thread.sleep(60000);
+                        } catch (InterruptedException e) {
+                            interrupted.countDown();
+                            throw e;
+                        }
+                        return image;
+                    }
+                });
+            SimapiFuture<byte[]> encoded = async.encodeAsync(blocked, Simapi.TYPE_JPEG);
+            started.await();
+            assertTrue(encoded.cancel(true));
+            assertTrue(blocked.isCancelled());
+            interrupted.await();
+            try {
+                encoded.get();
+                fail("Cancelled stage must not deliver a result");
+            } catch (CancellationException e) {
+                // expected
+            }
+
+            // failures are passed to the later stages
+            SimapiFuture<byte[]> failed = async.processAsync(new byte[] {1, 2, 3}, null, Simapi.TYPE_JPEG);
+            try {
+                failed.get();
+                fail("Reading an invalid image must fail");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Tests the batch processing of images with a limited pixel budget.<p>
+     *
+     * @throws Exception if the test fails
+     */
+    public void testBatch() throws Exception {
+
+        Simapi simapi = new Simapi();
+        // the budget is smaller than a single decoded image, so the jobs must run one after another
+        SimapiBatch batch = new SimapiBatch(simapi, 4, 500 * 500);
+
+        ImageOperation scale = new ImageOperation() {
+
+            public BufferedImage apply(Simapi processor, BufferedImage image) {
+
+                return processor.resize(image, 300, 200);
+            }
+        };
+        String[] sources = new String[] {"DSCN0754.JPG", "CMYK-p1.jpg", "alkacon.png", "logo_alkacon_150_t.gif"};
+        List<BatchJob> jobs = new ArrayList<BatchJob>();
+        for (String source : sources) {
+            jobs.add(
+                new BatchJob(
+                    getClass().getResource(source),
+                    new ByteArrayOutputStream(),
+                    Simapi.TYPE_PNG,
+                    300,
+                    200,
+                    scale));
+        }
+        List<Future<BatchJob>> results = batch.submitAll(jobs);
+
+        BufferedImage[] images = new BufferedImage[results.size()];
+        for (int i = 0; i < results.size(); i++) {
+            BatchJob job = results.get(i).get();
+            images[i] = Simapi.read(((ByteArrayOutputStream)job.getDestination()).toByteArray());
+            assertEquals(300, images[i].getWidth());
+            assertEquals(200, images[i].getHeight());
+        }
+        batch.shutdown();
+        assertEquals(batch.getMaxPixels(), batch.getAvailablePixels());
+
+        checkImage(images, "Are the batch processed images scaled correctly?");
+    }
+
+    /**
+     * Tests getting the byte contents of an image as byte buffer and writing it to a channel.<p>
+     *
+     * @throws Exception if the test fails
+     */
+    public void testByteBuffer() throws Exception {
+
+        Simapi simapi = new Simapi();
+        BufferedImage img = Simapi.read(getClass().getResource("alkacon.png"));
+        for (String type : new String[] {Simapi.TYPE_JPEG, Simapi.TYPE_PNG}) {
+            byte[] bytes = simapi.getBytes(img, type);
+
+            ByteBuffer buffer = simapi.getByteBuffer(img, type);
+            assertTrue(buffer.isReadOnly());
+            assertEquals(0, buffer.position());
+            byte[] content = new byte[buffer.remaining()];
+            buffer.get(content);
+            assertTrue(Arrays.equals(bytes, content));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            simapi.write(img, Channels.newChannel(out), type);
+            assertTrue(Arrays.equals(bytes, out.toByteArray()));
+        }
+
+        // the presized output buffer of a large image must not be as large as the uncompressed image
+        BufferedImage large = new BufferedImage(4000, 3000, BufferedImage.TYPE_BYTE_BINARY);
+        for (String type : new String[] {Simapi.TYPE_BMP, Simapi.TYPE_PNG, Simapi.TYPE_TIFF}) {
+            assertTrue(type, simapi.getEstimatedSize(large, type) <= (16 * 1024 * 1024));
+        }
+
+        // the JPEG estimate of a photo is calibrated low, so that the buffer grows at most once
+        BufferedImage photo = Simapi.read(getClass().getResource("meerbild.jpg"));
+        int size = simapi.getBytes(photo, Simapi.TYPE_JPEG).length;
+        int estimate = simapi.getEstimatedSize(photo, Simapi.TYPE_JPEG);
+        assertTrue("Estimate " + estimate + " for " + size, (estimate <= size) && ((estimate * 2) >= size));
+    }
+
     /**
      * Tests "bad quality" issue encountered when scaling large images to a very small size.<p>
      *
@@ -247,6 +553,113 @@ public class TestSimapi extends VisualTestCase {
             "Has the CMYK image been written to disk as JPEG in a scaled version?");
     }
 
+    /**
+     * Tests aborting image operations with a cancellation token.<p>
+     *
+     * @throws Exception if the test fails
+     */
+    public void testCancellationToken() throws Exception {
+
+        BufferedImage img = Simapi.read(getClass().getResource("Messdiener_sml.jpg"));
+        final Simapi simapi = new Simapi(new RenderSettings(Simapi.RENDER_QUALITY));
+
+        // an expired deadline aborts the operation before any work is done
+        CancellationToken previous = CancellationToken.setCurrent(new CancellationToken(0));
+        try {
+            simapi.resize(img, img.getWidth() / 3, img.getHeight() / 3, true);
+            fail("Expired deadline must abort the operation");
+        } catch (ImageCancelledException e) {
+            assertTrue(e.isDeadlineExpired());
+        } finally {
+            CancellationToken.setCurrent(previous);
+        }
+
+        // cancelling the token aborts the operation between two rows
+        final CancellationToken token = new CancellationToken();
+        final Set<Integer> rows = Collections.synchronizedSet(new HashSet<Integer>());
+        previous = CancellationToken.setCurrent(token);
+        try {
+            simapi.applyFilter(img, new RGBImageFilter() {
+
+                @Override
+                public int filterRGB(int x, int y, int rgb) {
+
+                    rows.add(Integer.valueOf(y));
+                    token.cancel();
+                    return rgb;
+                }
+            });
+            fail("Cancelled token must abort the operation");
+        } catch (ImageCancelledException e) {
+            assertFalse(e.isDeadlineExpired());
+            assertTrue(rows.size() < img.getHeight());
+        } finally {
+            CancellationToken.setCurrent(previous);
+        }
+
+        // the token is passed to the threads of a scheduler
+        SimapiScheduler scheduler = new SimapiScheduler(1);
+        try {
+            RenderSettings settings = new RenderSettings(Simapi.RENDER_QUALITY);
+            settings.setScheduler(scheduler);
+            Simapi scheduled = new Simapi(settings);
+            previous = CancellationToken.setCurrent(new CancellationToken(0));
+            try {
+                scheduled.scale(img, img.getWidth() / 3, img.getHeight() / 3);
+                fail("Expired deadline must abort the operation on the scheduler thread");
+            } catch (ImageCancelledException e) {
+                assertTrue(e.isDeadlineExpired());
+            } finally {
+                CancellationToken.setCurrent(previous);
+            }
+            assertNotNull(scheduled.scale(img, img.getWidth() / 3, img.getHeight() / 3));
+        } finally {
+            scheduler.shutdown();
+        }
+
+        // reading and writing is aborted as well
+        byte[] bytes = simapi.getBytes(img, Simapi.TYPE_JPEG);
+        previous = CancellationToken.setCurrent(token);
+        try {
+            Simapi.read(bytes);
+            fail("Cancelled token must abort reading");
+        } catch (ImageCancelledException e) {
+            // expected
+        } finally {
+            CancellationToken.setCurrent(previous);
+        }
+
+        // the token is passed to the threads that encode image variants
+        RenderSettings parallelSettings = new RenderSettings(Simapi.RENDER_QUALITY);
+        parallelSettings.setParallelism(2);
+        Simapi parallel = new Simapi(parallelSettings);
+        final CancellationToken variantToken = new CancellationToken();
+        ImageVariant variant = new ImageVariant(100, 0, Simapi.TYPE_PNG) {
+
+            @Override
+            public String getType() {
+
+                // cancel once the variant is scaled, right before its encoder is started
+                variantToken.cancel();
+                return super.getType();
+            }
+        };
+        previous = CancellationToken.setCurrent(variantToken);
+        try {
+            parallel.getVariantBytes(bytes, new ImageVariant[] {variant});
+            fail("Cancelled token must abort encoding the variants");
+        } catch (ImageCancelledException e) {
+            // expected
+        } finally {
+            CancellationToken.setCurrent(previous);
+        }
+
+        // without a token the operations work as before
+        BufferedImage result = simapi.resize(img, img.getWidth() / 3, img.getHeight() / 3, true);
+        assertEquals(img.getWidth() / 3, result.getWidth());
+        assertTrue(Arrays.equals(bytes, simapi.getBytes(img, Simapi.TYPE_JPEG)));
+    }
+
     /**
      * Tests cropping an image.<p>
      *
@@ -330,6 +743,41 @@ public class TestSimapi extends VisualTestCase {
             "Has it been cropped around the point and downscaled?");
     }
 
+    /**
+     * Tests that filters are applied directly on the image pixels.<p>
+     *
+     * @throws Exception if the test fails
+     */
+    public void testFilterRunner() throws Exception {
+
+        Simapi simapi = new Simapi();
+        BufferedImage img = Simapi.read(getClass().getResource("Messdiener_sml.jpg"));
+        int[] pixels = img.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth());
+
+        BufferedImage img1 = simapi.applyFilter(img, new GrayscaleFilter());
+        assertEquals(img.getWidth(), img1.getWidth());
+        int rgb = img1.getRGB(100, 100);
+        assertEquals(rgb & 0xff, (rgb >> 8) & 0xff);
+        assertEquals(rgb & 0xff, (rgb >> 16) & 0xff);
+
+        BufferedImage img2 = simapi.applyFilter(img, new FlipFilter(FlipFilter.FLIP_90CW));
+        assertEquals(img.getHeight(), img2.getWidth());
+        assertEquals(img.getWidth(), img2.getHeight());
+        assertEquals(img.getRGB(0, 0), img2.getRGB(img.getHeight() - 1, 0));
+        // the pixels of an opaque image stay opaque
+        assertEquals(BufferedImage.TYPE_INT_RGB, img2.getType());
+
+        // these filters expect the complete image in a single call
+        BufferedImage img3 = simapi.applyFilter(img, new BorderFilter());
+        BufferedImage img4 = simapi.applyFilter(img, new OffsetFilter());
+        assertEquals(img.getRGB(10, 10), img3.getRGB(10, 10));
+        assertEquals(img.getRGB(10, 10), img4.getRGB(10, 10));
+
+        // the source image must not be changed
+        assertTrue(Arrays.equals(pixels, img.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth())));
+        checkImage(new BufferedImage[] {img1, img2}, "Are the images gray and rotated?");
+    }
+
     /**
      * Tests writing an image as JPEG with different quality settings.<p>
      *
@@ -456,6 +904,47 @@ public class TestSimapi extends VisualTestCase {
         assertEquals(read.getHeight(), combined.getHeight());
     }
 
+    /**
+     * Tests that flattening transparent images gives the same result as drawing them over the background color.<p>
+     *
+     * @throws Exception if the test fails
+     */
+    public void testFlatten() throws Exception {
+
+        BufferedImage img = Simapi.ensureImageIsSystemType(
+            ImageIO.read(getClass().getResource("logo_alkacon_160_t.png")),
+            true);
+        assertEquals(BufferedImage.TYPE_INT_ARGB, img.getType());
+        Color[] colors = new Color[] {Color.WHITE, new Color(30, 200, 77), new Color(30, 200, 77, 128)};
+        for (Color color : colors) {
+            BufferedImage img1 = ImageKernels.flatten(img, color);
+            BufferedImage img2 = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = img2.createGraphics();
+            g.setColor(color);
+            g.fillRect(0, 0, img2.getWidth(), img2.getHeight());
+            g.drawImage(img, 0, 0, null);
+            g.dispose();
+            assertEquals(BufferedImage.TYPE_INT_RGB, img1.getType());
+            assertTrue(
+                color.toString(),
+                Arrays.equals(
+                    img1.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth()),
+                    img2.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth())));
+        }
+
+        // opaque images share the pixel data
+        BufferedImage opaque = new BufferedImage(200, 100, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = opaque.createGraphics();
+        g.setColor(Color.RED);
+        g.fillRect(0, 0, 200, 100);
+        g.dispose();
+        BufferedImage img3 = ImageKernels.flatten(opaque, Color.WHITE);
+        assertEquals(BufferedImage.TYPE_INT_RGB, img3.getType());
+        assertSame(opaque.getRaster().getDataBuffer(), img3.getRaster().getDataBuffer());
+        assertEquals(Color.RED.getRGB(), img3.getRGB(50, 50));
+        checkImage(new BufferedImage[] {ImageKernels.flatten(img, Color.WHITE)}, "Is the logo shown on white background?");
+    }
+
     /**
      * Tests an issue with JDK 6 and GIF image processing.<p>
      *
@@ -564,6 +1053,350 @@ public class TestSimapi extends VisualTestCase {
         checkImage(new BufferedImage[] {imgA, imgB, imgC, imgD, imgE}, "Are the images sharp enough?");
     }
 
+    /**
+     * Tests the image limits that are checked from the image header before decoding.<p>
+     *
+     * @throws Exception if the test fails
+     */
+    public void testImageLimits() throws Exception {
+
+        byte[] source = Simapi.getImageBytes(Simapi.read(getClass().getResource("DSCN0754.JPG")), Simapi.TYPE_JPEG);
+        RenderSettings previous = Simapi.getStaticRenderSettings();
+        assertTrue(previous.isImmutable());
+        try {
+            previous.setMaxImagePixels(1000 * 1000);
+            fail("Static render settings must not be changed in place");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            // the image is 3264 x 2448 pixel
+            RenderSettings settings = new RenderSettings(previous);
+            settings.setMaxImagePixels(1000 * 1000);
+            Simapi.setStaticRenderSettings(settings);
+            try {
+                Simapi.read(source);
+                fail("Image limit not enforced");
+            } catch (ImageLimitException e) {
+                assertEquals(3264, e.getWidth());
+                assertEquals(2448, e.getHeight());
+            }
+            // a subsampled read for a small target size fits into the limit
+            BufferedImage img1 = Simapi.read(source, 300, 0);
+            assertTrue((img1.getWidth() * img1.getHeight()) <= (1000 * 1000));
+
+            // with subsampling enabled, large images are reduced to fit into the limit
+            settings.setSubsampleLargeImages(true);
+            assertFalse(Simapi.getStaticRenderSettings().isSubsampleLargeImages());
+            Simapi.setStaticRenderSettings(settings);
+            BufferedImage img2 = Simapi.read(source);
+            assertTrue((img2.getWidth() * img2.getHeight()) <= (1000 * 1000));
+            assertEquals(3264 / 3, img2.getWidth());
+        } finally {
+            Simapi.setStaticRenderSettings(previous);
+        }
+        assertSame(previous, Simapi.getStaticRenderSettings());
+
+        // check the size and memory limits of an instance
+        RenderSettings instanceSettings = new RenderSettings(Simapi.RENDER_QUALITY);
+        instanceSettings.setMaxImageSize(2000);
+        Simapi simapi = new Simapi(instanceSettings);
+        ImageVariant[] variants = new ImageVariant[] {new ImageVariant(2500, 0, Simapi.TYPE_JPEG)};
+        try {
+            simapi.getVariantBytes(source, variants);
+            fail("Image size limit not enforced");
+        } catch (ImageLimitException e) {
+            // expected
+        }
+        instanceSettings.setMaxImageSize(0);
+        instanceSettings.setMaxImageMemory(1024 * 1024);
+        instanceSettings.setSubsampleLargeImages(true);
+        BufferedImage img3 = Simapi.read(simapi.getVariantBytes(source, variants)[0]);
+        assertTrue((img3.getWidth() * img3.getHeight() * 8L) <= (1024 * 1024));
+    }
+
+    /**
+     * Tests creating several image variants from a single source.<p>
+     *
+     * @throws Exception if the test fails
+     */
+    public void testImageVariants() throws Exception {
+
+        RenderSettings settings = new RenderSettings(Simapi.RENDER_QUALITY);
+        settings.setParallelism(4);
+        Simapi simapi = new Simapi(settings);
+
+        byte[] source = simapi.getBytes(Simapi.read(getClass().getResource("DSCN0754.JPG")), Simapi.TYPE_JPEG);
+        ImageVariant[] variants = new ImageVariant[] {
+            new ImageVariant(320, 0, Simapi.TYPE_JPEG),
+            new ImageVariant(1200, 0, Simapi.TYPE_JPEG),
+            new ImageVariant(0, 100, Simapi.TYPE_PNG),
+            new ImageVariant(5000, 5000, Simapi.TYPE_JPEG)};
+        byte[][] result = simapi.getVariantBytes(source, variants);
+
+        BufferedImage img1 = Simapi.read(result[0]);
+        BufferedImage img2 = Simapi.read(result[1]);
+        BufferedImage img3 = Simapi.read(result[2]);
+        BufferedImage img4 = Simapi.read(result[3]);
+        assertEquals(320, img1.getWidth());
+        assertEquals(1200, img2.getWidth());
+        assertEquals(100, img3.getHeight());
+        // images must not be enlarged
+        assertEquals(3264, img4.getWidth());
+
+        // a failing variant must not leave the encoders of the other variants running
+        final AtomicInteger writing = new AtomicInteger();
+        final AtomicInteger lateWrites = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch returned = new CountDownLatch(1);
+        OutputStream slow = new OutputStream() {
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+
+                writing.incrementAndGet();
+                try {
+                    if (returned.getCount() == 0) {
+                        lateWrites.incrementAndGet();
+                    }
+                    started.countDown();
+                    // block the encoder until it is cancelled
+                    CancellationToken token = CancellationToken.getCurrent();
+                    for (int i = 0; (i < 1000) && !token.isCancelled(); i++) {
+                        Thread.sleep(10);
+                    }
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                } finally {
+                    writing.decrementAndGet();
+                }
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+
+                write(new byte[] {(byte)b}, 0, 1);
+            }
+        };
+        ImageVariant failing = new ImageVariant(100, 0, Simapi.TYPE_PNG) {
+
+            @Override
+            public String getType() {
+
+                try {
+                    // fail while the encoder of the larger variant is running
+                    started.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IllegalStateException("variant failed");
+            }
+        };
+        try {
+            simapi.writeVariants(
+                new ByteArrayInputStream(source),
+                new ImageVariant[] {new ImageVariant(3000, 0, Simapi.TYPE_JPEG), failing},
+                new OutputStream[] {slow, new ByteArrayOutputStream()});
+            fail("Failing variant must fail writing the variants");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        returned.countDown();
+        assertEquals(0, writing.get());
+        Thread.sleep(200);
+        assertEquals(0, lateWrites.get());
+
+        // variants created on the only compute thread of a scheduler must not wait for another compute thread
+        SimapiScheduler scheduler = new SimapiScheduler(1);
+        try {
+            settings.setScheduler(scheduler);
+            final Simapi scheduled = new Simapi(settings);
+            final byte[] small = simapi.getBytes(img1, Simapi.TYPE_JPEG);
+            Future<byte[][]> future = scheduler.submit(new Callable<byte[][]>() {
+
+                public byte[][] call() throws Exception {
+
+                    return scheduled.getVariantBytes(
+                        small,
+                        new ImageVariant[] {
+                            new ImageVariant(200, 0, Simapi.TYPE_JPEG),
+                            new ImageVariant(100, 0, Simapi.TYPE_PNG)});
+                }
+            }, SimapiScheduler.PRIORITY_INTERACTIVE);
+            assertEquals(100, Simapi.read(future.get(60, TimeUnit.SECONDS)[1]).getWidth());
+        } finally {
+            scheduler.shutdown();
+        }
+
+        checkImage(new BufferedImage[] {img1, img3}, "Do the image variants look ok?");
+    }
+
+    /**
+     * Tests scaling with the Lanczos resample filter.<p>
+     *
+     * @throws Exception if the test fails
+     */
+    public void testLanczosScale() throws Exception {
+
+        RenderSettings settings = new RenderSettings(Simapi.RENDER_LANCZOS);
+        settings.setParallelism(4);
+        Simapi lanczos = new Simapi(settings);
+        Simapi simapi = new Simapi();
+
+        BufferedImage img = Simapi.read(getClass().getResource("DSCN0754.JPG"));
+        BufferedImage img1 = simapi.resize(img, 400, 300);
+        BufferedImage img2 = lanczos.resize(img, 400, 300);
+        assertEquals(400, img2.getWidth());
+        assertEquals(300, img2.getHeight());
+
+        BufferedImage logo = Simapi.read(getClass().getResource("logo_alkacon_160_t.png"));
+        BufferedImage img3 = lanczos.resize(logo, 80, 30, true);
+        assertTrue(img3.getColorModel().hasAlpha());
+
+        checkImage(new BufferedImage[] {img1, img2, img3}, "Are the Lanczos scaled images sharp and without artifacts?");
+    }
+
+    /**
+     * Tests that parallel scaling gives the same result as single threaded scaling.<p>
+     *
+     * @throws Exception if the test fails
+     */
+    public void testParallelScale() throws Exception {
+
+        RenderSettings settings = new RenderSettings(Simapi.RENDER_QUALITY);
+        settings.setParallelism(4);
+        Simapi parallel = new Simapi(settings);
+        Simapi simapi = new Simapi();
+
+        BufferedImage img = Simapi.read(getClass().getResource("DSCN0754.JPG"));
+        BufferedImage img1 = simapi.scale(img, 1000, 750);
+        BufferedImage img2 = parallel.scale(img, 1000, 750);
+
+        for (int y = 0; y < img1.getHeight(); y++) {
+            for (int x = 0; x < img1.getWidth(); x++) {
+                int p1 = img1.getRGB(x, y);
+                int p2 = img2.getRGB(x, y);
+                for (int shift = 0; shift < 32; shift += 8) {
+                    // allow rounding differences
+                    assertTrue(Math.abs(((p1 >> shift) & 0xff) - ((p2 >> shift) & 0xff)) <= 1);
+                }
+            }
+        }
+
+        checkImage(new BufferedImage[] {img1, img2}, "Are both images identical?");
+    }
+
+    /**
+     * Tests that consecutive point filters are applied in a single pass with the same result.<p>
+     *
+     * @throws Exception if the test fails
+     */
+    public void testPointFilterChain() throws Exception {
+
+        BufferedImage img = Simapi.read(getClass().getResource("Messdiener_sml.jpg"));
+        ContrastFilter contrast = new ContrastFilter();
+        contrast.setGain(0.7f);
+        contrast.setBias(0.6f);
+        GammaFilter gamma = new GammaFilter(1.4f);
+        GrayscaleFilter gray = new GrayscaleFilter();
+
+        RenderSettings settings = new RenderSettings(Simapi.RENDER_QUALITY);
+        settings.addImageFilter(contrast);
+        settings.addImageFilter(gamma);
+        settings.addImageFilter(gray);
+        settings.addImageFilter(new FlipFilter(FlipFilter.FLIP_H));
+        settings.addImageFilter(contrast);
+        List<ImageFilter> fused = PointFilterChain.fuse(settings.getImageFilters());
+        assertEquals(3, fused.size());
+        assertTrue(fused.get(0) instanceof PointFilterChain);
+        assertEquals(3, ((PointFilterChain)fused.get(0)).getFilters().size());
+        assertSame(contrast, fused.get(2));
+
+        // applying the filters one after the other must give the same result
+        Simapi simapi = new Simapi();
+        BufferedImage expected = img;
+        for (ImageFilter filter : settings.getImageFilters()) {
+            expected = simapi.applyFilter(expected, filter);
+        }
+        BufferedImage result = new Simapi(settings).applyFilters(img);
+        int w = img.getWidth();
+        int h = img.getHeight();
+        assertTrue(
+            Arrays.equals(expected.getRGB(0, 0, w, h, null, 0, w), result.getRGB(0, 0, w, h, null, 0, w)));
+        checkImage(new BufferedImage[] {img, result}, "Is the image flipped, gray and with changed contrast?");
+    }
+
+    /**
+     * Tests reading the image information from the image header.<p>
+     *
+     * @throws Exception if the test fails
+     */
+    public void testProbe() throws Exception {
+
+        String[] names = new String[] {"DSCN0754.JPG", "CMYK-p1.jpg", "113_org.jpg", "alkacon.png", "verm.gif"};
+        for (String name : names) {
+            ImageInfo info = Simapi.probe(getClass().getResource(name));
+            BufferedImage img = Simapi.read(getClass().getResource(name));
+            assertEquals(img.getWidth(), info.getWidth());
+            assertEquals(img.getHeight(), info.getHeight());
+        }
+
+        ImageInfo info = Simapi.probe(getClass().getResource("CMYK-p1.jpg"));
+        assertEquals(Simapi.TYPE_JPEG, info.getFormat());
+        assertEquals(4, info.getNumComponents());
+        assertEquals("YCCK", info.getColorSpace());
+        assertTrue(info.hasIccProfile());
+        assertEquals(1, info.getOrientation());
+
+        info = Simapi.probe(getClass().getResource("113_org.jpg"));
+        assertEquals(1, info.getNumComponents());
+        assertEquals("Gray", info.getColorSpace());
+
+        info = Simapi.probe(getClass().getResource("logo_alkacon_160_t.png"));
+        assertEquals(Simapi.TYPE_PNG, info.getFormat());
+        assertEquals(4, info.getNumComponents());
+        assertTrue(info.hasAlpha());
+        assertFalse(info.hasIccProfile());
+    }
+
+    /**
+     * Tests downscaling with a pyramid of 2x2 box averages.<p>
+     *
+     * @throws Exception if the test fails
+     */
+    public void testPyramidScale() throws Exception {
+
+        Simapi pyramid = new Simapi(new RenderSettings(Simapi.RENDER_PYRAMID));
+        Simapi simapi = new Simapi();
+
+        BufferedImage img = Simapi.read(getClass().getResource("DSCN0754.JPG"));
+        BufferedImage img1 = simapi.resize(img, 300, 225, true);
+        BufferedImage img2 = pyramid.resize(img, 300, 225, true);
+        assertEquals(300, img2.getWidth());
+        assertEquals(225, img2.getHeight());
+
+        BufferedImage logo = Simapi.read(getClass().getResource("logo_alkacon_160_t.png"));
+        BufferedImage img3 = pyramid.resize(logo, 40, 20, true);
+        assertTrue(img3.getColorModel().hasAlpha());
+
+        // a strong reduction along only one axis must be smoothed as well
+        BufferedImage stripes = new BufferedImage(4000, 400, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < stripes.getWidth(); x += 2) {
+            for (int y = 0; y < stripes.getHeight(); y++) {
+                stripes.setRGB(x, y, 0xffffff);
+            }
+        }
+        BufferedImage img4 = pyramid.scale(stripes, 190 / 4000f, 300 / 400f, 190, 300);
+        assertEquals(190, img4.getWidth());
+        assertEquals(300, img4.getHeight());
+        for (int x = 0; x < img4.getWidth(); x++) {
+            int gray = img4.getRGB(x, 150) & 0xff;
+            assertTrue("Column " + x + " is aliased: " + gray, (gray > 100) && (gray < 156));
+        }
+
+        checkImage(new BufferedImage[] {img1, img2, img3}, "Do the pyramid scaled images look as good as the first one?");
+    }
+
     /**
      * Tests reading an image.<p>
      *
@@ -578,6 +1411,337 @@ public class TestSimapi extends VisualTestCase {
         checkImage(new BufferedImage[] {img1, img2, img3}, "Do you see 3 images?");
     }
 
+    /**
+     * Tests reading a large image file through a memory mapped buffer.<p>
+     *
+     * @throws Exception if the test fails
+     */
+    public void testReadMappedFile() throws Exception {
+
+        File file = new File(getClass().getResource("DSCN0754.JPG").getPath());
+        assertTrue(file.length() >= Simapi.MAPPED_FILE_MIN_SIZE);
+        ImageInputStream stream = Simapi.createImageInputStream(file);
+        try {
+            assertTrue(stream instanceof MappedFileImageInputStream);
+        } finally {
+            stream.close();
+        }
+
+        BufferedImage img1 = Simapi.read(file);
+        BufferedImage img2 = Simapi.read(Files.readAllBytes(file.toPath()));
+        assertEquals(img2.getWidth(), img1.getWidth());
+        assertEquals(img2.getHeight(), img1.getHeight());
+        for (int y = 0; y < img1.getHeight(); y += 97) {
+            for (int x = 0; x < img1.getWidth(); x += 89) {
+                assertEquals(img2.getRGB(x, y), img1.getRGB(x, y));
+            }
+        }
+
+        // closing the stream unmaps the file, so it can be deleted and is no longer readable from the stream
+        File copy = File.createTempFile("simapi", ".jpg");
+        Files.copy(file.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        stream = new MappedFileImageInputStream(copy);
+        try {
+            assertEquals(0xff, stream.read());
+        } finally {
+            stream.close();
+        }
+        try {
+            stream.read();
+            fail("Reading from a closed stream must fail");
+        } catch (IOException e) {
+            // expected
+        }
+        assertTrue(copy.delete());
+    }
+
+    /**
+     * Tests reading only a region of an image.<p>
+     *
+     * @throws Exception if the test fails
+     */
+    public void testReadRegion() throws Exception {
+
+        File input = new File(getClass().getResource("DSCN0754.JPG").getPath());
+        BufferedImage full = Simapi.read(input);
+        BufferedImage img1 = Simapi.readRegion(input, 100, 200, 600, 400);
+        BufferedImage img2 = full.getSubimage(100, 200, 600, 400);
+        BufferedImage img3 = Simapi.readRegion(input, -100, -100, 600, 400);
+
+        assertEquals(600, img1.getWidth());
+        assertEquals(400, img1.getHeight());
+        assertEquals(600, img3.getWidth());
+        assertEquals(400, img3.getHeight());
+        for (int y = 0; y < img1.getHeight(); y++) {
+            for (int x = 0; x < img1.getWidth(); x++) {
+                assertEquals(img2.getRGB(x, y), img1.getRGB(x, y));
+            }
+        }
+
+        checkImage(new BufferedImage[] {img1, img2, img3}, "Are the first two images identical, the third enlarged?");
+    }
+
+    /**
+     * Tests that reading a resized image strip by strip gives the same result as reading and scaling the image.<p>
+     *
+     * @throws Exception if the test fails
+     */
+    public void testReadResized() throws Exception {
+
+        Simapi simapi = new Simapi();
+
+        // the size requires an odd subsampling factor of 3, and the subsampled height of 701 rows
+        // is not a multiple of the strip height
+        int width = 3000;
+        int height = 2101;
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int red = (x * 255) / width;
+                int green = (y * 255) / height;
+                int blue = (((x / 300) + (y / 300)) % 2) == 0 ? 40 : 200;
+                img.setRGB(x, y, (red << 16) | (green << 8) | blue);
+            }
+        }
+        byte[] bytes = simapi.getBytes(img, Simapi.TYPE_PNG);
+        assertEquals(3, Simapi.getSubsampling(width, height, 500, 350));
+        assertTrue(((((height + 2) / 3) % Simapi.STREAMING_STRIP_ROWS) != 0));
+
+        BufferedImage result = Simapi.readResized(new ByteArrayInputStream(bytes), 500, 350);
+        assertEquals(500, result.getWidth());
+        assertEquals(350, result.getHeight());
+
+        BufferedImage expected = simapi.scale(Simapi.read(bytes), 500 / (float)width, 350 / (float)height, 500, 350);
+        long total = 0;
+        for (int y = 0; y < 350; y++) {
+            for (int x = 0; x < 500; x++) {
+                int rgb1 = expected.getRGB(x, y);
+                int rgb2 = result.getRGB(x, y);
+                for (int shift = 0; shift < 24; shift += 8) {
+                    int diff = Math.abs(((rgb1 >> shift) & 0xff) - ((rgb2 >> shift) & 0xff));
+                    // only the edges of the blue blocks may differ by more than rounding
+                    assertTrue("Pixel " + x + "," + y + " differs by " + diff, (diff < 8) || (shift == 0));
+                    total += diff;
+                }
+            }
+        }
+        assertTrue("Average difference " + (total / (500 * 350 * 3.0)), (total / (500 * 350 * 3.0)) < 1.0);
+    }
+
+    /**
+     * Tests reading resized progressive JPEG and interlaced PNG images, which are not decoded from top to bottom.<p>
+     *
+     * @throws Exception if the test fails
+     */
+    public void testReadResizedInterlaced() throws Exception {
+
+        Simapi simapi = new Simapi();
+
+        int width = 1200;
+        int height = 900;
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int red = (x * 255) / width;
+                int green = (y * 255) / height;
+                int blue = (((x / 100) + (y / 100)) % 2) == 0 ? 40 : 200;
+                img.setRGB(x, y, (red << 16) | (green << 8) | blue);
+            }
+        }
+
+        for (String type : new String[] {Simapi.TYPE_JPEG, Simapi.TYPE_PNG}) {
+            // write the image progressive, that is interlaced for PNG
+            ImageWriter writer = ImageIO.getImageWritersByFormatName(type).next();
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageOutputStream stream = ImageIO.createImageOutputStream(out);
+            try {
+                writer.setOutput(stream);
+                writer.write(null, new IIOImage(img, null, null), param);
+            } finally {
+                stream.close();
+                writer.dispose();
+            }
+            byte[] bytes = out.toByteArray();
+
+            BufferedImage result = Simapi.readResized(new ByteArrayInputStream(bytes), 400, 300);
+            assertEquals(400, result.getWidth());
+            assertEquals(300, result.getHeight());
+
+            BufferedImage expected = simapi.scale(Simapi.read(bytes), 400 / (float)width, 300 / (float)height, 400, 300);
+            long total = 0;
+            for (int y = 0; y < 300; y++) {
+                for (int x = 0; x < 400; x++) {
+                    int rgb1 = expected.getRGB(x, y);
+                    int rgb2 = result.getRGB(x, y);
+                    for (int shift = 0; shift < 24; shift += 8) {
+                        total += Math.abs(((rgb1 >> shift) & 0xff) - ((rgb2 >> shift) & 0xff));
+                    }
+                }
+            }
+            double average = total / (400 * 300 * 3.0);
+            assertTrue(type + " average difference " + average, average < 1.5);
+        }
+    }
+
+    /**
+     * Tests reading images with decode time subsampling for a known target size.<p>
+     *
+     * @throws Exception if the test fails
+     */
+    public void testReadSubsampled() throws Exception {
+
+        Simapi simapi = new Simapi();
+
+        BufferedImage img1 = Simapi.read(getClass().getResource("DSCN0754.JPG"), 300, 225);
+        BufferedImage img2 = Simapi.read(getClass().getResource("CMYK-p1.jpg"), 200, 0);
+        BufferedImage img3 = Simapi.read(getClass().getResource("screen_1280.png"), 300, 0);
+
+        // the subsampled images must be smaller than the originals, but large enough for the target size
+        assertTrue(img1.getWidth() < 3264);
+        assertTrue(img1.getWidth() >= (300 * Simapi.SUBSAMPLING_MIN_RATIO));
+        assertTrue(img2.getWidth() >= (200 * Simapi.SUBSAMPLING_MIN_RATIO));
+        assertTrue(img3.getWidth() >= (300 * Simapi.SUBSAMPLING_MIN_RATIO));
+
+        img1 = simapi.resize(img1, 300, 225, true);
+        img2 = simapi.resize(img2, 200, 300, true);
+        img3 = simapi.resize(img3, 300, 240, true);
+
+        checkImage(new BufferedImage[] {img1, img2, img3}, "Do the subsampled images look ok?");
+    }
+
+    /**
+     * Tests that reading and writing in memory images does not create temporary cache files.<p>
+     *
+     * @throws Exception if the test fails
+     */
+    public void testReadWriteInMemory() throws Exception {
+
+        boolean useCache = ImageIO.getUseCache();
+        try {
+            ImageIO.setUseCache(true);
+
+            Simapi simapi = new Simapi();
+            BufferedImage img = Simapi.read(getClass().getResource("alkacon.png"));
+            for (String type : new String[] {Simapi.TYPE_PNG, Simapi.TYPE_JPEG, Simapi.TYPE_GIF}) {
+                byte[] bytes = simapi.getBytes(img, type);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                simapi.write(img, out, type);
+                assertTrue(Arrays.equals(bytes, out.toByteArray()));
+
+                BufferedImage read = Simapi.read(bytes);
+                assertEquals(img.getWidth(), read.getWidth());
+                read = Simapi.read(new ByteArrayInputStream(bytes), 100, 0);
+                assertTrue(read.getWidth() >= 100);
+            }
+
+            // in memory sources and destinations must never use a cache file
+            assertFalse(Simapi.createImageInputStream(new byte[16]).isCachedFile());
+            assertFalse(Simapi.createImageInputStream(new ByteArrayInputStream(new byte[16])).isCachedFile());
+            assertFalse(Simapi.createImageOutputStream(new ByteArrayOutputStream()).isCachedFile());
+        } finally {
+            ImageIO.setUseCache(useCache);
+        }
+    }
+
+    /**
+     * Tests that immutable render settings snapshots can be shared by concurrent threads.<p>
+     *
+     * @throws Exception if the test fails
+     */
+    public void testRenderSettingsSnapshot() throws Exception {
+
+        RenderSettings settings = new RenderSettings(Simapi.RENDER_QUALITY);
+        settings.setCompressionQuality(0.8f);
+        settings.addImageFilter(new GrayscaleFilter());
+        RenderSettings snapshot = settings.createSnapshot();
+        assertTrue(snapshot.isImmutable());
+        assertFalse(settings.isImmutable());
+        assertSame(snapshot, snapshot.createSnapshot());
+        assertEquals(0.8f, snapshot.getCompressionQuality(), 0f);
+        assertEquals(1, snapshot.getImageFilters().size());
+        try {
+            snapshot.setCompressionQuality(0.5f);
+            fail("Snapshot must be immutable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            snapshot.addImageFilter(new GrayscaleFilter());
+            fail("Snapshot must be immutable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        // changing the original settings or a copy does not change the snapshot
+        settings.setCompressionQuality(0.5f);
+        RenderSettings copy = new RenderSettings(snapshot);
+        copy.addImageFilter(new GrayscaleFilter());
+        assertEquals(0.8f, snapshot.getCompressionQuality(), 0f);
+        assertEquals(1, snapshot.getImageFilters().size());
+        assertEquals(2, copy.getImageFilters().size());
+
+        // a single instance is used by many threads at the same time
+        final Simapi simapi = new Simapi(snapshot);
+        final BufferedImage img = Simapi.read(getClass().getResource("Messdiener_sml.jpg"));
+        Thread.currentThread().setPriority(Thread.NORM_PRIORITY);
+        final byte[] expected = simapi.getBytes(simapi.applyFilters(simapi.resize(img, 200, 150)), Simapi.TYPE_JPEG);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<byte[]>> results = new ArrayList<Future<byte[]>>();
+            for (int i = 0; i < 16; i++) {
+                results.add(executor.submit(new Callable<byte[]>() {
+
+                    public byte[] call() throws Exception {
+
+                        return simapi.getBytes(simapi.applyFilters(simapi.resize(img, 200, 150)), Simapi.TYPE_JPEG);
+                    }
+                }));
+            }
+            for (Future<byte[]> result : results) {
+                assertTrue(Arrays.equals(expected, result.get()));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        // the thread priority is restored after the image operations
+        assertEquals(Thread.NORM_PRIORITY, Thread.currentThread().getPriority());
+    }
+
+    /**
+     * Tests the cache of the resample filter weights.<p>
+     *
+     * @throws Exception if the test fails
+     */
+    public void testResampleWeightsCache() throws Exception {
+
+        BufferedImage img = Simapi.read(getClass().getResource("Messdiener_sml.jpg"));
+        assertEquals(BufferedImage.TYPE_INT_RGB, img.getType());
+        ResampleOp op = new ResampleOp(img.getWidth() / 3, img.getHeight() / 3, ResampleOp.FILTER_LANCZOS);
+
+        // the result with cached weights is the same as with newly computed weights
+        ResampleOp.clearWeightsCache();
+        BufferedImage uncached = op.filter(img, null);
+        assertEquals(2, ResampleOp.getWeightsCacheSize());
+        BufferedImage cached = op.filter(img, null);
+        assertEquals(2, ResampleOp.getWeightsCacheSize());
+        for (int y = 0; y < uncached.getHeight(); y++) {
+            for (int x = 0; x < uncached.getWidth(); x++) {
+                assertEquals(uncached.getRGB(x, y), cached.getRGB(x, y));
+            }
+        }
+
+        // the cache size is bounded, the least recently used weights are removed
+        for (int width = 20; width < 120; width++) {
+            new ResampleOp(width, 20 + (width % 7), ResampleOp.FILTER_LANCZOS).filter(img, null);
+            assertTrue(ResampleOp.getWeightsCacheSize() <= 64);
+        }
+        assertTrue(ResampleOp.getWeightsCacheSize() > 32);
+        ResampleOp.clearWeightsCache();
+        assertEquals(0, ResampleOp.getWeightsCacheSize());
+    }
+
     /**
      * Tests cropping and resizing an image.<p>
      *
@@ -606,6 +1770,74 @@ public class TestSimapi extends VisualTestCase {
             "Images should be resized and cropped at center, up, down");
     }
 
+    /**
+     * Tests that resizing with a crop position gives the same result as scaling the complete image and cropping it.<p>
+     *
+     * @throws Exception if the test fails
+     */
+    public void testResizeCropPositions() throws Exception {
+
+        Simapi simapi = new Simapi();
+
+        // blocks of random colors, so that differences at the crop edges are not hidden by smooth image content
+        BufferedImage img = new BufferedImage(1200, 900, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int y = 0; y < img.getHeight(); y += 6) {
+            for (int x = 0; x < img.getWidth(); x += 6) {
+                int rgb = random.nextInt(0x1000000);
+                for (int i = 0; i < 36; i++) {
+                    img.setRGB(x + (i % 6), y + (i / 6), rgb);
+                }
+            }
+        }
+        int[] positions = new int[] {
+            Simapi.POS_CENTER,
+            Simapi.POS_DOWN_LEFT,
+            Simapi.POS_DOWN_RIGHT,
+            Simapi.POS_STRAIGHT_DOWN,
+            Simapi.POS_STRAIGHT_LEFT,
+            Simapi.POS_STRAIGHT_RIGHT,
+            Simapi.POS_STRAIGHT_UP,
+            Simapi.POS_UP_LEFT,
+            Simapi.POS_UP_RIGHT};
+        int[][] sizes = new int[][] {{300, 100}, {100, 300}, {257, 131}};
+        for (int[] size : sizes) {
+            float scale = Math.max(size[0] / (float)img.getWidth(), size[1] / (float)img.getHeight());
+            BufferedImage scaled = simapi.scale(img, scale, scale);
+            for (int position : positions) {
+                BufferedImage expected = simapi.crop(scaled, size[0], size[1], position);
+                BufferedImage result = simapi.resize(img, size[0], size[1], position);
+                assertEquals(size[0], result.getWidth());
+                assertEquals(size[1], result.getHeight());
+                // the edge rows and columns must not differ more from the reference than the inner pixels
+                long inner = 0;
+                long edge = 0;
+                int innerCount = 0;
+                int edgeCount = 0;
+                for (int y = 0; y < size[1]; y++) {
+                    for (int x = 0; x < size[0]; x++) {
+                        int rgb1 = expected.getRGB(x, y);
+                        int rgb2 = result.getRGB(x, y);
+                        int diff = 0;
+                        for (int shift = 0; shift < 24; shift += 8) {
+                            diff += Math.abs(((rgb1 >> shift) & 0xff) - ((rgb2 >> shift) & 0xff));
+                        }
+                        if ((x < 2) || (y < 2) || (x >= (size[0] - 2)) || (y >= (size[1] - 2))) {
+                            edge += diff;
+                            edgeCount++;
+                        } else {
+                            inner += diff;
+                            innerCount++;
+                        }
+                    }
+                }
+                String message = "Size " + size[0] + "x" + size[1] + ", position " + position;
+                assertTrue(message, (inner / (double)innerCount) < 4.0);
+                assertTrue(message, (edge / (double)edgeCount) < 4.0);
+            }
+        }
+    }
+
     /**
      * Tests resizing and scaling an image.<p>
      *
@@ -891,6 +2123,76 @@ public class TestSimapi extends VisualTestCase {
             + ". Is this ok?");
     }
 
+    /**
+     * Tests that the image operations are run on the compute threads of a scheduler, ordered by priority class.<p>
+     *
+     * @throws Exception if the test fails
+     */
+    public void testScheduler() throws Exception {
+
+        BufferedImage img = Simapi.read(getClass().getResource("Messdiener_sml.jpg"));
+        SimapiScheduler scheduler = new SimapiScheduler(1);
+        try {
+            final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+            RenderSettings settings = new RenderSettings(Simapi.RENDER_QUALITY);
+            settings.setScheduler(scheduler);
+            settings.addImageFilter(new RGBImageFilter() {
+
+                @Override
+                public int filterRGB(int x, int y, int rgb) {
+
+                    threads.add(Thread.currentThread());
+                    return rgb;
+                }
+            });
+            Simapi scheduled = new Simapi(settings.createSnapshot());
+            Simapi simapi = new Simapi();
+
+            // the result is the same, but the filter was not run on the calling thread
+            byte[] expected = simapi.getBytes(simapi.resize(img, 300, 200, Color.RED, Simapi.POS_CENTER), Simapi.TYPE_JPEG);
+            byte[] result = scheduled.getBytes(
+                scheduled.applyFilters(scheduled.resize(img, 300, 200, Color.RED, Simapi.POS_CENTER)),
+                Simapi.TYPE_JPEG);
+            assertTrue(Arrays.equals(expected, result));
+            assertEquals(1, threads.size());
+            assertFalse(threads.contains(Thread.currentThread()));
+
+            // block all compute threads, then check the waiting stages are started by priority class
+            final CountDownLatch latch = new CountDownLatch(1);
+            for (int i = 0; i < scheduler.getThreads(); i++) {
+                scheduler.submit(new Callable<Void>() {
+
+                    public Void call() throws Exception {
+
+                        latch.await();
+                        return null;
+                    }
+                }, SimapiScheduler.PRIORITY_INTERACTIVE);
+            }
+            final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (final String name : new String[] {"b1", "i1", "b2", "i2"}) {
+                futures.add(scheduler.submit(new Callable<Void>() {
+
+                    public Void call() {
+
+                        order.add(name);
+                        return null;
+                    }
+                },
+                    name.startsWith("i") ? SimapiScheduler.PRIORITY_INTERACTIVE : SimapiScheduler.PRIORITY_BACKGROUND));
+            }
+            assertTrue(scheduler.getQueueSize() >= 4);
+            latch.countDown();
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+            assertEquals(Arrays.asList("i1", "i2", "b1", "b2"), order);
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
     /**
      * Tests an issue with JDK 5 or 6 and GIF image processing.<p>
      *
@@ -1015,6 +2317,46 @@ public class TestSimapi extends VisualTestCase {
         checkImage(new BufferedImage[] {img1}, "Is the 'special scale size' issue solved?");
     }
 
+    /**
+     * Tests that the direct conversion to system image types gives the same result as drawing the image.<p>
+     *
+     * @throws Exception if the test fails
+     */
+    public void testSystemTypeConversion() throws Exception {
+
+        // the PNG and GIF are read as indexed images, the JPEG as 3 byte BGR image
+        String[] sources = new String[] {"screen_1280.png", "logo_alkacon_150_t.gif", "DSCN0754.JPG"};
+        for (String source : sources) {
+            BufferedImage img = ImageIO.read(getClass().getResource(source));
+            for (int parallelism : new int[] {1, 4}) {
+                BufferedImage img1 = Simapi.ensureImageIsSystemType(img, true, parallelism);
+                BufferedImage img2 = new BufferedImage(img.getWidth(), img.getHeight(), img1.getType());
+                Graphics2D g = img2.createGraphics();
+                g.drawImage(img, 0, 0, null);
+                g.dispose();
+                assertTrue(
+                    source,
+                    Arrays.equals(
+                        img1.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth()),
+                        img2.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth())));
+            }
+        }
+
+        // 1 bit image, this type has no fast Java 2D conversion
+        BufferedImage img = new BufferedImage(101, 50, BufferedImage.TYPE_BYTE_BINARY);
+        Graphics2D g = img.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillOval(10, 5, 60, 40);
+        g.dispose();
+        BufferedImage img1 = Simapi.ensureImageIsSystemType(img.getSubimage(3, 2, 90, 40), true);
+        assertEquals(BufferedImage.TYPE_INT_RGB, img1.getType());
+        for (int y = 0; y < 40; y++) {
+            for (int x = 0; x < 90; x++) {
+                assertEquals(img.getRGB(x + 3, y + 2), img1.getRGB(x, y));
+            }
+        }
+    }
+
     /**
      * Tests writing an image as GIF.<p>
      *
@@ -1109,6 +2451,35 @@ public class TestSimapi extends VisualTestCase {
         checkImage(new BufferedImage[] {img1, read}, "Has it been written to disk as JPEG in a _high_ quality version?");
     }
 
+    /**
+     * Tests that pooled image writers and readers give the same result on every use.<p>
+     *
+     * @throws Exception if the test fails
+     */
+    public void testWriterReuse() throws Exception {
+
+        RenderSettings low = new RenderSettings(Simapi.RENDER_QUALITY);
+        low.setCompressionQuality(0.3f);
+        Simapi simapiLow = new Simapi(low);
+        RenderSettings high = new RenderSettings(Simapi.RENDER_QUALITY);
+        high.setCompressionQuality(0.95f);
+        Simapi simapiHigh = new Simapi(high);
+
+        BufferedImage img = Simapi.read(getClass().getResource("screen1.png"));
+        byte[] bytesLow = simapiLow.getBytes(img, Simapi.TYPE_JPEG);
+        byte[] bytesHigh = simapiHigh.getBytes(img, Simapi.TYPE_JPEG);
+        assertTrue(bytesLow.length < bytesHigh.length);
+
+        // the compression quality must not leak from one use of the pooled writer to the next
+        for (int i = 0; i < 5; i++) {
+            assertTrue(Arrays.equals(bytesLow, simapiLow.getBytes(img, Simapi.TYPE_JPEG)));
+            assertTrue(Arrays.equals(bytesHigh, simapiHigh.getBytes(img, Simapi.TYPE_JPEG)));
+            BufferedImage read = Simapi.read(bytesHigh);
+            assertEquals(img.getWidth(), read.getWidth());
+            assertEquals(img.getHeight(), read.getHeight());
+        }
+    }
+
     /**
      * Draws a cross at a specific image point.<p>
      *